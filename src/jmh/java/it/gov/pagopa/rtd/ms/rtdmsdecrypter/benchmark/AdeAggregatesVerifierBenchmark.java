@@ -0,0 +1,86 @@
+package it.gov.pagopa.rtd.ms.rtdmsdecrypter.benchmark;
+
+import com.opencsv.exceptions.CsvConstraintViolationException;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.AdeTransactionsAggregate;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.service.AdeAggregatesVerifier;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.service.AdeTransactionsAggregateDecoder;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.service.DecryptedRecordReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Records per second verified by the {@link AdeAggregatesVerifier}, cycling over the aggregates
+ * of the ADE test fixtures. Run with {@code -prof gc} to report the allocation rate: valid
+ * records should allocate nothing.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+@OperationsPerInvocation(AdeAggregatesVerifierBenchmark.RECORDS)
+public class AdeAggregatesVerifierBenchmark {
+
+  static final int RECORDS = 1_000;
+
+  private final AdeAggregatesVerifier verifier = new AdeAggregatesVerifier();
+
+  private final AdeTransactionsAggregate[] aggregates = new AdeTransactionsAggregate[RECORDS];
+
+  /**
+   * Decodes the aggregates of the fixtures, run from the project directory.
+   */
+  @Setup(Level.Trial)
+  public void readFixtures() throws IOException {
+    List<AdeTransactionsAggregate> fixtures = new ArrayList<>();
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(Path.of("src/test/resources"),
+        "ADE.*.csv")) {
+      for (Path file : files) {
+        // The checksum header is not part of the chunks that are verified
+        String records = Files.readAllLines(file).stream()
+            .filter(line -> !line.startsWith("#"))
+            .collect(Collectors.joining("\n"));
+        new DecryptedRecordReader<>(new StringReader(records),
+            new AdeTransactionsAggregateDecoder(), null).stream().forEach(fixtures::add);
+      }
+    }
+    for (int i = 0; i < RECORDS; i++) {
+      aggregates[i] = fixtures.get(i % fixtures.size());
+    }
+  }
+
+  @Benchmark
+  public int verifyFixtures() {
+    int valid = 0;
+    for (AdeTransactionsAggregate aggregate : aggregates) {
+      try {
+        if (verifier.verifyBean(aggregate)) {
+          valid++;
+        }
+      } catch (CsvConstraintViolationException e) {
+        valid--;
+      }
+    }
+    return valid;
+  }
+}
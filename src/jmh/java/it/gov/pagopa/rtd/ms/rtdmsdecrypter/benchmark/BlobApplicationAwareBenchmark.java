@@ -0,0 +1,58 @@
+package it.gov.pagopa.rtd.ms.rtdmsdecrypter.benchmark;
+
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.BlobApplicationAware;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.BlobApplicationAware.Application;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.BlobChunk;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.support.Fixtures;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Blobs per second built from the URI of an event, parsing the URI and the name of the blob, as
+ * the event filter builds one per event, and chunks per second built from their original blob, as
+ * the splitter builds one per chunk. Run with {@code -prof gc} to report the bytes allocated per
+ * blob.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BlobApplicationAwareBenchmark {
+
+  // The URIs not of interest are logged on every construction, so they are left out
+  @Param({"RTD", "ADE", "WALLET"})
+  public Application application;
+
+  private String uri;
+
+  private BlobApplicationAware parent;
+
+  @Setup(Level.Trial)
+  public void selectUri() {
+    uri = Fixtures.blobUri(application);
+    parent = new BlobApplicationAware(uri);
+  }
+
+  @Benchmark
+  public BlobApplicationAware construct() {
+    return new BlobApplicationAware(uri);
+  }
+
+  @Benchmark
+  public BlobChunk chunk() {
+    return new BlobChunk(parent, parent.getBlob() + ".0.decrypted");
+  }
+}
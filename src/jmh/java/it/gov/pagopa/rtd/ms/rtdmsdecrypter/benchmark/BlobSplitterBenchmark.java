@@ -0,0 +1,95 @@
+package it.gov.pagopa.rtd.ms.rtdmsdecrypter.benchmark;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.BlobApplicationAware;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.BlobApplicationAware.Application;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.BlobApplicationAware.Status;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.service.BlobSplitterImpl;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.service.BlobVerifierImpl;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.support.Fixtures;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+
+/**
+ * Milliseconds to split a decrypted file in chunks, for every application and size of the files.
+ * The RTD and ADE files are split line by line or on the mapped newline bytes, sequentially or in
+ * concurrent regions, while these options do not apply to the wallet exports.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BlobSplitterBenchmark {
+
+  @Param({"RTD", "ADE", "WALLET"})
+  public Application application;
+
+  @Param({"10000", "1000000", "10000000"})
+  public int rows;
+
+  @Param({"false", "true"})
+  public boolean mapped;
+
+  // Regions of the file split concurrently, by the mapped split only
+  @Param({"1", "4"})
+  public int parallelism;
+
+  private final BlobSplitterImpl splitter = new BlobSplitterImpl(
+      new DefaultListableBeanFactory().getBeanProvider(BlobVerifierImpl.class),
+      new DefaultListableBeanFactory().getBeanProvider(MeterRegistry.class));
+
+  private Path directory;
+
+  @Setup(Level.Trial)
+  public void writeDecrypted() throws IOException {
+    directory = Files.createTempDirectory("splitter");
+    Fixtures.writeDecrypted(application, directory.resolve(blob().getBlob() + ".decrypted"),
+        rows);
+    splitter.setAggregatesLineThreshold(250_000);
+    splitter.setContractsSplitThreshold(100_000);
+    // The checksum computed by the decrypt is not there to be compared
+    splitter.setChecksumSkipped(true);
+    splitter.setMappedSplitEnabled(mapped);
+    splitter.setSplitParallelism(parallelism);
+  }
+
+  @TearDown(Level.Trial)
+  public void deleteDecrypted() throws IOException {
+    FileUtils.deleteDirectory(directory.toFile());
+  }
+
+  @Benchmark
+  public long split() {
+    BlobApplicationAware blob = blob();
+    blob.setStatus(Status.DECRYPTED);
+    // Only the chunks are deleted, the cleanup of the blob would delete the decrypted file too
+    return splitter.split(blob)
+        .filter(chunk -> Path.of(chunk.getTargetDir(), chunk.getBlob()).toFile().delete())
+        .count();
+  }
+
+  private BlobApplicationAware blob() {
+    BlobApplicationAware blob = new BlobApplicationAware(Fixtures.blobUri(application));
+    blob.setTargetDir(directory.toString());
+    return blob;
+  }
+}
@@ -0,0 +1,76 @@
+package it.gov.pagopa.rtd.ms.rtdmsdecrypter.benchmark;
+
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.config.VerifierFactory;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.BlobApplicationAware;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.BlobApplicationAware.Application;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.BlobApplicationAware.Status;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.service.BlobVerifierImpl;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.support.Fixtures;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Milliseconds to verify a RTD or ADE chunk read from its local file. The contracts of the wallet
+ * are verified while they are split, so they are measured by {@link BlobSplitterBenchmark}. A chunk
+ * holds at most the line threshold of the splitter, 250 thousand records by default.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BlobVerifierBenchmark {
+
+  static final String CHUNK_NAME = "chunk.csv";
+
+  @Param({"RTD", "ADE"})
+  public Application application;
+
+  @Param({"10000", "250000"})
+  public int rows;
+
+  private final BlobVerifierImpl verifier = new BlobVerifierImpl(new VerifierFactory());
+
+  private Path directory;
+
+  @Setup(Level.Trial)
+  public void writeChunk() throws IOException {
+    directory = Files.createTempDirectory("verifier");
+    Fixtures.writeChunk(application, directory.resolve(CHUNK_NAME), rows);
+    verifier.setRecordDecoderEnabled(true);
+  }
+
+  @TearDown(Level.Trial)
+  public void deleteChunk() throws IOException {
+    FileUtils.deleteDirectory(directory.toFile());
+  }
+
+  @Benchmark
+  public Status verify() {
+    BlobApplicationAware original = new BlobApplicationAware(Fixtures.blobUri(application));
+    BlobApplicationAware chunk = new BlobApplicationAware(Fixtures.blobUri(application));
+    chunk.setBlob(CHUNK_NAME);
+    chunk.setTargetDir(directory.toString());
+    chunk.setStatus(Status.SPLIT);
+    // The figures of the ADE chunks are merged in the report of the original blob
+    chunk.setOriginalBlob(original);
+    return verifier.verify(chunk).getStatus();
+  }
+}
@@ -0,0 +1,85 @@
+package it.gov.pagopa.rtd.ms.rtdmsdecrypter.benchmark;
+
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.BlobApplicationAware;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.BlobApplicationAware.Application;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.BlobApplicationAware.Status;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.service.DecrypterImpl;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.support.Fixtures;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.FileUtils;
+import org.bouncycastle.openpgp.PGPException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+/**
+ * Milliseconds to decrypt an encrypted blob into its local decrypted file, for every application
+ * and size of the files. The 10 million rows files take a few GB of disk, restrict the sizes with
+ * {@code -p rows=10000,1000000} for a quick run.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DecrypterBenchmark {
+
+  @Param({"RTD", "ADE", "WALLET"})
+  public Application application;
+
+  @Param({"10000", "1000000", "10000000"})
+  public int rows;
+
+  private AnnotationConfigApplicationContext context;
+
+  private DecrypterImpl decrypter;
+
+  private Path directory;
+
+  /**
+   * Encrypts the generated file, as uploaded by the senders.
+   */
+  @Setup(Level.Trial)
+  public void writeEncrypted() throws IOException, PGPException {
+    context = Fixtures.decrypterContext();
+    decrypter = context.getBean(DecrypterImpl.class);
+    directory = Files.createTempDirectory("decrypter");
+    Path clear = directory.resolve("clear");
+    Fixtures.writeDecrypted(application, clear, rows);
+    Fixtures.encrypt(clear, directory.resolve(blob().getBlob()));
+    Files.delete(clear);
+  }
+
+  @TearDown(Level.Trial)
+  public void deleteEncrypted() throws IOException {
+    context.close();
+    FileUtils.deleteDirectory(directory.toFile());
+  }
+
+  @Benchmark
+  public Status decrypt() {
+    // The decrypted file of the previous invocation is overwritten
+    return decrypter.decrypt(blob()).getStatus();
+  }
+
+  private BlobApplicationAware blob() {
+    BlobApplicationAware blob = new BlobApplicationAware(Fixtures.blobUri(application));
+    blob.setTargetDir(directory.toString());
+    return blob;
+  }
+}
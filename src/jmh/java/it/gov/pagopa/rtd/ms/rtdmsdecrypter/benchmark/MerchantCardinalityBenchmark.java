@@ -0,0 +1,104 @@
+package it.gov.pagopa.rtd.ms.rtdmsdecrypter.benchmark;
+
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.utils.CardinalityCounter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Milliseconds to count the distinct merchants of an ADE file, and the heap retained by the
+ * count, with the former set of strings and the exact and estimating counters. The retained bytes
+ * of the measured iterations add up, so a single one is measured.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms3g", "-Xmx3g"})
+@State(Scope.Benchmark)
+public class MerchantCardinalityBenchmark {
+
+  @Param({"HASH_SET", "EXACT", "HYPERLOGLOG"})
+  public String counter;
+
+  @Param({"1000000", "10000000"})
+  public int merchants;
+
+  /**
+   * Heap retained by the count, measured out of the timed count and reported next to its time.
+   */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class Footprint {
+
+    public long retainedBytes;
+
+    private Object merchantCount;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      retainedBytes = 0;
+    }
+
+    // The heap in use with and without the count
+    @TearDown(Level.Iteration)
+    public void measure() {
+      long retaining = usedHeap();
+      merchantCount = null;
+      retainedBytes = retaining - usedHeap();
+    }
+  }
+
+  @Benchmark
+  public long count(Footprint footprint) {
+    Object merchantCount;
+    long cardinality;
+    // Every merchant id is a new string, as when it is read from a record
+    if (counter.equals("HASH_SET")) {
+      Set<String> set = new HashSet<>();
+      for (int i = 0; i < merchants; i++) {
+        set.add(merchantId(i));
+      }
+      cardinality = set.size();
+      merchantCount = set;
+    } else {
+      CardinalityCounter cardinalityCounter = CardinalityCounter.Mode.valueOf(counter)
+          .newCounter();
+      for (int i = 0; i < merchants; i++) {
+        cardinalityCounter.add(merchantId(i));
+      }
+      cardinality = cardinalityCounter.cardinality();
+      merchantCount = cardinalityCounter;
+    }
+    footprint.merchantCount = merchantCount;
+    return cardinality;
+  }
+
+  private static String merchantId(int i) {
+    return Long.toString(400_000_000_000_000L + i);
+  }
+
+  private static long usedHeap() {
+    MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return memory.getHeapMemoryUsage().getUsed();
+  }
+}
@@ -0,0 +1,97 @@
+package it.gov.pagopa.rtd.ms.rtdmsdecrypter.benchmark;
+
+import com.opencsv.bean.CsvToBeanBuilder;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.AdeTransactionsAggregate;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.RtdTransaction;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.service.AdeTransactionsAggregateDecoder;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.service.DecryptedRecordReader;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.service.RtdTransactionDecoder;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.support.Fixtures;
+import java.io.StringReader;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Records per second decoded from a chunk by the opencsv bean binding and by the
+ * {@link DecryptedRecordReader}, without verification so that only the decoding is measured.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+@OperationsPerInvocation(RecordDecodingBenchmark.RECORDS)
+public class RecordDecodingBenchmark {
+
+  static final int RECORDS = 10_000;
+
+  private String transactions;
+
+  private String aggregates;
+
+  /**
+   * Generates valid transactions and aggregates shaped like the ones of the TRNLOG files.
+   */
+  @Setup(Level.Trial)
+  public void generateRecords() {
+    Random random = new Random(42);
+    StringBuilder rtd = new StringBuilder();
+    StringBuilder ade = new StringBuilder();
+    for (int i = 0; i < RECORDS; i++) {
+      rtd.append(Fixtures.rtdRecord(random, i)).append('\n');
+      ade.append(Fixtures.adeRecord(random)).append('\n');
+    }
+    transactions = rtd.toString();
+    aggregates = ade.toString();
+  }
+
+  @Benchmark
+  public long opencsvTransactions() {
+    return new CsvToBeanBuilder<RtdTransaction>(new StringReader(transactions))
+        .withType(RtdTransaction.class)
+        .withSeparator(';')
+        .withThrowExceptions(false)
+        .withErrorLocale(Locale.ROOT)
+        .build()
+        .stream()
+        .count();
+  }
+
+  @Benchmark
+  public long decoderTransactions() {
+    return new DecryptedRecordReader<>(new StringReader(transactions),
+        new RtdTransactionDecoder(), null).stream().count();
+  }
+
+  @Benchmark
+  public long opencsvAggregates() {
+    return new CsvToBeanBuilder<AdeTransactionsAggregate>(new StringReader(aggregates))
+        .withType(AdeTransactionsAggregate.class)
+        .withSeparator(';')
+        .withThrowExceptions(false)
+        .withErrorLocale(Locale.ROOT)
+        .build()
+        .stream()
+        .count();
+  }
+
+  @Benchmark
+  public long decoderAggregates() {
+    return new DecryptedRecordReader<>(new StringReader(aggregates),
+        new AdeTransactionsAggregateDecoder(), null).stream().count();
+  }
+}
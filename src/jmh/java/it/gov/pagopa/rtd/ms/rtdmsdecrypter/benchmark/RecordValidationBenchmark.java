@@ -0,0 +1,70 @@
+package it.gov.pagopa.rtd.ms.rtdmsdecrypter.benchmark;
+
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.AdeTransactionsAggregate;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.RtdTransaction;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.service.AdeTransactionsAggregateDecoder;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.service.RtdTransactionDecoder;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.utils.RecordValidator;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Valid records per second checked by Hibernate Validator and by the {@link RecordValidator}.
+ * Run with {@code -prof gc} to compare the bytes allocated per record.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RecordValidationBenchmark {
+
+  private final Validator hibernate = Validation.buildDefaultValidatorFactory().getValidator();
+
+  private final RecordValidator<RtdTransaction> rtdValidator = RecordValidator.compile(
+      RtdTransaction.class);
+
+  private final RecordValidator<AdeTransactionsAggregate> adeValidator =
+      RecordValidator.compile(AdeTransactionsAggregate.class);
+
+  private final RtdTransaction transaction = new RtdTransactionDecoder().decode(
+      "36081;00;10;5c6bda1b1f5f6238dcba70f9f4b5a77671eb2b1563b0ca6d15d14c649a9b7ce0;"
+          + "2020-08-06T12:19:16.000+00:00;80205005000037219007587693;657098;;12;978;09509;"
+          + "400000080205;80205005;40236010;4900;fc123456789;12345678901;00;", new ArrayList<>());
+
+  private final AdeTransactionsAggregate aggregate = new AdeTransactionsAggregateDecoder().decode(
+      "99999;00;2022-07-21;2022-07-20;77;0;978;99999;8894738909374375872;4759769053262163701;"
+          + "00000000003;00000000003;00", new ArrayList<>());
+
+  @Benchmark
+  public boolean hibernateTransaction() {
+    return hibernate.validate(transaction).isEmpty();
+  }
+
+  @Benchmark
+  public boolean compiledTransaction() {
+    return rtdValidator.validate(transaction).isEmpty();
+  }
+
+  @Benchmark
+  public boolean hibernateAggregate() {
+    return hibernate.validate(aggregate).isEmpty();
+  }
+
+  @Benchmark
+  public boolean compiledAggregate() {
+    return adeValidator.validate(aggregate).isEmpty();
+  }
+}
@@ -0,0 +1,144 @@
+package it.gov.pagopa.rtd.ms.rtdmsdecrypter.benchmark;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.WalletContract;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.service.BlobVerifierImpl;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.service.WalletContractStreamVerifier;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validation;
+import jakarta.validation.ValidatorFactory;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Contracts per second validated by {@link BlobVerifierImpl#deserializeAndVerifyContract}, against
+ * the former approach bootstrapping a validator factory for every contract, and contracts per
+ * second copied to a chunk once bound or passed through {@link WalletContractStreamVerifier}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class WalletContractValidationBenchmark {
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+
+  private final JsonFactory jsonFactory = new JsonFactory();
+
+  private static final int CONTRACTS = 1000;
+
+  private final WalletContractStreamVerifier streamVerifier = new WalletContractStreamVerifier();
+
+  private JsonGenerator chunkGenerator;
+
+  private List<byte[]> contracts;
+
+  private int next;
+
+  /**
+   * Generates valid contracts shaped like the ones of the wallet exports: mostly card creations,
+   * with some deletions.
+   */
+  @Setup(Level.Trial)
+  public void generateContracts() throws IOException {
+    Random random = new Random(42);
+    contracts = new ArrayList<>(CONTRACTS);
+    for (int i = 0; i < CONTRACTS; i++) {
+      ObjectNode contract = objectMapper.createObjectNode();
+      if (i % 10 == 9) {
+        contract.put("action", "DELETE");
+        contract.put("import_outcome", "OK");
+        contract.put("original_contract_identifier", hex(random, 16));
+      } else {
+        contract.put("action", "CREATE");
+        contract.put("import_outcome", "OK");
+        contract.put("payment_method", "CARD");
+        ObjectNode attributes = contract.putObject("method_attributes");
+        attributes.put("pan_tail", String.format("%04d", random.nextInt(10000)));
+        attributes.put("expdate", String.format("%02d/%02d", 1 + random.nextInt(12),
+            25 + random.nextInt(10)));
+        attributes.put("card_id_4", hex(random, 44));
+        attributes.put("card_payment_circuit", "MAESTRO");
+        attributes.put("new_contract_identifier", hex(random, 16));
+        attributes.put("original_contract_identifier", hex(random, 16));
+        attributes.put("card_bin", String.format("%06d", random.nextInt(1000000)));
+      }
+      contracts.add(objectMapper.writeValueAsBytes(contract));
+    }
+    chunkGenerator = jsonFactory.createGenerator(OutputStream.nullOutputStream());
+    chunkGenerator.writeStartArray();
+  }
+
+  @Benchmark
+  public WalletContract sharedValidator() throws IOException {
+    try (JsonParser parser = nextContract()) {
+      return BlobVerifierImpl.deserializeAndVerifyContract(objectMapper, parser, 0);
+    }
+  }
+
+  @Benchmark
+  public Set<ConstraintViolation<WalletContract>> validatorFactoryPerContract()
+      throws IOException {
+    try (JsonParser parser = nextContract();
+        ValidatorFactory factory = Validation.buildDefaultValidatorFactory()) {
+      return factory.getValidator().validate(objectMapper.readValue(parser, WalletContract.class));
+    }
+  }
+
+  @Benchmark
+  public void boundContractCopy() throws IOException {
+    try (JsonParser parser = nextContract()) {
+      WalletContract contract = BlobVerifierImpl.deserializeAndVerifyContract(objectMapper, parser,
+          0);
+      objectMapper.writeValue(chunkGenerator, contract);
+    }
+  }
+
+  @Benchmark
+  public boolean passthroughContractCopy() throws IOException {
+    try (JsonParser parser = nextContract()) {
+      return streamVerifier.verifyAndCopy(parser, chunkGenerator, 0);
+    }
+  }
+
+  private JsonParser nextContract() throws IOException {
+    byte[] contract = contracts.get(next);
+    next = (next + 1) % contracts.size();
+    JsonParser parser = jsonFactory.createParser(contract);
+    // Positioned on the start of the contract, as in the split of the export
+    if (parser.nextToken() != JsonToken.START_OBJECT) {
+      throw new IllegalStateException("Malformed contract");
+    }
+    return parser;
+  }
+
+  private static String hex(Random random, int bytes) {
+    byte[] value = new byte[bytes];
+    random.nextBytes(value);
+    return HexFormat.of().formatHex(value);
+  }
+}
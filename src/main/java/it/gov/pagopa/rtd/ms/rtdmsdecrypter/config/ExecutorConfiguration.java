@@ -0,0 +1,62 @@
+package it.gov.pagopa.rtd.ms.rtdmsdecrypter.config;
+
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.utils.BoundedExecutors;
+import java.util.concurrent.ExecutorService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Bounded worker pools used to process the chunks of a blob concurrently.
+ */
+@Configuration
+public class ExecutorConfiguration {
+
+  // Chunk verification is CPU bound: by default one worker per available CPU
+  @Bean(destroyMethod = "shutdownNow")
+  public ExecutorService verifierExecutor(
+      @Value("${decrypt.verifier.threads:0}") int threads,
+      @Value("${decrypt.verifier.virtualThreads:false}") boolean virtualThreads) {
+    return BoundedExecutors.newBoundedExecutor("chunk-verifier", threads, virtualThreads);
+  }
+
+  // Chunk upload is I/O bound: as many workers as the allowed in-flight requests. Platform ones
+  // by default, since virtual ones pin their carrier while waiting on the HTTP client
+  @Bean(destroyMethod = "shutdownNow")
+  public ExecutorService uploaderExecutor(
+      @Value("${decrypt.uploader.maxInFlight:8}") int maxInFlight,
+      @Value("${decrypt.uploader.virtualThreads:false}") boolean virtualThreads) {
+    return BoundedExecutors.newBoundedExecutor("chunk-uploader", maxInFlight, virtualThreads);
+  }
+
+  // Ranged downloads are I/O bound: room for the parallel ranges of every blob handled at the same
+  // time. Platform workers by default, for the same reason as the chunk uploads
+  @Bean(destroyMethod = "shutdownNow")
+  public ExecutorService rangeDownloaderExecutor(
+      @Value("${decrypt.downloader.parallelism:4}") int parallelism,
+      @Value("${decrypt.consumer.maxConcurrentBlobs:4}") int maxConcurrentBlobs,
+      @Value("${decrypt.downloader.virtualThreads:false}") boolean virtualThreads) {
+    return BoundedExecutors.newBoundedExecutor("range-downloader",
+        parallelism * maxConcurrentBlobs, virtualThreads);
+  }
+
+  // Staged uploads are I/O bound: room for the parallel blocks of every chunk in flight
+  @Bean(destroyMethod = "shutdownNow")
+  public ExecutorService blockUploaderExecutor(
+      @Value("${decrypt.uploader.blockParallelism:4}") int blockParallelism,
+      @Value("${decrypt.uploader.maxInFlight:8}") int maxInFlight,
+      @Value("${decrypt.uploader.blockVirtualThreads:false}") boolean virtualThreads) {
+    return BoundedExecutors.newBoundedExecutor("block-uploader", blockParallelism * maxInFlight,
+        virtualThreads);
+  }
+
+  // Blob handling mostly waits on the network and on the pools above. Platform workers by default,
+  // since downloads and uploads pin virtual ones to their carrier
+  @Bean(destroyMethod = "shutdownNow")
+  public ExecutorService blobExecutor(
+      @Value("${decrypt.consumer.maxConcurrentBlobs:4}") int maxConcurrentBlobs,
+      @Value("${decrypt.consumer.virtualThreads:false}") boolean virtualThreads) {
+    return BoundedExecutors.newBoundedExecutor("blob-handler", maxConcurrentBlobs,
+        virtualThreads);
+  }
+}
@@ -6,6 +6,9 @@ import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.BlobApplicationAware.Applicatio
 import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.DecryptedRecord;
 import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.RtdTransaction;
 import it.gov.pagopa.rtd.ms.rtdmsdecrypter.service.AdeAggregatesVerifier;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.service.AdeTransactionsAggregateDecoder;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.service.DecryptedRecordDecoder;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.service.RtdTransactionDecoder;
 import it.gov.pagopa.rtd.ms.rtdmsdecrypter.service.RtdTransactionsVerifier;
 import org.springframework.context.annotation.Configuration;
 
@@ -41,4 +44,18 @@ public class VerifierFactory {
     }
     return RtdTransaction.class;
   }
+
+  /**
+   * Returns a {@link DecryptedRecordDecoder} based on the {@link Application} of the passed as
+   * parameter.
+   *
+   * @param app {@link Application} of the blob to be verified.
+   * @return DecryptedRecordDecoder
+   */
+  public DecryptedRecordDecoder<? extends DecryptedRecord> getDecoder(Application app) {
+    if (app == Application.ADE) {
+      return new AdeTransactionsAggregateDecoder();
+    }
+    return new RtdTransactionDecoder();
+  }
 }
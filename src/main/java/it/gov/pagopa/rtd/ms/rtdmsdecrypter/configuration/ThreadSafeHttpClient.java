@@ -16,6 +16,7 @@ import org.apache.hc.client5.http.ssl.TrustSelfSignedStrategy;
 import org.apache.hc.core5.http.config.Registry;
 import org.apache.hc.core5.http.config.RegistryBuilder;
 import org.apache.hc.core5.ssl.SSLContexts;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -28,6 +29,24 @@ public class ThreadSafeHttpClient {
 
   private final HttpClientBuilder httpClientBuilder;
 
+  @Value("${decrypt.uploader.maxInFlight:8}")
+  private int maxUploadsInFlight;
+
+  @Value("${decrypt.downloader.enableRangedDownload:false}")
+  private boolean isRangedDownloadEnabled;
+
+  @Value("${decrypt.downloader.parallelism:4}")
+  private int downloadParallelism;
+
+  @Value("${decrypt.uploader.enableStagedUpload:false}")
+  private boolean isStagedUploadEnabled;
+
+  @Value("${decrypt.uploader.blockParallelism:4}")
+  private int blockParallelism;
+
+  @Value("${decrypt.consumer.maxConcurrentBlobs:4}")
+  private int maxConcurrentBlobs;
+
   @Bean
   HttpClient getHttpClient()
       throws NoSuchAlgorithmException, KeyStoreException, KeyManagementException {
@@ -43,6 +62,13 @@ public class ThreadSafeHttpClient {
 
     PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(
         registry);
+    // Every call goes to the same route: leave room for the (ranged) download and the metadata
+    // update of every blob handled at the same time next to the concurrent chunk uploads, each
+    // staging its blocks in parallel
+    int maxPerRoute = maxUploadsInFlight * (isStagedUploadEnabled ? blockParallelism : 1)
+        + maxConcurrentBlobs * ((isRangedDownloadEnabled ? downloadParallelism : 1) + 1);
+    connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+    connectionManager.setMaxTotal(Math.max(maxPerRoute, connectionManager.getMaxTotal()));
 
     return httpClientBuilder.setConnectionManager(connectionManager).build();
   }
@@ -6,13 +6,26 @@ import it.gov.pagopa.rtd.ms.rtdmsdecrypter.service.BlobRestConnectorImpl;
 import it.gov.pagopa.rtd.ms.rtdmsdecrypter.service.BlobSplitterImpl;
 import it.gov.pagopa.rtd.ms.rtdmsdecrypter.service.BlobVerifierImpl;
 import it.gov.pagopa.rtd.ms.rtdmsdecrypter.service.DecrypterImpl;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.telemetry.StageMetrics;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.utils.BoundedExecutors;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.aot.hint.annotation.RegisterReflectionForBinding;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.messaging.Message;
@@ -28,6 +41,26 @@ public class EventHandler {
   @Value("${decrypt.enableChunkUpload}")
   private boolean isChunkUploadEnabled;
 
+  @Value("${decrypt.enableStreaming:false}")
+  private boolean isStreamingEnabled;
+
+  private final ExecutorService verifierExecutor;
+
+  private final ExecutorService uploaderExecutor;
+
+  private final ExecutorService blobExecutor;
+
+  private final StageMetrics stageMetrics;
+
+  public EventHandler(@Qualifier("verifierExecutor") ExecutorService verifierExecutor,
+      @Qualifier("uploaderExecutor") ExecutorService uploaderExecutor,
+      @Qualifier("blobExecutor") ExecutorService blobExecutor, StageMetrics stageMetrics) {
+    this.verifierExecutor = verifierExecutor;
+    this.uploaderExecutor = uploaderExecutor;
+    this.blobExecutor = blobExecutor;
+    this.stageMetrics = stageMetrics;
+  }
+
   /**
    * Constructor.
    *
@@ -38,34 +71,135 @@ public class EventHandler {
    * @return a consumer for Event Grid events
    */
   @Bean
+  @ConditionalOnProperty(value = "decrypt.consumer.batchMode", havingValue = "false",
+      matchIfMissing = true)
   @RegisterReflectionForBinding(EventGridEvent.class)
   public Consumer<Message<List<EventGridEvent>>> blobStorageConsumer(DecrypterImpl decrypterImpl,
       BlobRestConnectorImpl blobRestConnectorImpl, BlobSplitterImpl blobSplitterImpl,
       BlobVerifierImpl blobVerifierImpl) {
 
-    log.info("Chunks upload enabled: {}", isChunkUploadEnabled);
+    Consumer<BlobApplicationAware> blobHandler = blobHandler(decrypterImpl, blobRestConnectorImpl,
+        blobSplitterImpl, blobVerifierImpl);
+
+    return message -> handleBlobs(message.getPayload().stream(), blobHandler);
+  }
+
+  /**
+   * Batch variant of the consumer, receiving every record of a poll at once. The blobs of all
+   * the records are handled concurrently, and the call returns (letting the binder commit the
+   * offsets) only when every blob of the batch has been handled.
+   *
+   * @param decrypterImpl         an instance of a Decrypter
+   * @param blobRestConnectorImpl an instance of a BlobRestConnector
+   * @param blobSplitterImpl      an instance of a BlobSplitter
+   * @param blobVerifierImpl      an instance of a BlobVerifier
+   * @return a consumer for batches of Event Grid events
+   */
+  @Bean("blobStorageConsumer")
+  @ConditionalOnProperty(value = "decrypt.consumer.batchMode", havingValue = "true")
+  @RegisterReflectionForBinding(EventGridEvent.class)
+  public Consumer<Message<List<List<EventGridEvent>>>> blobStorageBatchConsumer(
+      DecrypterImpl decrypterImpl, BlobRestConnectorImpl blobRestConnectorImpl,
+      BlobSplitterImpl blobSplitterImpl, BlobVerifierImpl blobVerifierImpl) {
+
+    Consumer<BlobApplicationAware> blobHandler = blobHandler(decrypterImpl, blobRestConnectorImpl,
+        blobSplitterImpl, blobVerifierImpl);
 
     return message -> {
-      List<BlobApplicationAware> chunks = message.getPayload().stream()
-          .map(e -> {
-            log.info(e.toString());
-            return e;
-          })
-          .filter(e -> "Microsoft.Storage.BlobCreated".equals(e.getEventType())
-              || "Microsoft.Storage.BlobRenamed".equals(e.getEventType()))
-          .map(EventGridEvent::getSubject)
-          .map(BlobApplicationAware::new)
-          .filter(b -> !BlobApplicationAware.Application.NOAPP.equals(b.getApp()))
-          .map(blobRestConnectorImpl::get)
-          .filter(b -> BlobApplicationAware.Status.DOWNLOADED.equals(b.getStatus()))
-          .map(decrypterImpl::decrypt)
-          .filter(b -> BlobApplicationAware.Status.DECRYPTED.equals(b.getStatus()))
-          .flatMap(blobSplitterImpl::split)
-          .filter(b -> BlobApplicationAware.Status.SPLIT.equals(b.getStatus()))
+      log.info("Received batch of {} records", message.getPayload().size());
+      handleBlobs(message.getPayload().stream().flatMap(List::stream), blobHandler);
+    };
+  }
+
+  private void handleBlobs(Stream<EventGridEvent> events,
+      Consumer<BlobApplicationAware> blobHandler) {
+    List<BlobApplicationAware> blobs = events
+        .map(e -> {
+          log.info(e.toString());
+          return e;
+        })
+        .filter(e -> "Microsoft.Storage.BlobCreated".equals(e.getEventType())
+            || "Microsoft.Storage.BlobRenamed".equals(e.getEventType()))
+        .map(EventGridEvent::getSubject)
+        .distinct()
+        .map(BlobApplicationAware::new)
+        .filter(b -> !BlobApplicationAware.Application.NOAPP.equals(b.getApp()))
+        .toList();
+
+    // Distinct blobs are handled concurrently, each one isolated from the failures of the others
+    List<RuntimeException> failures = BoundedExecutors.invokeAllOrdered(blobExecutor, blobs.stream()
+            .map(b -> (Callable<RuntimeException>) () -> {
+              try {
+                blobHandler.accept(b);
+                return null;
+              } catch (RuntimeException e) {
+                log.error("Cannot handle blob {}: {}", b.getBlob(), e.getMessage(), e);
+                return e;
+              }
+            })
+            .toList())
+        .stream()
+        .filter(Objects::nonNull)
+        .toList();
+
+    // Failures reach the binder once every blob is handled, so that the records are retried
+    if (!failures.isEmpty()) {
+      RuntimeException failure = failures.get(0);
+      failures.stream().skip(1).filter(e -> e != failure).forEach(failure::addSuppressed);
+      throw failure;
+    }
+  }
+
+  private Consumer<BlobApplicationAware> blobHandler(DecrypterImpl decrypterImpl,
+      BlobRestConnectorImpl blobRestConnectorImpl, BlobSplitterImpl blobSplitterImpl,
+      BlobVerifierImpl blobVerifierImpl) {
+
+    log.info("Chunks upload enabled: {}", isChunkUploadEnabled);
+    log.info("Streaming decrypt enabled: {}", isStreamingEnabled);
+    log.info("Verify while splitting enabled: {}", blobSplitterImpl.isVerifyWhileSplitting());
+
+    // In streaming mode the downloaded content is decrypted and split on the fly,
+    // so that only the chunks are written on local disk
+    // Every stage is timed, tagged by its outcome
+    Function<BlobApplicationAware, Stream<BlobApplicationAware>> toChunks = isStreamingEnabled
+        ? b -> stageMetrics.record(StageMetrics.STREAM, b,
+                () -> blobRestConnectorImpl.stream(b,
+                        content -> decryptAndSplit(b, content, decrypterImpl, blobSplitterImpl))
+                    .orElse(List.of()),
+                EventHandler::isSplit, StageMetrics::fileSize)
+            .stream()
+        : b -> Stream.of(b)
+            .map(d -> stageMetrics.record(StageMetrics.DOWNLOAD, d,
+                () -> blobRestConnectorImpl.get(d),
+                hasStatus(BlobApplicationAware.Status.DOWNLOADED), StageMetrics::fileSize))
+            .filter(hasStatus(BlobApplicationAware.Status.DOWNLOADED))
+            .map(d -> stageMetrics.record(StageMetrics.DECRYPT, d,
+                () -> decrypterImpl.decrypt(d),
+                hasStatus(BlobApplicationAware.Status.DECRYPTED),
+                e -> Path.of(e.getTargetDir(), e.getBlob() + ".decrypted").toFile().length()))
+            .filter(hasStatus(BlobApplicationAware.Status.DECRYPTED))
+            .flatMap(d -> stageMetrics.record(StageMetrics.SPLIT, d,
+                () -> blobSplitterImpl.split(d).toList(),
+                EventHandler::isSplit, StageMetrics::fileSize).stream());
+
+    return blob -> {
+      // Chunks verified while split are VERIFIED, or still SPLIT if some record is not valid
+      List<BlobApplicationAware> chunks = toChunks.apply(blob)
+          .filter(b -> BlobApplicationAware.Status.SPLIT.equals(b.getStatus())
+              || BlobApplicationAware.Status.VERIFIED.equals(b.getStatus()))
           .toList();
 
-      List<BlobApplicationAware> verifiedChunks = chunks.stream()
-          .map(blobVerifierImpl::verify)
+      // Chunks are verified concurrently, the upload decision waits for all of them
+      List<BlobApplicationAware> verifiedChunks = (blobSplitterImpl.isVerifyWhileSplitting()
+          ? chunks
+          : BoundedExecutors.invokeAllOrdered(
+              verifierExecutor,
+              chunks.stream()
+                  .map(b -> (Callable<BlobApplicationAware>) () -> stageMetrics.record(
+                      StageMetrics.VERIFY, b, () -> blobVerifierImpl.verify(b),
+                      hasStatus(BlobApplicationAware.Status.VERIFIED), StageMetrics::fileSize))
+                  .toList()))
+          .stream()
           .filter(b -> BlobApplicationAware.Status.VERIFIED.equals(b.getStatus()))
           .toList();
 
@@ -74,12 +208,26 @@ public class EventHandler {
 
       if (!chunks.isEmpty()) {
         if (verifiedChunks.size() == chunks.size()) {
-          long uploadedChunks = verifiedChunks.stream()
-              .map(b -> isChunkUploadEnabled ? blobRestConnectorImpl.put(b) : b)
+          // Chunks are uploaded concurrently, up to the configured number of requests in flight
+          long uploadedChunks = BoundedExecutors.invokeAllOrdered(
+                  uploaderExecutor,
+                  verifiedChunks.stream()
+                      .map(b -> (Callable<BlobApplicationAware>)
+                          () -> isChunkUploadEnabled ? stageMetrics.record(StageMetrics.UPLOAD, b,
+                              () -> blobRestConnectorImpl.put(b),
+                              hasStatus(BlobApplicationAware.Status.UPLOADED),
+                              StageMetrics::fileSize) : b)
+                      .toList())
+              .stream()
               .filter(b -> BlobApplicationAware.Status.UPLOADED.equals(b.getStatus()))
               .count();
           log.info("Uploaded chunks: {}", uploadedChunks);
-          blobRestConnectorImpl.setMetadata(originalBlob.get());
+          stageMetrics.record(StageMetrics.METADATA, originalBlob.get(),
+              () -> blobRestConnectorImpl.setMetadata(originalBlob.get()),
+              // The metadata of the wallet blobs are not set yet
+              m -> m != null && (BlobApplicationAware.Status.ENRICHED.equals(m.getStatus())
+                  || BlobApplicationAware.Application.WALLET.equals(m.getApp())),
+              m -> 0);
         } else {
           log.error("Not all chunks are verified, no chunks will be uploaded of {}",
               chunks.get(0).getOriginalBlobName());
@@ -96,4 +244,32 @@ public class EventHandler {
       }
     };
   }
+
+  private static Predicate<BlobApplicationAware> hasStatus(BlobApplicationAware.Status status) {
+    return b -> status.equals(b.getStatus());
+  }
+
+  // A split is successful if it produced chunks, verified or not
+  private static boolean isSplit(List<BlobApplicationAware> chunks) {
+    return !chunks.isEmpty() && chunks.stream()
+        .allMatch(b -> BlobApplicationAware.Status.SPLIT.equals(b.getStatus())
+            || BlobApplicationAware.Status.VERIFIED.equals(b.getStatus()));
+  }
+
+  // Decrypt failures are reported here, not as failures of the download streaming the content
+  static List<BlobApplicationAware> decryptAndSplit(BlobApplicationAware blob,
+      InputStream encrypted, DecrypterImpl decrypterImpl, BlobSplitterImpl blobSplitterImpl)
+      throws IOException {
+    InputStream decrypted;
+    try {
+      decrypted = decrypterImpl.decrypt(blob, encrypted);
+    } catch (IOException e) {
+      log.error("Cannot decrypt {}: {}", blob.getBlob(), e.getMessage());
+      blob.localCleanup();
+      return List.of(blob);
+    }
+    try (decrypted) {
+      return blobSplitterImpl.split(blob, decrypted).toList();
+    }
+  }
 }
@@ -3,10 +3,7 @@ package it.gov.pagopa.rtd.ms.rtdmsdecrypter.model;
 import java.io.File;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
@@ -66,10 +63,6 @@ public class BlobApplicationAware {
 
   private Integer originalFileChunksNumber;
 
-  private String inputContainerWallet = "nexi";
-
-  private String inputDirectoryWallet = "in";
-
   private String targetContainerAde = "ade-transactions-decrypted";
 
   private String targetContainerRtd = "rtd-transactions-decrypted";
@@ -82,12 +75,6 @@ public class BlobApplicationAware {
 
   private String walletExportFileSuffix = "OUT";
 
-  private Pattern uriRtdPattern = Pattern.compile(
-      "^.*containers/((ade|rtd)(-transactions-[a-z0-9]{44}))/blobs/(.*)");
-
-  private Pattern uriWalletPattern = Pattern.compile(
-      "^.*containers/(" + inputContainerWallet + ")/blobs/" + inputDirectoryWallet + "/(.*)");
-
   private static final String WRONG_FORMAT_NAME_ERROR_MSG = "Wrong name format:";
   private static final String CONFLICTING_SERVICE_WARNING_MSG = "Conflicting service in URI:";
   private static final String EVENT_NOT_OF_INTEREST_WARNING_MSG = "Event not of interest:";
@@ -99,6 +86,13 @@ public class BlobApplicationAware {
   private int numChunk;
   private int totChunk;
 
+  /**
+   * Constructor of a blob whose fields are set by the subclass, e.g. a chunk taking them from its
+   * original blob, without parsing a URI.
+   */
+  protected BlobApplicationAware() {
+  }
+
   /**
    * Constructor.
    *
@@ -114,9 +108,7 @@ public class BlobApplicationAware {
     blobUri = uri;
     status = Status.INIT;
 
-    Matcher matcherRtd = uriRtdPattern.matcher(uri);
-    Matcher matcherWallet = uriWalletPattern.matcher(uri);
-
+    Matcher matcherRtd = BlobUriParser.matchRtdUri(uri);
     if (matcherRtd.matches()) {
       container = matcherRtd.group(1);
       blob = matcherRtd.group(4);
@@ -138,6 +130,7 @@ public class BlobApplicationAware {
       return;
     }
 
+    Matcher matcherWallet = BlobUriParser.matchWalletUri(uri);
     if (matcherWallet.matches()) {
       container = matcherWallet.group(1);
       blob = matcherWallet.group(2);
@@ -175,8 +168,8 @@ public class BlobApplicationAware {
 
     // blobNameTokens[1] check for sender ABI code
     if (blobNameTokens.length < RTD_NAME_CHUNK_NUM
-        || !blobNameTokens[0].matches("(ADE|CSTAR)")
-        || !blobNameTokens[1].matches("[a-zA-Z0-9]{5}")) {
+        || !BlobUriParser.isRtdService(blobNameTokens[0])
+        || !BlobUriParser.isSenderCode(blobNameTokens[1])) {
       return false;
     }
 
@@ -224,16 +217,7 @@ public class BlobApplicationAware {
   }
 
   private boolean checkDateTimeFormat(String date, String time) {
-    SimpleDateFormat daysFormat = new SimpleDateFormat("yyyyMMddHHmmss");
-    // Make the format refuse wrong date and time (default behavior is to overflow
-    // values in
-    // following date)
-    daysFormat.setLenient(false);
-
-    try {
-      daysFormat.parse(date + time);
-    } catch (ParseException e) {
-      log.error("Error parsing date and time: {}", e.getMessage());
+    if (!BlobUriParser.isCreationDateTime(date, time)) {
       return false;
     }
 
@@ -283,7 +267,7 @@ public class BlobApplicationAware {
 
   boolean extractFlowNumber(String token) {
     // Check for progressive value
-    if (token.matches("\\d{3}")) {
+    if (BlobUriParser.isFlowNumber(token)) {
       flowNumber = token;
       return true;
     } else {
@@ -292,7 +276,7 @@ public class BlobApplicationAware {
   }
 
   void extractBatchServiceChunkNumber(String token) {
-    if (token.matches("(\\d{2})")) {
+    if (BlobUriParser.isBatchServiceChunkNumber(token)) {
       batchServiceChunkNumber = token;
     } else {
       batchServiceChunkNumber = "00";
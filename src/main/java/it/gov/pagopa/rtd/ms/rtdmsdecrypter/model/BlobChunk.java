@@ -0,0 +1,61 @@
+package it.gov.pagopa.rtd.ms.rtdmsdecrypter.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * A chunk of a split blob. It takes the fields of its original blob instead of parsing the URI,
+ * and allocates its report only if asked, since the figures of the chunks are merged in the report
+ * of the original blob.
+ */
+@Getter
+@Setter
+public class BlobChunk extends BlobApplicationAware {
+
+  public static final long UNKNOWN = -1;
+
+  // Bytes of the chunk file
+  private long byteSize = UNKNOWN;
+
+  // Lines of the chunk file, or contracts of a wallet export
+  private long lineCount = UNKNOWN;
+
+  /**
+   * Constructor.
+   *
+   * @param parent the blob being split
+   * @param name   the name of the chunk
+   */
+  public BlobChunk(BlobApplicationAware parent, String name) {
+    setOriginalBlob(parent);
+    setOriginalBlobName(parent.getBlob());
+    setBlob(name);
+    setStatus(Status.SPLIT);
+    setApp(parent.getApp());
+    setContainer(parent.getContainer());
+    setTargetContainer(parent.getTargetContainer());
+    setTargetDir(parent.getTargetDir());
+    setSenderCode(parent.getSenderCode());
+    setFileCreationDate(parent.getFileCreationDate());
+    setFileCreationTime(parent.getFileCreationTime());
+    setFlowNumber(parent.getFlowNumber());
+    setBatchServiceChunkNumber(parent.getBatchServiceChunkNumber());
+  }
+
+  @Override
+  public String getBlobUri() {
+    if (super.getBlobUri() == null) {
+      String parentUri = getOriginalBlob().getBlobUri();
+      setBlobUri(parentUri.substring(0, parentUri.lastIndexOf('/') + 1) + getBlob());
+    }
+    return super.getBlobUri();
+  }
+
+  @Override
+  public ReportMetaData getReportMetaData() {
+    if (super.getReportMetaData() == null) {
+      setReportMetaData(new ReportMetaData());
+    }
+    return super.getReportMetaData();
+  }
+}
@@ -0,0 +1,91 @@
+package it.gov.pagopa.rtd.ms.rtdmsdecrypter.model;
+
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.utils.CharClassPattern;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.format.ResolverStyle;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Patterns of the blob URIs and of the tokens of the blob names, compiled once and shared by
+ * every blob: routing a batch of events compiles no regular expression.
+ */
+@Slf4j
+final class BlobUriParser {
+
+  static final String WALLET_CONTAINER = "nexi";
+
+  static final String WALLET_DIRECTORY = "in";
+
+  private static final Pattern RTD_URI = Pattern.compile(
+      "^.*containers/((ade|rtd)(-transactions-[a-z0-9]{44}))/blobs/(.*)");
+
+  private static final Pattern WALLET_URI = Pattern.compile(
+      "^.*containers/(" + WALLET_CONTAINER + ")/blobs/" + WALLET_DIRECTORY + "/(.*)");
+
+  private static final CharClassPattern RTD_SERVICE = compile("ADE|CSTAR");
+
+  private static final CharClassPattern SENDER_CODE = compile("[a-zA-Z0-9]{5}");
+
+  private static final CharClassPattern FLOW_NUMBER = compile("\\d{3}");
+
+  private static final CharClassPattern BATCH_SERVICE_CHUNK_NUMBER = compile("\\d{2}");
+
+  // Strict, so that wrong dates and times are refused instead of overflowing in the next ones
+  private static final DateTimeFormatter CREATION_DATE_TIME = DateTimeFormatter
+      .ofPattern("uuuuMMddHHmmss")
+      .withResolverStyle(ResolverStyle.STRICT);
+
+  private BlobUriParser() {
+  }
+
+  /**
+   * Matches the URI of an RTD or ADE blob: the groups are the container, the application token,
+   * the rest of the container name and the blob name.
+   */
+  static Matcher matchRtdUri(String uri) {
+    return RTD_URI.matcher(uri);
+  }
+
+  /**
+   * Matches the URI of a wallet export: the groups are the container and the blob name.
+   */
+  static Matcher matchWalletUri(String uri) {
+    return WALLET_URI.matcher(uri);
+  }
+
+  static boolean isRtdService(String token) {
+    return RTD_SERVICE.matches(token);
+  }
+
+  static boolean isSenderCode(String token) {
+    return SENDER_CODE.matches(token);
+  }
+
+  static boolean isFlowNumber(String token) {
+    return FLOW_NUMBER.matches(token);
+  }
+
+  static boolean isBatchServiceChunkNumber(String token) {
+    return BATCH_SERVICE_CHUNK_NUMBER.matches(token);
+  }
+
+  /**
+   * Tells whether a date (yyyyMMdd) and a time (HHmmss) of a blob name exist.
+   */
+  static boolean isCreationDateTime(String date, String time) {
+    try {
+      CREATION_DATE_TIME.parse(date + time);
+      return true;
+    } catch (DateTimeParseException e) {
+      log.error("Error parsing date and time: {}", e.getMessage());
+      return false;
+    }
+  }
+
+  private static CharClassPattern compile(String regex) {
+    return CharClassPattern.compile(regex).orElseThrow();
+  }
+}
@@ -1,7 +1,8 @@
 package it.gov.pagopa.rtd.ms.rtdmsdecrypter.model;
 
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.utils.CardinalityCounter;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.utils.FingerprintSet;
 import java.time.LocalDate;
-import java.util.HashSet;
 
 import lombok.Getter;
 import lombok.Setter;
@@ -9,7 +10,7 @@ import lombok.Setter;
 @Getter
 @Setter
 public class ReportMetaData {
-  private HashSet<String> merchantList;
+  private CardinalityCounter merchants;
   private long numCanceledTrx;
   private long numPositiveTrx;
   private long totalAmountCanceledTrx;
@@ -17,9 +18,19 @@ public class ReportMetaData {
   private LocalDate minAccountingDate;
   private LocalDate maxAccountingDate;
   private String checkSum;
+  private String computedCheckSum;
 
   public ReportMetaData() {
-    this.merchantList = new HashSet<>();
+    this(new FingerprintSet());
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param merchants the counter of the distinct merchants
+   */
+  public ReportMetaData(CardinalityCounter merchants) {
+    this.merchants = merchants;
     this.numCanceledTrx = 0L;
     this.numPositiveTrx = 0L;
     this.totalAmountCanceledTrx = 0L;
@@ -27,6 +38,26 @@ public class ReportMetaData {
     this.minAccountingDate = LocalDate.MAX;
     this.maxAccountingDate = LocalDate.MIN;
     this.checkSum = "";
+    this.computedCheckSum = "";
+  }
+
+  /**
+   * Tells whether the checksum header declares the SHA-256 digest of the payload computed while
+   * decrypting it.
+   *
+   * @return true if the declared and computed digests are equal
+   */
+  public boolean isCheckSumVerified() {
+    String declared = checkSum.substring(checkSum.indexOf(':') + 1).trim();
+    return !computedCheckSum.isEmpty() && declared.equalsIgnoreCase(computedCheckSum);
+  }
+
+  public void addMerchant(String merchantId) {
+    merchants.add(merchantId);
+  }
+
+  public long getNumMerchant() {
+    return merchants.cardinality();
   }
 
   public void updateAccountingDate(LocalDate accountingDate) {
@@ -54,4 +85,23 @@ public class ReportMetaData {
     }
   }
 
+  /**
+   * Adds the figures gathered from another report, e.g. the one of a single chunk. Chunks can be
+   * verified concurrently, so the merge is atomic with respect to other merges on this report.
+   *
+   * @param other the report to be merged into this one
+   */
+  public synchronized void merge(ReportMetaData other) {
+    this.merchants = this.merchants.merge(other.getMerchants());
+    setNumCanceledTrx(this.numCanceledTrx + other.getNumCanceledTrx());
+    setNumPositiveTrx(this.numPositiveTrx + other.getNumPositiveTrx());
+    setTotalAmountCanceledTrx(this.totalAmountCanceledTrx + other.getTotalAmountCanceledTrx());
+    setTotalAmountPositiveTrx(this.totalAmountPositiveTrx + other.getTotalAmountPositiveTrx());
+    if (this.minAccountingDate.isAfter(other.getMinAccountingDate())) {
+      this.setMinAccountingDate(other.getMinAccountingDate());
+    }
+    if (this.maxAccountingDate.isBefore(other.getMaxAccountingDate())) {
+      this.setMaxAccountingDate(other.getMaxAccountingDate());
+    }
+  }
 }
@@ -3,15 +3,12 @@ package it.gov.pagopa.rtd.ms.rtdmsdecrypter.service;
 import com.opencsv.bean.BeanVerifier;
 import com.opencsv.exceptions.CsvConstraintViolationException;
 import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.AdeTransactionsAggregate;
-import jakarta.validation.ConstraintViolation;
-import jakarta.validation.Validation;
-import jakarta.validation.Validator;
-import jakarta.validation.ValidatorFactory;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.utils.RecordValidator;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.utils.RecordValidator.Violation;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
-import java.util.Iterator;
-import java.util.Set;
+import java.util.List;
 
 /**
  * Implementation of {@link BeanVerifier}, used to verify the validity of the
@@ -20,9 +17,12 @@ import java.util.Set;
 public class AdeAggregatesVerifier implements BeanVerifier<AdeTransactionsAggregate> {
 
   static String malformedFieldMessage = "Malformed field extracted:";
-  private static final ValidatorFactory factory = Validation.buildDefaultValidatorFactory();
 
-  private static final Validator validator = factory.getValidator();
+  private static final RecordValidator<AdeTransactionsAggregate> validator =
+      RecordValidator.compile(AdeTransactionsAggregate.class);
+
+  private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern(
+      "yyyy-MM-dd");
 
   /**
    * Implementation of {@link BeanVerifier#verifyBean(Object)}, used to verify the validity of the
@@ -35,38 +35,33 @@ public class AdeAggregatesVerifier implements BeanVerifier<AdeTransactionsAggreg
   @Override
   public boolean verifyBean(AdeTransactionsAggregate adeTransactionsAggregate)
       throws CsvConstraintViolationException {
-    StringBuilder recordTroubleshootingInfo = new StringBuilder();
-    StringBuilder malformedFields = new StringBuilder();
-
-    Set<ConstraintViolation<AdeTransactionsAggregate>> violations = validator.validate(
-        adeTransactionsAggregate);
-
-    if (!violations.isEmpty()) {
-      Iterator<ConstraintViolation<AdeTransactionsAggregate>> violationIterator = violations.iterator();
+    List<Violation> violations = validator.validate(adeTransactionsAggregate);
 
-      while (violationIterator.hasNext()) {
-        ConstraintViolation<AdeTransactionsAggregate> violation = violationIterator.next();
+    // Timestamps validity must be verified outside violations iterator
+    boolean validTransmissionDate = validateDate(adeTransactionsAggregate.getTransmissionDate());
+    boolean validAccountingDate = validateDate(adeTransactionsAggregate.getAccountingDate());
 
-        malformedFields.append(malformedFieldMessage).append(" (")
-            .append(violation.getPropertyPath().toString()).append(": ");
-        malformedFields.append(violation.getMessage()).append("), ");
-      }
+    if (violations.isEmpty() && validTransmissionDate && validAccountingDate) {
+      return true;
     }
 
-    parseTroubleshootingInfo(adeTransactionsAggregate, recordTroubleshootingInfo);
-
-    // Timestamps validity must be verified outside violations iterator
+    // The troubleshooting info is built only for the records that are not valid
+    StringBuilder malformedFields = new StringBuilder();
+    parseTroubleshootingInfo(adeTransactionsAggregate, malformedFields);
 
-    if (adeTransactionsAggregate.getTransmissionDate() == null || !validateDate(
-        adeTransactionsAggregate.getTransmissionDate())) {
+    for (Violation violation : violations) {
+      malformedFields.append(malformedFieldMessage).append(" (")
+          .append(violation.propertyPath()).append(": ");
+      malformedFields.append(violation.message()).append("), ");
+    }
+    if (!validTransmissionDate) {
       malformedFields.append(malformedFieldMessage).append(" (")
           .append("transmission date").append(": ");
       malformedFields.append("Invalid transmission date ")
           .append(adeTransactionsAggregate.getTransmissionDate())
           .append("), ");
     }
-    if (adeTransactionsAggregate.getAccountingDate() == null || !validateDate(
-        adeTransactionsAggregate.getAccountingDate())) {
+    if (!validAccountingDate) {
       malformedFields.append(malformedFieldMessage).append(" (")
           .append("accounting date").append(": ");
       malformedFields.append("Invalid accounting date ")
@@ -74,40 +69,66 @@ public class AdeAggregatesVerifier implements BeanVerifier<AdeTransactionsAggreg
           .append("), ");
     }
 
-    if (!malformedFields.isEmpty()) {
-      throw new CsvConstraintViolationException(
-          recordTroubleshootingInfo.append(malformedFields).toString());
-    }
-
-    return true;
+    throw new CsvConstraintViolationException(malformedFields.toString());
   }
 
-  private boolean validateDate(String date) {
-    DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+  /**
+   * Checks a date as {@link LocalDate#parse} with the {@code yyyy-MM-dd} pattern would. Dates in
+   * the usual form are checked digit by digit without allocating; the others are left to the
+   * formatter, that resolves days past the end of the month to its last day.
+   *
+   * @param date the date to check
+   * @return true if the formatter parses it
+   */
+  static boolean validateDate(String date) {
+    if (date == null) {
+      return false;
+    }
+    if (date.length() == 10 && date.charAt(4) == '-' && date.charAt(7) == '-') {
+      int year = digits(date, 0, 4);
+      int month = digits(date, 5, 7);
+      int day = digits(date, 8, 10);
+      if (year > 0 && month >= 1 && month <= 12 && day >= 1 && day <= 31) {
+        return true;
+      }
+    }
     try {
-      LocalDate.parse(date, formatter);
+      LocalDate.parse(date, DATE_FORMATTER);
       return true;
     } catch (DateTimeParseException e) {
       return false;
     }
   }
 
+  // The value of the ASCII digits in the range, or -1 if some other character is found
+  private static int digits(String value, int start, int end) {
+    int result = 0;
+    for (int i = start; i < end; i++) {
+      char c = value.charAt(i);
+      if (c < '0' || c > '9') {
+        return -1;
+      }
+      result = result * 10 + c - '0';
+    }
+    return result;
+  }
+
   private void parseTroubleshootingInfo(AdeTransactionsAggregate adeTransactionsAggregate,
       StringBuilder recordTroubleshootingInfo) {
     if (adeTransactionsAggregate.getAcquirerCode() != null
         && !adeTransactionsAggregate.getAcquirerCode().isEmpty()) {
-      recordTroubleshootingInfo.append(
-          String.format("[Acquirer code: %s] ", adeTransactionsAggregate.getAcquirerCode()));
+      recordTroubleshootingInfo.append("[Acquirer code: ")
+          .append(adeTransactionsAggregate.getAcquirerCode()).append("] ");
     }
     if (adeTransactionsAggregate.getTerminalId() != null
         && !adeTransactionsAggregate.getTerminalId().isEmpty()) {
-      recordTroubleshootingInfo.append(
-          String.format("[Terminal id: %s] ", adeTransactionsAggregate.getTerminalId()));
+      recordTroubleshootingInfo.append("[Terminal id: ")
+          .append(adeTransactionsAggregate.getTerminalId()).append("] ");
     }
     if (adeTransactionsAggregate.getFiscalCode() != null
         && !adeTransactionsAggregate.getFiscalCode().isEmpty()) {
-      recordTroubleshootingInfo.append(
-          String.format("[Fiscal code: %s] ", adeTransactionsAggregate.getFiscalCode()));
+      recordTroubleshootingInfo.append("[Fiscal code: ")
+          .append(adeTransactionsAggregate.getFiscalCode()).append("] ");
     }
   }
 }
@@ -0,0 +1,49 @@
+package it.gov.pagopa.rtd.ms.rtdmsdecrypter.service;
+
+import com.opencsv.exceptions.CsvDataTypeMismatchException;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.AdeTransactionsAggregate;
+
+/**
+ * Implementation of {@link DecryptedRecordDecoder} for the {@link AdeTransactionsAggregate}
+ * records.
+ */
+public class AdeTransactionsAggregateDecoder extends
+    DecryptedRecordDecoder<AdeTransactionsAggregate> {
+
+  @Override
+  protected int columns() {
+    return 13;
+  }
+
+  @Override
+  protected AdeTransactionsAggregate newRecord() {
+    return new AdeTransactionsAggregate();
+  }
+
+  @Override
+  protected void decodeField(AdeTransactionsAggregate aggregate, int column, String value)
+      throws CsvDataTypeMismatchException {
+    switch (column) {
+      case 0 -> aggregate.setAcquirerCode(value);
+      case 1 -> aggregate.setOperationType(value);
+      case 2 -> aggregate.setTransmissionDate(value);
+      case 3 -> aggregate.setAccountingDate(value);
+      case 4 -> {
+        // Left to the default value when blank, as a primitive field
+        Integer numTrx = toInt(value);
+        if (numTrx != null) {
+          aggregate.setNumTrx(numTrx);
+        }
+      }
+      case 5 -> aggregate.setTotalAmount(toLong(value));
+      case 6 -> aggregate.setCurrency(value);
+      case 7 -> aggregate.setAcquirerId(value);
+      case 8 -> aggregate.setMerchantId(value);
+      case 9 -> aggregate.setTerminalId(value);
+      case 10 -> aggregate.setFiscalCode(value);
+      case 11 -> aggregate.setVat(value);
+      case 12 -> aggregate.setPosType(value);
+      default -> throw new IllegalArgumentException("Unmapped column " + column);
+    }
+  }
+}
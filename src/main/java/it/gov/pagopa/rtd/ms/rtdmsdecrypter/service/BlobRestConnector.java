@@ -1,6 +1,9 @@
 package it.gov.pagopa.rtd.ms.rtdmsdecrypter.service;
 
 import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.BlobApplicationAware;
+import java.io.InputStream;
+import java.util.Optional;
+import org.apache.commons.io.function.IOFunction;
 
 /**
  * Interface offering high-level abstractions for blob storage access.
@@ -10,6 +13,9 @@ public interface BlobRestConnector {
   // Downloads a blob and returns the name of the downloaded file
   BlobApplicationAware get(BlobApplicationAware blobUri);
 
+  // Downloads a blob and hands its content to the handler, without storing it locally
+  <T> Optional<T> stream(BlobApplicationAware blobUri, IOFunction<InputStream, T> contentHandler);
+
   // Uploads a blob and returns the name of the uploaded file
   BlobApplicationAware put(BlobApplicationAware fileName);
 
@@ -2,26 +2,50 @@ package it.gov.pagopa.rtd.ms.rtdmsdecrypter.service;
 
 import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.BlobApplicationAware;
 import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.BlobApplicationAware.Application;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.utils.BoundedExecutors;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.utils.LargeFileUtils;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.utils.LargeFileUtils.Transfer;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URLEncoder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
 import java.util.Objects;
-import lombok.RequiredArgsConstructor;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.function.IOFunction;
+import org.apache.commons.io.input.BoundedInputStream;
 import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.client5.http.classic.methods.HttpHead;
 import org.apache.hc.client5.http.classic.methods.HttpPut;
 import org.apache.hc.client5.http.entity.EntityBuilder;
 import org.apache.hc.client5.http.classic.HttpClient;
 import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpHeaders;
 import org.apache.hc.core5.http.HttpStatus;
 import org.apache.hc.core5.http.io.HttpClientResponseHandler;
-import org.apache.hc.core5.http.io.entity.FileEntity;
+import org.apache.hc.core5.http.io.entity.AbstractHttpEntity;
+import org.apache.hc.core5.http.io.entity.StringEntity;
 import org.apache.hc.core5.http.message.BasicHeader;
 import jakarta.validation.constraints.NotNull;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatusCode;
 import org.springframework.stereotype.Service;
-import org.springframework.util.StreamUtils;
 import org.springframework.web.server.ResponseStatusException;
 import java.nio.charset.StandardCharsets;
 
@@ -30,7 +54,6 @@ import java.nio.charset.StandardCharsets;
  */
 @Service
 @Slf4j
-@RequiredArgsConstructor
 public class BlobRestConnectorImpl implements BlobRestConnector {
 
   @Value("${decrypt.api.baseurl}")
@@ -51,8 +74,64 @@ public class BlobRestConnectorImpl implements BlobRestConnector {
   @Value("${decrypt.blobclient.sftp-basepath}")
   private String sftpBlobBasePath;
 
+  @Setter
+  @Value("${decrypt.downloader.enableRangedDownload:false}")
+  private boolean isRangedDownloadEnabled;
+
+  @Setter
+  @Value("${decrypt.downloader.rangeSize:8388608}")
+  private long rangeSize;
+
+  @Setter
+  @Value("${decrypt.downloader.rangeRetries:3}")
+  private int rangeRetries;
+
+  @Setter
+  @Value("${decrypt.downloader.rangeRetryBackoffMillis:200}")
+  private long rangeRetryBackoffMillis;
+
+  @Setter
+  @Value("${decrypt.uploader.enableStagedUpload:false}")
+  private boolean isStagedUploadEnabled;
+
+  @Setter
+  @Value("${decrypt.uploader.blockSize:8388608}")
+  private long blockSize;
+
+  @Setter
+  @Value("${decrypt.uploader.blockRetries:3}")
+  private int blockRetries;
+
+  @Setter
+  @Value("${decrypt.uploader.blockRetryBackoffMillis:200}")
+  private long blockRetryBackoffMillis;
+
+  // Size of the buffers copying the downloaded and uploaded content
+  @Setter
+  @Value("${decrypt.io.bufferSize:131072}")
+  private int bufferSize;
+
   private final HttpClient httpClient;
 
+  private final ExecutorService rangeDownloader;
+
+  private final ExecutorService blockUploader;
+
+  /**
+   * Constructor.
+   *
+   * @param httpClient      client of the blob storage
+   * @param rangeDownloader pool fetching the ranges of the blobs downloaded in parallel
+   * @param blockUploader   pool staging the blocks of the blobs uploaded in parallel
+   */
+  public BlobRestConnectorImpl(HttpClient httpClient,
+      @Qualifier("rangeDownloaderExecutor") ExecutorService rangeDownloader,
+      @Qualifier("blockUploaderExecutor") ExecutorService blockUploader) {
+    this.httpClient = httpClient;
+    this.rangeDownloader = rangeDownloader;
+    this.blockUploader = blockUploader;
+  }
+
   /**
    * Method that allows the get of the blob from a remote storage.
    *
@@ -62,23 +141,44 @@ public class BlobRestConnectorImpl implements BlobRestConnector {
    */
   public BlobApplicationAware get(BlobApplicationAware blob) {
     log.info("Start GET blob {} from {}", blob.getBlob(), blob.getContainer());
-    String targetBlob = blob.getBlob();
-    String targetBasePath = blobBasePath;
 
-    if (blob.getApp().equals(Application.WALLET)) {
-      targetBlob = "in/" + blob.getBlob();
-      targetBasePath = sftpBlobBasePath;
+    try {
+      BlobProperties properties = isRangedDownloadEnabled ? getBlobProperties(blob) : null;
+      if (properties != null && properties.size() > rangeSize) {
+        getRanges(blob, properties);
+      } else {
+        httpClient.execute(getBlobRequest(blob), downloadFileIn(blob));
+      }
+      blob.setStatus(BlobApplicationAware.Status.DOWNLOADED);
+      log.info("Successful GET of blob {} from {}", blob.getBlob(), blob.getContainer());
+    } catch (ResponseStatusException ex) {
+      log.error("Cannot GET blob {} from {}. Invalid HTTP response: {}, {}", blob.getBlob(),
+          blob.getTargetContainer(), ex.getStatusCode().value(), ex.getReason());
+    } catch (Exception ex) {
+      log.error("Cannot GET blob {} from {}: {}", blob.getBlob(), blob.getContainer(), ex.getMessage());
     }
 
-    String uri = baseUrl + "/" + targetBasePath + "/" + blob.getContainer() + "/" + targetBlob;
+    return blob;
+  }
 
-    final HttpGet getBlob = new HttpGet(uri);
-    getBlob.setHeader(new BasicHeader(SUB_KEY_HEADER, blobApiKey));
+  /**
+   * Method that streams the content of a blob from a remote storage, without storing it locally.
+   *
+   * @param blob           a blob that has been received from the event hub but not downloaded.
+   * @param contentHandler consumer of the blob content, invoked while the response is open
+   * @param <T>            type of the result of the content handler
+   * @return the result of the content handler, empty if the blob cannot be read
+   */
+  @Override
+  public <T> Optional<T> stream(BlobApplicationAware blob,
+      IOFunction<InputStream, T> contentHandler) {
+    log.info("Start streaming GET blob {} from {}", blob.getBlob(), blob.getContainer());
 
     try {
-      httpClient.execute(getBlob, downloadFileIn(blob));
+      T result = httpClient.execute(getBlobRequest(blob), streamContentTo(contentHandler));
       blob.setStatus(BlobApplicationAware.Status.DOWNLOADED);
-      log.info("Successful GET of blob {} from {}", blob.getBlob(), blob.getContainer());
+      log.info("Successful streaming GET of blob {} from {}", blob.getBlob(), blob.getContainer());
+      return Optional.ofNullable(result);
     } catch (ResponseStatusException ex) {
       log.error("Cannot GET blob {} from {}. Invalid HTTP response: {}, {}", blob.getBlob(),
           blob.getTargetContainer(), ex.getStatusCode().value(), ex.getReason());
@@ -86,18 +186,178 @@ public class BlobRestConnectorImpl implements BlobRestConnector {
       log.error("Cannot GET blob {} from {}: {}", blob.getBlob(), blob.getContainer(), ex.getMessage());
     }
 
-    return blob;
+    return Optional.empty();
+  }
+
+  private HttpGet getBlobRequest(BlobApplicationAware blob) {
+    final HttpGet getBlob = new HttpGet(sourceBlobUri(blob));
+    getBlob.setHeader(new BasicHeader(SUB_KEY_HEADER, blobApiKey));
+    return getBlob;
+  }
+
+  private String sourceBlobUri(BlobApplicationAware blob) {
+    String targetBlob = blob.getBlob();
+    String targetBasePath = blobBasePath;
+
+    if (blob.getApp().equals(Application.WALLET)) {
+      targetBlob = "in/" + blob.getBlob();
+      targetBasePath = sftpBlobBasePath;
+    }
+
+    return baseUrl + "/" + targetBasePath + "/" + blob.getContainer() + "/" + targetBlob;
+  }
+
+  /**
+   * Size and entity tag of a blob, as returned by a Get Blob Properties call.
+   *
+   * @param size the size of the blob, negative if unknown
+   * @param etag the entity tag of the blob, null if not returned
+   */
+  record BlobProperties(long size, String etag) {
+
+  }
+
+  private BlobProperties getBlobProperties(BlobApplicationAware blob) throws IOException {
+    final HttpHead headBlob = new HttpHead(sourceBlobUri(blob));
+    headBlob.setHeader(new BasicHeader(SUB_KEY_HEADER, blobApiKey));
+    return httpClient.execute(headBlob, response -> {
+      if (response.getCode() != HttpStatus.SC_OK) {
+        throw new ResponseStatusException(HttpStatusCode.valueOf(response.getCode()),
+            response.getReasonPhrase());
+      }
+      Header contentLength = response.getFirstHeader(HttpHeaders.CONTENT_LENGTH);
+      Header etag = response.getFirstHeader(HttpHeaders.ETAG);
+      return new BlobProperties(
+          contentLength == null ? -1 : Long.parseLong(contentLength.getValue()),
+          etag == null ? null : etag.getValue());
+    });
+  }
+
+  /**
+   * Downloads a blob fetching byte ranges in parallel, each written at its offset of the local
+   * file. A range interrupted midway is resumed from the first missing byte. Every range is
+   * requested with the entity tag read before the download, so that a blob overwritten meanwhile
+   * fails the download instead of mixing two versions.
+   */
+  private void getRanges(BlobApplicationAware blob, BlobProperties properties)
+      throws IOException {
+    long size = properties.size();
+    int ranges = (int) ((size + rangeSize - 1) / rangeSize);
+    log.info("Start ranged GET of blob {} from {} in {} ranges", blob.getBlob(),
+        blob.getContainer(), ranges);
+
+    try (FileChannel target = FileChannel.open(Path.of(blob.getTargetDir(), blob.getBlob()),
+        StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING)) {
+      List<Callable<Boolean>> downloads = new ArrayList<>(ranges);
+      AtomicBoolean failed = new AtomicBoolean(false);
+      for (int i = 0; i < ranges; i++) {
+        long start = i * rangeSize;
+        long end = Math.min(start + rangeSize, size) - 1;
+        downloads.add(() -> {
+          // Once a range is given up the blob is incomplete: skip the remaining ones
+          if (failed.get() || !getRangeWithRetries(blob, target, properties, start, end)) {
+            failed.set(true);
+            return false;
+          }
+          return true;
+        });
+      }
+
+      boolean downloaded = BoundedExecutors.invokeAllOrdered(rangeDownloader, downloads)
+          .stream().allMatch(Boolean::booleanValue);
+      if (!downloaded) {
+        throw new IOException("Some ranges cannot be downloaded");
+      }
+    }
+  }
+
+  private boolean getRangeWithRetries(BlobApplicationAware blob, FileChannel target,
+      BlobProperties properties, long start, long end) {
+    AtomicLong position = new AtomicLong(start);
+    for (int attempt = 0; attempt <= rangeRetries && position.get() <= end; attempt++) {
+      if (attempt > 0 && !backOff(rangeRetryBackoffMillis * attempt)) {
+        log.warn("Interrupted before retrying range {}-{} of blob {}", position.get(), end,
+            blob.getBlob());
+        return false;
+      }
+      final HttpGet getRange = getBlobRequest(blob);
+      getRange.setHeader(new BasicHeader(HttpHeaders.RANGE, "bytes=" + position.get() + "-" + end));
+      if (properties.etag() != null) {
+        getRange.setHeader(new BasicHeader(HttpHeaders.IF_MATCH, properties.etag()));
+      }
+      try {
+        httpClient.execute(getRange, writeRangeAt(target, position, end, properties.size()));
+      } catch (BlobChangedException ex) {
+        // Retrying would fetch bytes of another version of the blob
+        log.error("Cannot GET range {}-{} of blob {}: {}", position.get(), end, blob.getBlob(),
+            ex.getMessage());
+        return false;
+      } catch (ResponseStatusException ex) {
+        log.warn("Cannot GET range {}-{} of blob {} (attempt {}). Invalid HTTP response: {}, {}",
+            position.get(), end, blob.getBlob(), attempt + 1, ex.getStatusCode().value(),
+            ex.getReason());
+      } catch (IOException ex) {
+        log.warn("Cannot GET range {}-{} of blob {} (attempt {}). Unexpected error: {}",
+            position.get(), end, blob.getBlob(), attempt + 1, ex.getMessage());
+      }
+    }
+    return position.get() > end;
+  }
+
+  // Advances the position as bytes are written, so that a broken range can be resumed
+  @NotNull
+  protected HttpClientResponseHandler<Long> writeRangeAt(FileChannel target,
+      AtomicLong position, long end, long size) {
+    return response -> {
+      if (response.getCode() == HttpStatus.SC_PRECONDITION_FAILED) {
+        throw new BlobChangedException("blob changed since the download started");
+      }
+      if (response.getCode() != HttpStatus.SC_PARTIAL_CONTENT) {
+        throw new ResponseStatusException(HttpStatusCode.valueOf(response.getCode()),
+            response.getReasonPhrase());
+      }
+      String expectedRange = "bytes " + position.get() + "-" + end + "/" + size;
+      Header contentRange = response.getFirstHeader(HttpHeaders.CONTENT_RANGE);
+      if (contentRange == null || !expectedRange.equals(contentRange.getValue())) {
+        throw new BlobChangedException("expected content range " + expectedRange + ", got "
+            + (contentRange == null ? "none" : contentRange.getValue()));
+      }
+      try (InputStream content = Objects.requireNonNull(response.getEntity().getContent())) {
+        LargeFileUtils.copy(content, target, position, bufferSize);
+      }
+      return position.get();
+    };
   }
 
   @NotNull
-  protected HttpClientResponseHandler<Integer> downloadFileIn(BlobApplicationAware blob) {
+  protected HttpClientResponseHandler<Long> downloadFileIn(BlobApplicationAware blob) {
     return response -> {
       if (response.getCode() != HttpStatus.SC_OK) {
         throw new ResponseStatusException(HttpStatusCode.valueOf(response.getCode()),
             response.getReasonPhrase());
       }
-      return StreamUtils.copy(Objects.requireNonNull(response.getEntity().getContent()),
-          new FileOutputStream(Path.of(blob.getTargetDir(), blob.getBlob()).toFile()));
+      try (InputStream content = Objects.requireNonNull(response.getEntity().getContent());
+          OutputStream target = new FileOutputStream(
+              Path.of(blob.getTargetDir(), blob.getBlob()).toFile())) {
+        Transfer transfer = LargeFileUtils.copy(content, target, bufferSize);
+        log.info("Downloaded blob {}: {}", blob.getBlob(), transfer);
+        return transfer.bytes();
+      }
+    };
+  }
+
+  @NotNull
+  protected <T> HttpClientResponseHandler<T> streamContentTo(
+      IOFunction<InputStream, T> contentHandler) {
+    return response -> {
+      if (response.getCode() != HttpStatus.SC_OK) {
+        throw new ResponseStatusException(HttpStatusCode.valueOf(response.getCode()),
+            response.getReasonPhrase());
+      }
+      try (InputStream content = Objects.requireNonNull(response.getEntity().getContent())) {
+        return contentHandler.apply(content);
+      }
     };
   }
 
@@ -111,10 +371,19 @@ public class BlobRestConnectorImpl implements BlobRestConnector {
     log.info("Start PUT blob {} to {}", blob.getBlob(), blob.getTargetContainer());
 
     String uri = baseUrl + "/" + blobBasePath + "/" + blob.getTargetContainer() + "/" + blob.getBlob();
+    Path chunkPath = Path.of(blob.getTargetDir(), blob.getBlob());
 
-    FileEntity entity = new FileEntity(
-        Path.of(blob.getTargetDir(), blob.getBlob()).toFile(),
-        ContentType.create("application/octet-stream"));
+    try {
+      if (isStagedUploadEnabled && Files.size(chunkPath) > blockSize) {
+        return putBlocks(blob, uri, chunkPath);
+      }
+    } catch (IOException ex) {
+      log.error("Cannot PUT blob {} in {}. Unexpected error: {}", blob.getBlob(),
+          blob.getTargetContainer(), ex.getMessage());
+      return blob;
+    }
+
+    FileRegionEntity entity = new FileRegionEntity(chunkPath, 0, -1, bufferSize);
 
     final HttpPut putBlob = new HttpPut(uri);
     putBlob.setHeader(new BasicHeader(SUB_KEY_HEADER, blobApiKey));
@@ -139,6 +408,181 @@ public class BlobRestConnectorImpl implements BlobRestConnector {
     return blob;
   }
 
+  /**
+   * Uploads a blob in blocks: every block is staged with a Put Block call, in parallel, and the
+   * blob is committed with a Put Block List call once all of them are staged. A failed block is
+   * retried on its own, without uploading the whole blob again.
+   */
+  private BlobApplicationAware putBlocks(BlobApplicationAware blob, String uri, Path chunkPath)
+      throws IOException {
+    long size = Files.size(chunkPath);
+    int blocks = (int) ((size + blockSize - 1) / blockSize);
+    log.info("Start staged PUT of blob {} to {} in {} blocks", blob.getBlob(),
+        blob.getTargetContainer(), blocks);
+
+    List<String> blockIds = new ArrayList<>(blocks);
+    List<Callable<Boolean>> stagings = new ArrayList<>(blocks);
+    AtomicBoolean failed = new AtomicBoolean(false);
+    for (int i = 0; i < blocks; i++) {
+      // Block ids must have the same length within a blob
+      String blockId = Base64.getEncoder().encodeToString(
+          String.format("%06d", i).getBytes(StandardCharsets.UTF_8));
+      long offset = i * blockSize;
+      long length = Math.min(blockSize, size - offset);
+      blockIds.add(blockId);
+      stagings.add(() -> {
+        // Once a block is given up the blob cannot be committed: skip the remaining ones
+        if (failed.get() || !putBlockWithRetries(blob, uri, blockId, chunkPath, offset, length)) {
+          failed.set(true);
+          return false;
+        }
+        return true;
+      });
+    }
+
+    boolean staged = BoundedExecutors.invokeAllOrdered(blockUploader, stagings).stream()
+        .allMatch(Boolean::booleanValue);
+    if (!staged) {
+      log.error("Cannot PUT blob {} in {}. Some blocks cannot be staged", blob.getBlob(),
+          blob.getTargetContainer());
+      return blob;
+    }
+
+    StringBuilder blockList = new StringBuilder(
+        "<?xml version=\"1.0\" encoding=\"utf-8\"?><BlockList>");
+    blockIds.forEach(id -> blockList.append("<Latest>").append(id).append("</Latest>"));
+    blockList.append("</BlockList>");
+
+    final HttpPut putBlockList = new HttpPut(uri + "?comp=blocklist");
+    putBlockList.setHeader(new BasicHeader(SUB_KEY_HEADER, blobApiKey));
+    putBlockList.setHeader(new BasicHeader("x-ms-version", "2021-04-10"));
+    putBlockList.setHeader(new BasicHeader("If-None-Match", "*"));
+    putBlockList.setHeader(new BasicHeader(BLOB_METADATA_PREFIX + "numChunk", blob.getNumChunk()));
+    putBlockList.setHeader(
+        new BasicHeader(BLOB_METADATA_PREFIX + "totalChunk", blob.getTotChunk()));
+    putBlockList.setEntity(new StringEntity(blockList.toString(),
+        ContentType.create("application/xml", StandardCharsets.UTF_8)));
+
+    try {
+      httpClient.execute(putBlockList, validateStatusCode());
+      blob.setStatus(BlobApplicationAware.Status.UPLOADED);
+      log.info("Successful staged PUT of blob {} in {}", blob.getBlob(), blob.getTargetContainer());
+    } catch (ResponseStatusException ex) {
+      log.error("Cannot commit blocks of blob {} in {}. Invalid HTTP response: {}, {}",
+          blob.getBlob(), blob.getTargetContainer(), ex.getStatusCode().value(), ex.getReason());
+    } catch (Exception ex) {
+      log.error("Cannot commit blocks of blob {} in {}. Unexpected error: {}", blob.getBlob(),
+          blob.getTargetContainer(), ex.getMessage());
+    }
+    return blob;
+  }
+
+  private boolean putBlockWithRetries(BlobApplicationAware blob, String uri, String blockId,
+      Path chunkPath, long offset, long length) {
+    final HttpPut putBlock = new HttpPut(uri + "?comp=block&blockid="
+        + URLEncoder.encode(blockId, StandardCharsets.UTF_8));
+    putBlock.setHeader(new BasicHeader(SUB_KEY_HEADER, blobApiKey));
+    putBlock.setHeader(new BasicHeader("x-ms-version", "2021-04-10"));
+    putBlock.setEntity(new FileRegionEntity(chunkPath, offset, length, bufferSize));
+
+    for (int attempt = 0; attempt <= blockRetries; attempt++) {
+      if (attempt > 0 && !backOff(blockRetryBackoffMillis * attempt)) {
+        log.warn("Interrupted before retrying block {} of blob {}", blockId, blob.getBlob());
+        return false;
+      }
+      try {
+        httpClient.execute(putBlock, validateStatusCode());
+        return true;
+      } catch (ResponseStatusException ex) {
+        log.warn("Cannot PUT block {} of blob {} (attempt {}). Invalid HTTP response: {}, {}",
+            blockId, blob.getBlob(), attempt + 1, ex.getStatusCode().value(), ex.getReason());
+      } catch (IOException ex) {
+        log.warn("Cannot PUT block {} of blob {} (attempt {}). Unexpected error: {}", blockId,
+            blob.getBlob(), attempt + 1, ex.getMessage());
+      }
+    }
+    return false;
+  }
+
+  // Waits before a retry: false if interrupted, with the interrupt flag restored
+  private static boolean backOff(long millis) {
+    try {
+      Thread.sleep(millis);
+      return true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  /**
+   * Failure of a ranged download caused by a blob changed since its properties were read.
+   */
+  static class BlobChangedException extends IOException {
+
+    BlobChangedException(String message) {
+      super(message);
+    }
+  }
+
+  /**
+   * Entity sending a region of a file, read again from the file at every retry. A negative length
+   * sends the whole file, sized when the request is sent.
+   */
+  private static class FileRegionEntity extends AbstractHttpEntity {
+
+    private final Path path;
+    private final long offset;
+    private final long length;
+    private final int bufferSize;
+
+    FileRegionEntity(Path path, long offset, long length, int bufferSize) {
+      super(ContentType.APPLICATION_OCTET_STREAM, null);
+      this.path = path;
+      this.offset = offset;
+      this.length = length;
+      this.bufferSize = bufferSize;
+    }
+
+    @Override
+    public boolean isRepeatable() {
+      return true;
+    }
+
+    @Override
+    public long getContentLength() {
+      return length >= 0 ? length : path.toFile().length();
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+      FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+      return BoundedInputStream.builder()
+          .setInputStream(Channels.newInputStream(channel.position(offset)))
+          .setMaxCount(getContentLength())
+          .get();
+    }
+
+    @Override
+    public void writeTo(OutputStream outStream) throws IOException {
+      try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+        Transfer transfer = LargeFileUtils.copy(channel, offset, getContentLength(),
+            outStream, bufferSize);
+        log.debug("Uploaded {} of {}", transfer, path.getFileName());
+      }
+    }
+
+    @Override
+    public boolean isStreaming() {
+      return false;
+    }
+
+    @Override
+    public void close() {
+      // Nothing to release: the file is opened on every write
+    }
+  }
+
   @NotNull
   protected HttpClientResponseHandler<Void> validateStatusCode() {
     return response -> {
@@ -165,7 +609,7 @@ public class BlobRestConnectorImpl implements BlobRestConnector {
     final HttpPut setMetadata = new HttpPut(uri);
     setMetadata.setHeader(new BasicHeader(SUB_KEY_HEADER, blobApiKey));
     setMetadata.setHeader(
-        new BasicHeader(BLOB_METADATA_PREFIX + "numMerchant", blob.getReportMetaData().getMerchantList().size()));
+        new BasicHeader(BLOB_METADATA_PREFIX + "numMerchant", blob.getReportMetaData().getNumMerchant()));
     setMetadata.setHeader(
         new BasicHeader(BLOB_METADATA_PREFIX + "numCanceledTrx", blob.getReportMetaData().getNumCanceledTrx()));
     setMetadata.setHeader(
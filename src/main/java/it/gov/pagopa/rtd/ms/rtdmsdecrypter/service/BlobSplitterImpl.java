@@ -1,6 +1,5 @@
 package it.gov.pagopa.rtd.ms.rtdmsdecrypter.service;
 
-import static it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.BlobApplicationAware.Status.SPLIT;
 import static it.gov.pagopa.rtd.ms.rtdmsdecrypter.service.BlobVerifierImpl.deserializeAndVerifyContract;
 
 import com.fasterxml.jackson.core.JsonFactory;
@@ -11,10 +10,19 @@ import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.exc.MismatchedInputException;
 import com.fasterxml.jackson.databind.exc.UnrecognizedPropertyException;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.BaseUnits;
 import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.BlobApplicationAware;
 import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.BlobApplicationAware.Application;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.BlobChunk;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.ReportMetaData;
 import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.WalletContract;
 import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.WalletExportHeader;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.telemetry.StageMetrics;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.utils.BoundedExecutors;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.utils.ChunkLimits;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.utils.MappedLineScanner;
 import jakarta.validation.ConstraintViolation;
 import jakarta.validation.Validation;
 import jakarta.validation.Validator;
@@ -22,21 +30,35 @@ import jakarta.validation.ValidatorFactory;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.CharacterCodingException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.stream.Stream;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.LineIterator;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.mutable.MutableBoolean;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
@@ -56,17 +78,67 @@ public class BlobSplitterImpl implements BlobSplitter {
   @Value("${decrypt.splitter.walletThreshold}")
   private int contractsSplitThreshold;
 
+  // Bytes closing a blob chunk before the lines threshold is reached, if positive.
+  @Value("${decrypt.splitter.aggregatesMaxBytes:0}")
+  private long aggregatesMaxBytes;
+
+  // Bytes closing a contracts blob chunk before the contracts threshold is reached, if positive.
+  @Value("${decrypt.splitter.walletMaxBytes:0}")
+  private long contractsSplitMaxBytes;
+
   private String decryptedSuffix = ".decrypted";
 
   @Value("${decrypt.skipChecksum}")
   private boolean checksumSkipped;
 
+  // Reject the blobs whose checksum header is not the digest of the decrypted payload. The batch
+  // service declares the digest of the file of the acquirer, before the PANs are hashed, which
+  // the decrypter never receives: enforce it only for senders declaring the digest of the payload.
+  @Value("${decrypt.enforceChecksum:false}")
+  private boolean checksumEnforced;
+
+  // Verify wallet contracts on their tokens and copy them, without binding them to objects.
+  @Value("${decrypt.splitter.walletPassthrough:false}")
+  private boolean walletPassthrough;
+
+  // Verify the records of the chunks while they are written, instead of reading them again.
+  @Value("${decrypt.splitter.verifyWhileSplitting:false}")
+  private boolean verifyWhileSplitting;
+
+  // Split the decrypted files on their newline bytes, without decoding the lines.
+  @Value("${decrypt.splitter.enableMappedSplit:false}")
+  private boolean mappedSplitEnabled;
+
+  // Regions of the decrypted files scanned and copied concurrently by the mapped split.
+  @Value("${decrypt.splitter.parallelism:1}")
+  private int splitParallelism;
+
+  private final ObjectProvider<BlobVerifierImpl> chunkVerifier;
+
+  private final ObjectProvider<MeterRegistry> meterRegistry;
+
   private static final String CHECKSUM_REGEX = "^#sha256.*";
 
   private static final ValidatorFactory factory = Validation.buildDefaultValidatorFactory();
 
   private static final Validator validator = factory.getValidator();
 
+  public BlobSplitterImpl(ObjectProvider<BlobVerifierImpl> chunkVerifier,
+      ObjectProvider<MeterRegistry> meterRegistry) {
+    this.chunkVerifier = chunkVerifier;
+    this.meterRegistry = meterRegistry;
+  }
+
+  /**
+   * Tells whether the chunks returned by the split are already verified, so that their status is
+   * VERIFIED only if all their records are valid and the report of the blob is complete.
+   *
+   * @return true if the chunks are verified while they are split
+   */
+  public boolean isVerifyWhileSplitting() {
+    return verifyWhileSplitting && chunkVerifier.getIfAvailable() != null;
+  }
+
   /**
    * Method that split the content of a blob in chunks of n lines.
    *
@@ -75,6 +147,35 @@ public class BlobSplitterImpl implements BlobSplitter {
    */
   public Stream<BlobApplicationAware> split(BlobApplicationAware blob) {
     String blobPath = Path.of(blob.getTargetDir(), blob.getBlob() + decryptedSuffix).toString();
+
+    if (mappedSplitEnabled && (blob.getApp() == Application.ADE
+        || blob.getApp() == Application.RTD) && Files.exists(Path.of(blobPath))) {
+      ArrayList<BlobApplicationAware> blobSplit = new ArrayList<>();
+      Boolean successfulSplit = splitMappedRtdTaeBlob(blob, Path.of(blobPath), blobSplit);
+      if (successfulSplit != null) {
+        return finalizeSplit(blob, successfulSplit, blobSplit);
+      }
+      log.info("Blob {} has carriage returns or malformed UTF-8, splitting it line by line",
+          blob.getBlob());
+    }
+
+    try (InputStream decrypted = new FileInputStream(blobPath)) {
+      return split(blob, decrypted);
+    } catch (IOException e) {
+      log.error("Missing blob file:{}", blobPath);
+      return finalizeSplit(blob, false, new ArrayList<>());
+    }
+  }
+
+  /**
+   * Method that split the decrypted content of a blob in chunks of n lines, reading it from a
+   * stream instead of the local decrypted file.
+   *
+   * @param blob      to be split.
+   * @param decrypted the decrypted content of the blob.
+   * @return a list of blobs that represent the split blob.
+   */
+  public Stream<BlobApplicationAware> split(BlobApplicationAware blob, InputStream decrypted) {
     ArrayList<BlobApplicationAware> blobSplit = new ArrayList<>();
 
     // Incremental integer for chunk numbering
@@ -82,29 +183,29 @@ public class BlobSplitterImpl implements BlobSplitter {
 
     if (blob.getApp() == Application.ADE || blob.getApp() == Application.RTD) {
       log.info("Start splitting blob {} from {}", blob.getBlob(), blob.getContainer());
-      successfulSplit = splitRtdTaeBlob(blob, blobPath, blobSplit);
+      successfulSplit = splitRtdTaeBlob(blob, decrypted, blobSplit);
     }
 
     if (blob.getApp() == Application.WALLET) {
       log.info("[Wallet] - Start splitting and verifying blob {} from {}", blob.getBlob(),
           blob.getContainer());
-      successfulSplit = splitWalletBlob(blob, blobPath, blobSplit);
+      successfulSplit = splitWalletBlob(blob, decrypted, blobSplit);
     }
 
     return finalizeSplit(blob, successfulSplit, blobSplit);
   }
 
-  private boolean splitRtdTaeBlob(BlobApplicationAware blob, String blobPath,
+  private boolean splitRtdTaeBlob(BlobApplicationAware blob, InputStream decrypted,
       ArrayList<BlobApplicationAware> blobSplit) {
 
     int chunkNum = 0;
-    String chunkName;
     String checkSum = "";
     MutableBoolean isChecksumSkipped = new MutableBoolean(checksumSkipped);
+    BlobVerifierImpl verifier = isVerifyWhileSplitting() ? chunkVerifier.getObject() : null;
 
     try (
-        LineIterator it = FileUtils.lineIterator(
-            Path.of(blobPath).toFile(), "UTF-8")) {
+        LineIterator it = new LineIterator(
+            new InputStreamReader(decrypted, StandardCharsets.UTF_8))) {
       if (it.hasNext() && isChecksumSkipped.isFalse()) {
         checkSum = it.nextLine();
         if (!checkSum.matches(CHECKSUM_REGEX)) {
@@ -115,28 +216,20 @@ public class BlobSplitterImpl implements BlobSplitter {
         isChecksumSkipped.setTrue();
       }
       while (it.hasNext()) {
-        if (blob.getApp() == Application.ADE) {
-          // Left pad with 0s the chunk number to 3 char
-          chunkName = adeNamingConvention(blob) + String.format("%03d", chunkNum);
-        } else {
-          chunkName = blob.getBlob() + "." + chunkNum + decryptedSuffix;
-        }
-        try (Writer writer = Channels.newWriter(new FileOutputStream(
-                Path.of(blob.getTargetDir(), chunkName).toString(),
-                true).getChannel(),
-            StandardCharsets.UTF_8)) {
-          writeCsvChunks(it, writer);
-          BlobApplicationAware tmpBlob = new BlobApplicationAware(
-              blob.getBlobUri());
-          tmpBlob.setOriginalBlob(blob);
-          tmpBlob.setOriginalBlobName(blob.getBlob());
-          tmpBlob.setStatus(SPLIT);
-          tmpBlob.setApp(blob.getApp());
-          tmpBlob.setBlob(chunkName);
-          tmpBlob.setBlobUri(
-              blob.getBlobUri().substring(0, blob.getBlobUri().lastIndexOf("/")) + "/" + chunkName);
-          tmpBlob.setNumChunk(chunkNum + 1);
-          blobSplit.add(tmpBlob);
+        BlobChunk tmpBlob = rtdTaeChunk(blob, chunkNum);
+        // Tracked before writing, so that a partial chunk is cleaned up if the split fails
+        blobSplit.add(tmpBlob);
+        try (FileChannel channel = FileChannel.open(
+            Path.of(blob.getTargetDir(), tmpBlob.getBlob()), StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            Writer writer = Channels.newWriter(channel, StandardCharsets.UTF_8)) {
+          if (verifier != null) {
+            tmpBlob.setLineCount(verifyCsvChunk(tmpBlob, it, writer, verifier));
+          } else {
+            tmpBlob.setLineCount(writeCsvChunks(it, writer));
+          }
+          writer.flush();
+          tmpBlob.setByteSize(channel.size());
         }
         chunkNum++;
       }
@@ -147,20 +240,21 @@ public class BlobSplitterImpl implements BlobSplitter {
     } catch (IllegalArgumentException e) {
       log.error("Malformed checksum of blob {}: {}", blob.getBlob(), checkSum);
       return false;
-    } catch (IOException e) {
-      log.error("Missing blob file:{}", blobPath);
+    } catch (IOException | IllegalStateException e) {
+      // LineIterator wraps the read errors of the underlying stream in IllegalStateException
+      log.error("Cannot read blob {}: {}", blob.getBlob(), e.getMessage());
       return false;
     }
     return true;
   }
 
-  private boolean splitWalletBlob(BlobApplicationAware blob, String blobPath,
+  private boolean splitWalletBlob(BlobApplicationAware blob, InputStream inputStream,
       ArrayList<BlobApplicationAware> blobSplit) {
 
     ObjectMapper objectMapper = new ObjectMapper();
     JsonFactory jsonFactory = new JsonFactory();
 
-    try (InputStream inputStream = new FileInputStream(blobPath)) {
+    try {
       JsonParser jsonParser = jsonFactory.createParser(inputStream);
 
       if (jsonParser.nextToken() != JsonToken.START_OBJECT) {
@@ -204,11 +298,184 @@ public class BlobSplitterImpl implements BlobSplitter {
       log.error("[Wallet] - Validation error: malformed wallet export {}", e.getMessage());
       return false;
     } catch (IOException e) {
-      log.error("[Wallet] - Missing blob file:{}", blobPath);
+      log.error("[Wallet] - Cannot read blob {}: {}", blob.getBlob(), e.getMessage());
+      return false;
+    }
+  }
+
+  /**
+   * Splits the decrypted file of a RTD or ADE blob on its newline bytes, memory-mapping it to find
+   * the chunk boundaries and copying each chunk with {@link FileChannel#transferTo}, so that lines
+   * are neither decoded nor re-encoded. Chunks are the same of the line by line split.
+   *
+   * @return whether the split succeeded, or null if the file has to be split line by line
+   */
+  private Boolean splitMappedRtdTaeBlob(BlobApplicationAware blob, Path decryptedPath,
+      ArrayList<BlobApplicationAware> blobSplit) {
+    String checkSum = "";
+
+    try (FileChannel decrypted = FileChannel.open(decryptedPath, StandardOpenOption.READ)) {
+      long start = 0;
+      if (!checksumSkipped && decrypted.size() > 0) {
+        start = MappedLineScanner.lineEnd(decrypted, 0);
+        checkSum = readChecksum(decrypted, start);
+        if (checkSum == null) {
+          return null;
+        }
+      }
+
+      if (splitParallelism > 1) {
+        try (ExecutorService regionSplitter = BoundedExecutors.newBoundedExecutor(
+            "region-splitter", splitParallelism, false)) {
+          return splitMappedRegions(blob, decrypted, start, checkSum, blobSplit, regionSplitter);
+        }
+      }
+      return splitMappedRegions(blob, decrypted, start, checkSum, blobSplit, null);
+    } catch (IOException | UncheckedIOException e) {
+      log.error("Cannot read blob {}: {}", blob.getBlob(), e.getMessage());
       return false;
     }
   }
 
+  /**
+   * Writes the chunks of the decrypted file, scanning and copying its regions concurrently when an
+   * executor is given: chunks are numbered after the lines before them, as in a sequential split.
+   */
+  private Boolean splitMappedRegions(BlobApplicationAware blob, FileChannel decrypted, long start,
+      String checkSum, ArrayList<BlobApplicationAware> blobSplit, ExecutorService regionSplitter)
+      throws IOException {
+    long[] boundaries = regionSplitter != null
+        ? MappedLineScanner.chunkBoundaries(decrypted, start, aggregatesLimits(), regionSplitter,
+        splitParallelism)
+        : MappedLineScanner.chunkBoundaries(decrypted, start, aggregatesLimits());
+    if (boundaries == null) {
+      return null;
+    }
+
+    log.info("Start splitting blob {} from {}", blob.getBlob(), blob.getContainer());
+    if (!checksumSkipped && decrypted.size() > 0) {
+      if (!checkSum.matches(CHECKSUM_REGEX)) {
+        log.error("Malformed checksum of blob {}: {}", blob.getBlob(), checkSum);
+        return false;
+      }
+      blob.getReportMetaData().setCheckSum(checkSum);
+      log.info("Checksum: {} {}", blob.getBlob(), checkSum);
+    }
+
+    BlobVerifierImpl verifier = isVerifyWhileSplitting() ? chunkVerifier.getObject() : null;
+    int chunkNum = boundaries.length - 1;
+    if (verifier != null && hasChunkBeyondMappableSize(boundaries)) {
+      // A chunk is verified from a single mapping of its region
+      return null;
+    }
+    List<Runnable> writes = new ArrayList<>(chunkNum);
+    for (int i = 0; i < chunkNum; i++) {
+      BlobChunk chunk = rtdTaeChunk(blob, i);
+      // Tracked before writing, so that a partial chunk is cleaned up if the split fails
+      blobSplit.add(chunk);
+      long chunkStart = boundaries[i];
+      long chunkEnd = boundaries[i + 1];
+      writes.add(() -> writeMappedChunk(chunk, decrypted, chunkStart, chunkEnd, verifier));
+    }
+    if (regionSplitter != null) {
+      BoundedExecutors.invokeAllOrdered(regionSplitter,
+          writes.stream().map(Executors::callable).toList());
+    } else {
+      writes.forEach(Runnable::run);
+    }
+    for (BlobApplicationAware chunk : blobSplit) {
+      chunk.setTotChunk(chunkNum);
+    }
+    return true;
+  }
+
+  private static boolean hasChunkBeyondMappableSize(long[] boundaries) {
+    for (int i = 0; i < boundaries.length - 1; i++) {
+      if (boundaries[i + 1] - boundaries[i] > Integer.MAX_VALUE) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // Write failures are unchecked, to be rethrown by the executor running the writes
+  private static void writeMappedChunk(BlobChunk chunk, FileChannel decrypted, long start,
+      long end, BlobVerifierImpl verifier) {
+    try (FileChannel chunkChannel = FileChannel.open(
+        Path.of(chunk.getTargetDir(), chunk.getBlob()), StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+      if (verifier != null) {
+        chunk.setByteSize(writeAndVerifyLines(chunk, decrypted, start, end, chunkChannel,
+            verifier));
+      } else {
+        chunk.setByteSize(transferLines(decrypted, start, end, chunkChannel));
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  // The header as a line, or null if it has carriage returns or malformed UTF-8
+  private static String readChecksum(FileChannel decrypted, long headerEnd) throws IOException {
+    ByteBuffer header = decrypted.map(MapMode.READ_ONLY, 0, headerEnd);
+    try {
+      String line = StandardCharsets.UTF_8.newDecoder().decode(header).toString();
+      return line.indexOf('\r') >= 0 ? null : StringUtils.removeEnd(line, "\n");
+    } catch (CharacterCodingException e) {
+      return null;
+    }
+  }
+
+  // Lines are copied as they are, the last one terminated as the line by line split does
+  private static long transferLines(FileChannel decrypted, long start, long end,
+      FileChannel chunk) throws IOException {
+    for (long position = start; position < end; ) {
+      position += decrypted.transferTo(position, end - position, chunk);
+    }
+    ByteBuffer last = ByteBuffer.allocate(1);
+    decrypted.read(last, end - 1);
+    if (last.get(0) != '\n') {
+      chunk.write(ByteBuffer.wrap(new byte[]{'\n'}));
+      return end - start + 1;
+    }
+    return end - start;
+  }
+
+  // Lines are written from a mapping of their region, then verified from the same mapping
+  private static long writeAndVerifyLines(BlobChunk chunk, FileChannel decrypted, long start,
+      long end, FileChannel chunkChannel, BlobVerifierImpl verifier) throws IOException {
+    MappedByteBuffer region = decrypted.map(MapMode.READ_ONLY, start, end - start);
+    ByteBuffer lines = region.duplicate();
+    while (lines.hasRemaining()) {
+      chunkChannel.write(lines);
+    }
+    long written = end - start;
+    if (region.get(region.limit() - 1) != '\n') {
+      chunkChannel.write(ByteBuffer.wrap(new byte[]{'\n'}));
+      written++;
+    }
+    try (Reader reader = new InputStreamReader(new ByteBufferInputStream(region),
+        StandardCharsets.UTF_8)) {
+      verifier.verify(chunk, reader);
+    } catch (UncheckedIOException e) {
+      log.error("Cannot verify chunk {}: {}", chunk.getBlob(), e.getMessage());
+    }
+    return written;
+  }
+
+  private BlobChunk rtdTaeChunk(BlobApplicationAware blob, int chunkNum) {
+    String chunkName;
+    if (blob.getApp() == Application.ADE) {
+      // Left pad with 0s the chunk number to 3 char
+      chunkName = adeNamingConvention(blob) + String.format("%03d", chunkNum);
+    } else {
+      chunkName = blob.getBlob() + "." + chunkNum + decryptedSuffix;
+    }
+    BlobChunk tmpBlob = new BlobChunk(blob, chunkName);
+    tmpBlob.setNumChunk(chunkNum + 1);
+    return tmpBlob;
+  }
+
   private String adeNamingConvention(BlobApplicationAware blob) {
     // Note that no chunk number is added to the blob name
     return "AGGADE." + blob.getSenderCode() + "." + blob.getFileCreationDate() + "."
@@ -216,14 +483,45 @@ public class BlobSplitterImpl implements BlobSplitter {
         + blob.getBatchServiceChunkNumber();
   }
 
-  private void writeCsvChunks(LineIterator it, Writer writer)
+  // Returns the number of lines written
+  private int writeCsvChunks(LineIterator it, Writer writer)
       throws IOException {
-    // Counter for current line number (from 0 to aggregatesLineThreshold)
+    ChunkLimits limits = aggregatesLimits();
+    // Counters of the lines and bytes written, until either reaches its limit
     int i = 0;
-    while (it.hasNext() && i < this.aggregatesLineThreshold) {
-      writer.append(it.nextLine()).append("\n");
+    long bytes = 0;
+    while (it.hasNext() && !limits.isReached(i, bytes)) {
+      String line = it.nextLine();
+      writer.append(line).append("\n");
       i++;
+      if (limits.hasByteLimit()) {
+        bytes += ChunkLimits.utf8Length(line) + 1;
+      }
     }
+    return i;
+  }
+
+  private ChunkLimits aggregatesLimits() {
+    return new ChunkLimits(aggregatesLineThreshold, aggregatesMaxBytes);
+  }
+
+  // Returns the number of lines written
+  private int verifyCsvChunk(BlobApplicationAware chunk, LineIterator it, Writer writer,
+      BlobVerifierImpl verifier) throws IOException {
+    ChunkWritingReader chunkReader = new ChunkWritingReader(it, writer, aggregatesLimits());
+    try {
+      verifier.verify(chunk, chunkReader);
+    } catch (UncheckedIOException e) {
+      if (chunkReader.getWriteFailure() == null) {
+        // A malformed record, e.g. an unterminated quote, leaves the chunk not verified
+        log.error("Cannot verify chunk {}: {}", chunk.getBlob(), e.getMessage());
+      }
+    }
+    if (chunkReader.getWriteFailure() != null) {
+      throw chunkReader.getWriteFailure();
+    }
+    chunkReader.writeRemainingLines();
+    return chunkReader.getLinesRead();
   }
 
   private boolean deserializeAndSplitContracts(JsonParser jsonParser,
@@ -234,54 +532,86 @@ public class BlobSplitterImpl implements BlobSplitter {
     int contractsSplitCounter = 0;
     int chunkNum = 0;
     boolean isChunkOpen = false;
+    ChunkLimits limits = new ChunkLimits(contractsSplitThreshold, contractsSplitMaxBytes);
 
     JsonFactory jsonFactory = new JsonFactory();
-    BlobApplicationAware chunkBlob = null;
+    BlobChunk chunkBlob = null;
     File chunkOutputFile;
-    FileWriter fileWriter = null;
+    CountingOutputStream chunkOutput = null;
     JsonGenerator jsonGenerator = null;
-
-    // Iterate over the tokens until the end of the contracts array
-    while (jsonParser.nextToken() != JsonToken.END_ARRAY) {
-      if (!isChunkOpen) {
-        chunkBlob = blobChunkConstructor(blob, chunkNum);
-        chunkOutputFile = new File(
-            Path.of(chunkBlob.getTargetDir(), chunkBlob.getBlob()).toString());
-        fileWriter = new FileWriter(chunkOutputFile);
-        jsonGenerator = jsonFactory.createGenerator(fileWriter);
-        jsonGenerator.writeStartArray();
-        isChunkOpen = true;
-      }
-      try {
-        WalletContract contract = deserializeAndVerifyContract(objectMapper, jsonParser,
-            contractsCounter);
-        if (contract == null) {
+    WalletContractStreamVerifier streamVerifier =
+        walletPassthrough ? new WalletContractStreamVerifier() : null;
+    // Contracts are verified while they are copied: a chunk is verified once it is closed
+    BlobVerifierImpl verifier = isVerifyWhileSplitting() ? chunkVerifier.getObject() : null;
+
+    try {
+      // Iterate over the tokens until the end of the contracts array
+      while (jsonParser.nextToken() != JsonToken.END_ARRAY) {
+        if (!isChunkOpen) {
+          chunkBlob = blobChunkConstructor(blob, chunkNum);
+          // Tracked before writing, so that a partial chunk is cleaned up if the split fails
+          blobSplit.add(chunkBlob);
+          chunkOutputFile = new File(
+              Path.of(chunkBlob.getTargetDir(), chunkBlob.getBlob()).toString());
+          chunkOutput = new CountingOutputStream(new FileOutputStream(chunkOutputFile));
+          jsonGenerator = jsonFactory.createGenerator(chunkOutput);
+          jsonGenerator.writeStartArray();
+          isChunkOpen = true;
+          contractsSplitCounter = 0;
+        }
+        try {
+          if (streamVerifier != null) {
+            if (!streamVerifier.verifyAndCopy(jsonParser, jsonGenerator, contractsCounter)) {
+              return false;
+            }
+          } else {
+            WalletContract contract = deserializeAndVerifyContract(objectMapper, jsonParser,
+                contractsCounter);
+            if (contract == null) {
+              return false;
+            }
+            objectMapper.writeValue(jsonGenerator, contract);
+          }
+          contractsSplitCounter++;
+          contractsCounter++;
+
+          // Bytes written to the chunk file and still buffered by the generator
+          if (limits.isReached(contractsSplitCounter,
+              chunkOutput.getByteCount() + jsonGenerator.getOutputBuffered())) {
+            jsonGenerator.writeEndArray();
+            jsonGenerator.close();
+            chunkOutput.close();
+            chunkBlob.setByteSize(chunkOutput.getByteCount());
+            chunkBlob.setLineCount(contractsSplitCounter);
+            if (verifier != null) {
+              verifier.verify(chunkBlob);
+            }
+            isChunkOpen = false;
+            chunkNum++;
+          }
+        } catch (UnrecognizedPropertyException e) {
+          log.error("Failed to deserialize the contract {}: {}", contractsCounter,
+              e.getMessage());
           return false;
         }
-        contractsSplitCounter++;
-        contractsCounter++;
-
-        objectMapper.writeValue(jsonGenerator, contract);
+      }
 
-        if (contractsSplitCounter % contractsSplitThreshold == 0) {
-          jsonGenerator.writeEndArray();
-          jsonGenerator.close();
-          fileWriter.close();
-          isChunkOpen = false;
-          blobSplit.add(chunkBlob);
-          chunkNum++;
+      if (isChunkOpen) {
+        jsonGenerator.writeEndArray();
+        isChunkOpen = false;
+        jsonGenerator.close();
+        chunkOutput.close();
+        chunkBlob.setByteSize(chunkOutput.getByteCount());
+        chunkBlob.setLineCount(contractsSplitCounter);
+        if (verifier != null) {
+          verifier.verify(chunkBlob);
         }
-      } catch (UnrecognizedPropertyException e) {
-        log.error("Failed to deserialize the contract {}: {}", contractsCounter, e.getMessage());
-        return false;
       }
-    }
-
-    if (isChunkOpen) {
-      jsonGenerator.writeEndArray();
-      jsonGenerator.close();
-      fileWriter.close();
-      blobSplit.add(chunkBlob);
+    } finally {
+      if (isChunkOpen) {
+        jsonGenerator.close();
+        chunkOutput.close();
+      }
     }
 
     return true;
@@ -290,33 +620,97 @@ public class BlobSplitterImpl implements BlobSplitter {
   private Stream<BlobApplicationAware> finalizeSplit(BlobApplicationAware blob,
       boolean successfulSplit, ArrayList<BlobApplicationAware> blobSplit) {
 
-    if (successfulSplit) {
+    if (successfulSplit && isChecksumAccepted(blob)) {
       log.info("Obtained {} chunk/s from blob:{}", blobSplit.size(), blob.getBlob());
       for (BlobApplicationAware b : blobSplit) {
         b.setOriginalFileChunksNumber(blobSplit.size());
       }
+      recordChunkSizes(blob, blobSplit);
       return blobSplit.stream();
     } else {
       // If split fails, return the original blob (without the SPLIT status)
       log.error("Failed splitting blob: {}", blob.getBlob());
+      blobSplit.forEach(BlobApplicationAware::localCleanup);
       blob.localCleanup();
       return Stream.of(blob);
     }
   }
 
-  private BlobApplicationAware blobChunkConstructor(BlobApplicationAware blob, int chunkNum) {
-    String chunkName = blob.getBlob() + "." + chunkNum + decryptedSuffix;
-    BlobApplicationAware chunkBlob = new BlobApplicationAware(
-        blob.getBlobUri());
-    chunkBlob.setOriginalBlobName(blob.getBlob());
-    chunkBlob.setStatus(SPLIT);
-    chunkBlob.setApp(blob.getApp());
-    chunkBlob.setBlob(chunkName);
-    chunkBlob.setOriginalBlob(blob);
-    chunkBlob.setBlobUri(
-        blob.getBlobUri().substring(0, blob.getBlobUri().lastIndexOf("/")) + "/"
-            + chunkName);
-    chunkBlob.setTargetDir(blob.getTargetDir());
-    return chunkBlob;
+  /**
+   * Compares the checksum header of a RTD or ADE blob with the digest of the payload computed
+   * while decrypting it, if the checksum is enforced, rejecting the blob on a mismatch.
+   */
+  private boolean isChecksumAccepted(BlobApplicationAware blob) {
+    ReportMetaData report = blob.getReportMetaData();
+    if (!checksumEnforced || checksumSkipped || blob.getApp() == Application.WALLET
+        || report.isCheckSumVerified()) {
+      return true;
+    }
+    log.error("Checksum mismatch of blob {}: declared {} computed {}", blob.getBlob(),
+        report.getCheckSum(), report.getComputedCheckSum());
+    return false;
+  }
+
+  /**
+   * Records the sizes of the chunks in the histogram of the application, to tune the limits of the
+   * chunks, and logs their range.
+   */
+  private void recordChunkSizes(BlobApplicationAware blob, List<BlobApplicationAware> chunks) {
+    if (chunks.isEmpty()) {
+      return;
+    }
+    DistributionSummary chunkSizes = meterRegistry.getIfAvailable() == null ? null
+        : DistributionSummary.builder("decrypter.splitter.chunk.size")
+            .description("Size of the chunks of the split blobs")
+            .baseUnit(BaseUnits.BYTES)
+            .tag("application", String.valueOf(blob.getApp()))
+            .publishPercentiles(0.5, 0.9, 0.99)
+            .publishPercentileHistogram()
+            .register(meterRegistry.getObject());
+    long minSize = Long.MAX_VALUE;
+    long maxSize = 0;
+    for (BlobApplicationAware chunk : chunks) {
+      long size = StageMetrics.fileSize(chunk);
+      minSize = Math.min(minSize, size);
+      maxSize = Math.max(maxSize, size);
+      if (chunkSizes != null) {
+        chunkSizes.record(size);
+      }
+    }
+    log.info("Chunk sizes of blob {}: {}-{} bytes", blob.getBlob(), minSize, maxSize);
+  }
+
+  private BlobChunk blobChunkConstructor(BlobApplicationAware blob, int chunkNum) {
+    return new BlobChunk(blob, blob.getBlob() + "." + chunkNum + decryptedSuffix);
+  }
+
+  /**
+   * Stream reading the remaining bytes of a buffer, e.g. the mapped region of a chunk.
+   */
+  private static class ByteBufferInputStream extends InputStream {
+
+    private final ByteBuffer buffer;
+
+    ByteBufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) {
+      if (length == 0) {
+        return 0;
+      }
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+      int count = Math.min(length, buffer.remaining());
+      buffer.get(bytes, offset, count);
+      return count;
+    }
   }
 }
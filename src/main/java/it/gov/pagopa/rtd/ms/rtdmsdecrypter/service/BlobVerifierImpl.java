@@ -17,6 +17,7 @@ import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.DecryptedRecord;
 import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.ReportMetaData;
 import java.time.LocalDate;
 import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.WalletContract;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.utils.CardinalityCounter;
 import jakarta.validation.ConstraintViolation;
 import jakarta.validation.Validation;
 import jakarta.validation.Validator;
@@ -25,14 +26,18 @@ import jakarta.validation.ValidatorFactory;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.nio.file.Path;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.Set;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
 import java.util.Locale;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 /**
@@ -44,9 +49,22 @@ import org.springframework.stereotype.Service;
 @Slf4j
 public class BlobVerifierImpl implements BlobVerifier {
 
+  // Validators are thread safe: bootstrapped once and shared by every contract
+  private static final ValidatorFactory contractValidatorFactory =
+      Validation.buildDefaultValidatorFactory();
+
+  private static final Validator contractValidator = contractValidatorFactory.getValidator();
 
   private VerifierFactory verifierFactory;
 
+  // Decode records with the hand-written decoders instead of the opencsv bean binding
+  @Value("${decrypt.verifier.enableRecordDecoder:false}")
+  private boolean recordDecoderEnabled;
+
+  // Count the distinct merchants of ADE files exactly, or estimate them in a bounded memory
+  @Value("${decrypt.verifier.merchantCardinality:EXACT}")
+  private CardinalityCounter.Mode merchantCardinality = CardinalityCounter.Mode.EXACT;
+
   public BlobVerifierImpl(VerifierFactory verifierFactory) {
     this.verifierFactory = verifierFactory;
   }
@@ -61,40 +79,85 @@ public class BlobVerifierImpl implements BlobVerifier {
       return blob;
     }
 
-    log.info("START Verifying {}", blob.getBlob());
-
-    FileReader fileReader;
-    boolean isValid = true;
-    AtomicLong numberOfDeserializeRecords = new AtomicLong(0);
-    try {
-      fileReader = new FileReader(Path.of(blob.getTargetDir(), blob.getBlob()).toFile());
+    try (FileReader fileReader = new FileReader(
+        Path.of(blob.getTargetDir(), blob.getBlob()).toFile())) {
+      return verify(blob, fileReader);
     } catch (FileNotFoundException e) {
       log.error("Error reading file {}", blob.getBlob());
       return blob;
+    } catch (IOException e) {
+      log.error("Error closing file {}", blob.getBlob());
+      return blob;
     }
+  }
 
-    BeanVerifier<? extends DecryptedRecord> verifier = verifierFactory.getVerifier(blob.getApp());
-    Class<? extends DecryptedRecord> beanClass = verifierFactory.getBeanClass(blob.getApp());
-
-    CsvToBeanBuilder<DecryptedRecord> builder = new CsvToBeanBuilder<DecryptedRecord>(fileReader)
-        .withType(beanClass)
-        .withSeparator(';')
-        .withVerifier((BeanVerifier<DecryptedRecord>) verifier)
-        .withThrowExceptions(false)
-        .withErrorLocale(Locale.ROOT);
-
-    CsvToBean<DecryptedRecord> csvToBean = builder.build();
+  /**
+   * Verifies the records of a RTD or ADE chunk read from any source, e.g. while the chunk is being
+   * written by the splitter.
+   *
+   * @param blob    the chunk, whose status is set to VERIFIED if all its records are valid
+   * @param content the decrypted records of the chunk
+   * @return the chunk
+   */
+  public BlobApplicationAware verify(BlobApplicationAware blob, Reader content) {
+    log.info("START Verifying {}", blob.getBlob());
 
-    Stream<DecryptedRecord> deserialized = csvToBean.stream();
+    boolean isValid = true;
+    AtomicLong numberOfDeserializeRecords = new AtomicLong(0);
+    // Chunks may be verified concurrently: figures are gathered locally and merged at the end
+    ReportMetaData chunkReport = new ReportMetaData(merchantCardinality.newCounter());
+    List<CsvException> violations;
+
+    BeanVerifier<? extends DecryptedRecord> verifier = verifierFactory.getVerifier(
+        blob.getApp());
+
+    Stream<DecryptedRecord> deserialized;
+    Supplier<List<CsvException>> capturedExceptions;
+    if (recordDecoderEnabled) {
+      DecryptedRecordReader<DecryptedRecord> recordReader = new DecryptedRecordReader<>(
+          content,
+          (DecryptedRecordDecoder<DecryptedRecord>) verifierFactory.getDecoder(blob.getApp()),
+          (BeanVerifier<DecryptedRecord>) verifier);
+      deserialized = recordReader.stream();
+      capturedExceptions = recordReader::getCapturedExceptions;
+    } else {
+      Class<? extends DecryptedRecord> beanClass = verifierFactory.getBeanClass(blob.getApp());
+
+      CsvToBeanBuilder<DecryptedRecord> builder = new CsvToBeanBuilder<DecryptedRecord>(
+          content)
+          .withType(beanClass)
+          .withSeparator(';')
+          .withVerifier((BeanVerifier<DecryptedRecord>) verifier)
+          .withThrowExceptions(false)
+          .withErrorLocale(Locale.ROOT);
+
+      CsvToBean<DecryptedRecord> csvToBean = builder.build();
+      deserialized = csvToBean.stream();
+      capturedExceptions = csvToBean::getCapturedExceptions;
+    }
 
     // Enrich report
-    if (blob.getApp() == Application.ADE && isValid) {
-      deserialized.forEach(i -> gatheringMetadataAndCount(blob, i, numberOfDeserializeRecords));
-    } else {
-      numberOfDeserializeRecords.set(deserialized.count());
+    try {
+      if (blob.getApp() == Application.ADE && isValid) {
+        deserialized.forEach(
+            i -> gatheringMetadataAndCount(chunkReport, i, numberOfDeserializeRecords));
+      } else {
+        numberOfDeserializeRecords.set(deserialized.count());
+      }
+    } catch (RuntimeException e) {
+      // opencsv wraps a malformed line, e.g. an unterminated quote, in a plain runtime exception:
+      // raise it as the record decoder does
+      if (!(e instanceof UncheckedIOException) && e.getCause() instanceof IOException cause) {
+        throw new UncheckedIOException(e.getMessage(), cause);
+      }
+      throw e;
     }
 
-    List<CsvException> violations = csvToBean.getCapturedExceptions();
+    violations = capturedExceptions.get();
+
+    if (blob.getApp() == Application.ADE) {
+      blob.getOriginalBlob().getReportMetaData().merge(chunkReport);
+    }
 
     if (!violations.isEmpty()) {
       for (CsvException e : violations) {
@@ -117,51 +180,45 @@ public class BlobVerifierImpl implements BlobVerifier {
   public static WalletContract deserializeAndVerifyContract(ObjectMapper objectMapper,
       JsonParser jsonParser, int contractsCounter) throws IOException {
 
-    WalletContract contract;
+    WalletContract contract = objectMapper.readValue(jsonParser, WalletContract.class);
 
-    try (ValidatorFactory factory = Validation.buildDefaultValidatorFactory()) {
-      Validator validator = factory.getValidator();
+    Set<ConstraintViolation<WalletContract>> contractViolations = contractValidator.validate(
+        contract);
 
-      contract = objectMapper.readValue(jsonParser, WalletContract.class);
+    if (contractViolations.isEmpty()) {
 
-      Set<ConstraintViolation<WalletContract>> contractViolations = validator.validate(
-          contract);
+      if (contract.getImportOutcome().equals("KO") && contract.getReasonMessage() == null) {
+        log.error("Validation error on contract {}: import outcome KO and no reason message",
+            (contractsCounter + 1));
+        return null;
+      }
 
-      if (contractViolations.isEmpty()) {
+      ContractMethodAttributes currentContractMethodAttributes = contract.getMethodAttributes();
 
-        if (contract.getImportOutcome().equals("KO") && contract.getReasonMessage() == null) {
-          log.error("Validation error on contract {}: import outcome KO and no reason message",
+      if (currentContractMethodAttributes != null) {
+        Set<ConstraintViolation<ContractMethodAttributes>> contractMethodAttributeViolations = contractValidator.validate(
+            currentContractMethodAttributes);
+        if (!contractMethodAttributeViolations.isEmpty()) {
+          log.error("Validation error on contract {}: method attributes are not valid",
               (contractsCounter + 1));
-          return null;
-        }
-
-        ContractMethodAttributes currentContractMethodAttributes = contract.getMethodAttributes();
-
-        if (currentContractMethodAttributes != null) {
-          Set<ConstraintViolation<ContractMethodAttributes>> contractMethodAttributeViolations = validator.validate(
-              currentContractMethodAttributes);
-          if (!contractMethodAttributeViolations.isEmpty()) {
-            log.error("Validation error on contract {}: method attributes are not valid",
-                (contractsCounter + 1));
-            for (ConstraintViolation<ContractMethodAttributes> violation : contractMethodAttributeViolations) {
-              log.error("{} {}", violation.getPropertyPath(), violation.getMessage());
-            }
-            return null;
+          for (ConstraintViolation<ContractMethodAttributes> violation : contractMethodAttributeViolations) {
+            log.error("{} {}", violation.getPropertyPath(), violation.getMessage());
           }
-        } else if (!contract.getAction().equals("DELETE") && !contract.getImportOutcome()
-            .equals("KO")) {
-          log.error("Method attributes of contract {} are empty", (contractsCounter + 1));
           return null;
         }
-
-      } else {
-        log.error("Validation error in contract {}: fields are not valid", (contractsCounter + 1));
-        for (ConstraintViolation<WalletContract> violation : contractViolations) {
-          log.error("{}", violation.getMessage());
-        }
+      } else if (!contract.getAction().equals("DELETE") && !contract.getImportOutcome()
+          .equals("KO")) {
+        log.error("Method attributes of contract {} are empty", (contractsCounter + 1));
         return null;
+      }
 
+    } else {
+      log.error("Validation error in contract {}: fields are not valid", (contractsCounter + 1));
+      for (ConstraintViolation<WalletContract> violation : contractViolations) {
+        log.error("{}", violation.getMessage());
       }
+      return null;
+
     }
     return contract;
   }
@@ -172,11 +229,10 @@ public class BlobVerifierImpl implements BlobVerifier {
         deserializedSize, violations);
   }
 
-  private void gatheringMetadataAndCount(BlobApplicationAware blob, DecryptedRecord decryptedRecord,
-      AtomicLong numberOfDeserializeRecords) {
+  private void gatheringMetadataAndCount(ReportMetaData reportMetaData,
+      DecryptedRecord decryptedRecord, AtomicLong numberOfDeserializeRecords) {
     AdeTransactionsAggregate tempAdeAgg = (AdeTransactionsAggregate) decryptedRecord;
-    ReportMetaData reportMetaData = blob.getOriginalBlob().getReportMetaData();
-    reportMetaData.getMerchantList().add(tempAdeAgg.getMerchantId());
+    reportMetaData.addMerchant(tempAdeAgg.getMerchantId());
     reportMetaData.increaseTrx(tempAdeAgg.getOperationType(), tempAdeAgg.getNumTrx());
     reportMetaData.increaseTotalAmountTrx(tempAdeAgg.getOperationType(),
         tempAdeAgg.getTotalAmount());
@@ -0,0 +1,107 @@
+package it.gov.pagopa.rtd.ms.rtdmsdecrypter.service;
+
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.utils.ChunkLimits;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import org.apache.commons.io.LineIterator;
+
+/**
+ * Reader of the lines of a chunk, that writes every line to the chunk file as it is read. The
+ * chunk is verified by reading it, so that the decrypted content is parsed once, while it is
+ * split.
+ */
+class ChunkWritingReader extends Reader {
+
+  private final LineIterator lines;
+
+  private final Writer writer;
+
+  private final ChunkLimits limits;
+
+  private int linesRead;
+
+  private long bytesWritten;
+
+  private String line = "";
+
+  private int position;
+
+  private IOException writeFailure;
+
+  /**
+   * Constructor.
+   *
+   * @param lines    the lines of the decrypted content, positioned at the start of the chunk
+   * @param writer   the writer of the chunk file
+   * @param limits   the limits of a chunk
+   */
+  ChunkWritingReader(LineIterator lines, Writer writer, ChunkLimits limits) {
+    this.lines = lines;
+    this.writer = writer;
+    this.limits = limits;
+  }
+
+  @Override
+  public int read(char[] buffer, int offset, int length) throws IOException {
+    if (length == 0) {
+      return 0;
+    }
+    if (position == line.length() && !nextLine()) {
+      return -1;
+    }
+    int count = Math.min(length, line.length() - position);
+    line.getChars(position, position + count, buffer, offset);
+    position += count;
+    return count;
+  }
+
+  /**
+   * Writes the lines of the chunk that have not been read, e.g. after a malformed record stops
+   * the verification.
+   *
+   * @throws IOException if the chunk cannot be written
+   */
+  void writeRemainingLines() throws IOException {
+    while (nextLine()) {
+      position = line.length();
+    }
+  }
+
+  /**
+   * Returns the failure of the writes: readers of the chunk may wrap or swallow it.
+   *
+   * @return the first write failure, or null
+   */
+  IOException getWriteFailure() {
+    return writeFailure;
+  }
+
+  int getLinesRead() {
+    return linesRead;
+  }
+
+  private boolean nextLine() throws IOException {
+    if (limits.isReached(linesRead, bytesWritten) || !lines.hasNext()) {
+      return false;
+    }
+    line = lines.nextLine() + "\n";
+    position = 0;
+    linesRead++;
+    if (limits.hasByteLimit()) {
+      bytesWritten += ChunkLimits.utf8Length(line);
+    }
+    try {
+      writer.append(line);
+    } catch (IOException e) {
+      writeFailure = e;
+      throw e;
+    }
+    return true;
+  }
+
+  @Override
+  public void close() {
+    // The lines and the writer are owned by the splitter
+  }
+}
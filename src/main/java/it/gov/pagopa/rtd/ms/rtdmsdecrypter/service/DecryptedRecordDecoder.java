@@ -0,0 +1,152 @@
+package it.gov.pagopa.rtd.ms.rtdmsdecrypter.service;
+
+import com.opencsv.ICSVParser;
+import com.opencsv.exceptions.CsvDataTypeMismatchException;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.DecryptedRecord;
+import java.math.BigDecimal;
+import java.time.DateTimeException;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Locale;
+import java.util.ResourceBundle;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Decoder of the fields of a {@code ;} separated line into a {@link DecryptedRecord}, written by
+ * hand after its {@link com.opencsv.bean.CsvBindByPosition} mapping so that no reflection is
+ * involved. Conversions and their failures are the ones of the opencsv converters.
+ *
+ * @param <T> the type of the decoded records
+ */
+public abstract class DecryptedRecordDecoder<T extends DecryptedRecord> {
+
+  private static final String CONVERSION_IMPOSSIBLE = ResourceBundle.getBundle(
+      ICSVParser.DEFAULT_BUNDLE_NAME, Locale.ROOT).getString("conversion.impossible");
+
+  /**
+   * Number of mapped columns: the following ones are ignored.
+   */
+  protected abstract int columns();
+
+  protected abstract T newRecord();
+
+  /**
+   * Assigns the value of a mapped column to the record.
+   *
+   * @param record the record being decoded
+   * @param column the position of the value in the line
+   * @param value  the value, as it appears in the line
+   * @throws CsvDataTypeMismatchException if the value cannot be converted to the field type
+   */
+  protected abstract void decodeField(T record, int column, String value)
+      throws CsvDataTypeMismatchException;
+
+  /**
+   * Decodes a line without quoted or escaped fields, splitting it on the separator while it is
+   * scanned.
+   *
+   * @param line       the line to decode
+   * @param violations collects the fields that cannot be converted
+   * @return the record, or null if some field cannot be converted
+   */
+  public T decode(String line, List<CsvDataTypeMismatchException> violations) {
+    T record = newRecord();
+    int start = 0;
+    for (int column = 0; column < columns(); column++) {
+      int end = line.indexOf(';', start);
+      decodeCapturing(record, column,
+          end < 0 ? line.substring(start) : line.substring(start, end), violations);
+      if (end < 0) {
+        break;
+      }
+      start = end + 1;
+    }
+    return violations.isEmpty() ? record : null;
+  }
+
+  /**
+   * Decodes the fields of a line already split by a CSV parser.
+   *
+   * @param fields     the fields of the line
+   * @param violations collects the fields that cannot be converted
+   * @return the record, or null if some field cannot be converted
+   */
+  public T decode(String[] fields, List<CsvDataTypeMismatchException> violations) {
+    T record = newRecord();
+    for (int column = 0; column < Math.min(fields.length, columns()); column++) {
+      // Null fields are left unassigned, as opencsv does
+      if (fields[column] != null) {
+        decodeCapturing(record, column, fields[column], violations);
+      }
+    }
+    return violations.isEmpty() ? record : null;
+  }
+
+  private void decodeCapturing(T record, int column, String value,
+      List<CsvDataTypeMismatchException> violations) {
+    try {
+      decodeField(record, column, value);
+    } catch (CsvDataTypeMismatchException e) {
+      violations.add(e);
+    }
+  }
+
+  // Numbers are trimmed and parsed as commons-beanutils does for opencsv; blank ones are skipped
+
+  protected static Integer toInt(String value) throws CsvDataTypeMismatchException {
+    if (StringUtils.isBlank(value)) {
+      return null;
+    }
+    try {
+      return Integer.valueOf(value.trim());
+    } catch (NumberFormatException e) {
+      throw conversionImpossible(value, int.class, e);
+    }
+  }
+
+  protected static Long toLong(String value) throws CsvDataTypeMismatchException {
+    if (StringUtils.isBlank(value)) {
+      return null;
+    }
+    try {
+      return Long.valueOf(value.trim());
+    } catch (NumberFormatException e) {
+      throw conversionImpossible(value, Long.class, e);
+    }
+  }
+
+  protected static BigDecimal toBigDecimal(String value) throws CsvDataTypeMismatchException {
+    if (StringUtils.isBlank(value)) {
+      return null;
+    }
+    try {
+      return new BigDecimal(value.trim());
+    } catch (NumberFormatException e) {
+      throw conversionImpossible(value, BigDecimal.class, e);
+    }
+  }
+
+  protected static OffsetDateTime toOffsetDateTime(String value, DateTimeFormatter formatter)
+      throws CsvDataTypeMismatchException {
+    if (StringUtils.isBlank(value)) {
+      return null;
+    }
+    try {
+      return formatter.parse(value, OffsetDateTime::from);
+    } catch (DateTimeException | ArithmeticException e) {
+      CsvDataTypeMismatchException mismatch = new CsvDataTypeMismatchException(value,
+          OffsetDateTime.class);
+      mismatch.initCause(e);
+      throw mismatch;
+    }
+  }
+
+  private static CsvDataTypeMismatchException conversionImpossible(String value, Class<?> type,
+      NumberFormatException cause) {
+    CsvDataTypeMismatchException mismatch = new CsvDataTypeMismatchException(value, type,
+        String.format(CONVERSION_IMPOSSIBLE, value, type.getCanonicalName()));
+    mismatch.initCause(cause);
+    return mismatch;
+  }
+}
@@ -0,0 +1,169 @@
+package it.gov.pagopa.rtd.ms.rtdmsdecrypter.service;
+
+import com.opencsv.CSVParser;
+import com.opencsv.CSVParserBuilder;
+import com.opencsv.ICSVParser;
+import com.opencsv.bean.BeanVerifier;
+import com.opencsv.exceptions.CsvDataTypeMismatchException;
+import com.opencsv.exceptions.CsvException;
+import com.opencsv.exceptions.CsvMalformedLineException;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.DecryptedRecord;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.ResourceBundle;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import org.apache.commons.lang3.ArrayUtils;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Reader of the {@code ;} separated records of a decrypted file, replacing the opencsv
+ * {@link com.opencsv.bean.CsvToBean} on the verification path. Lines are decoded by a
+ * {@link DecryptedRecordDecoder} while they are scanned, and only those with quotes or escapes
+ * are handed to the opencsv parser, so records, captured exceptions and their line numbers are
+ * the same of the {@link com.opencsv.bean.CsvToBean}.
+ *
+ * @param <T> the type of the records
+ */
+public class DecryptedRecordReader<T extends DecryptedRecord> {
+
+  private static final String UNTERMINATED_QUOTE = ResourceBundle.getBundle(
+      ICSVParser.DEFAULT_BUNDLE_NAME, Locale.ROOT).getString("unterminated.quote");
+
+  private static final int MAX_PENDING_TEXT_WIDTH = 100;
+
+  private final BufferedReader reader;
+
+  private final DecryptedRecordDecoder<T> decoder;
+
+  private final BeanVerifier<T> verifier;
+
+  private final CSVParser parser = new CSVParserBuilder()
+      .withSeparator(';')
+      .withErrorLocale(Locale.ROOT)
+      .build();
+
+  private final List<CsvDataTypeMismatchException> violations = new ArrayList<>();
+
+  private final List<CsvException> capturedExceptions = new ArrayList<>();
+
+  private long linesRead;
+
+  /**
+   * Constructor.
+   *
+   * @param reader   the decrypted content
+   * @param decoder  the decoder of the records
+   * @param verifier the verifier of the decoded records, or null to keep them all
+   */
+  public DecryptedRecordReader(Reader reader, DecryptedRecordDecoder<T> decoder,
+      BeanVerifier<T> verifier) {
+    this.reader = reader instanceof BufferedReader bufferedReader ? bufferedReader
+        : new BufferedReader(reader);
+    this.decoder = decoder;
+    this.verifier = verifier;
+  }
+
+  /**
+   * Returns the records that are decoded and verified, reading them lazily.
+   *
+   * @return the stream of the valid records
+   */
+  public Stream<T> stream() {
+    return StreamSupport.stream(
+        new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE,
+            Spliterator.ORDERED | Spliterator.NONNULL) {
+          @Override
+          public boolean tryAdvance(Consumer<? super T> action) {
+            try {
+              String line;
+              while ((line = reader.readLine()) != null) {
+                linesRead++;
+                T decrypted = readRecord(line);
+                if (decrypted != null) {
+                  action.accept(decrypted);
+                  return true;
+                }
+              }
+              return false;
+            } catch (IOException e) {
+              throw new UncheckedIOException(e);
+            }
+          }
+        }, false);
+  }
+
+  /**
+   * Returns the exceptions of the records that cannot be decoded or are not valid, in order of
+   * line number.
+   *
+   * @return the captured exceptions
+   */
+  public List<CsvException> getCapturedExceptions() {
+    return capturedExceptions;
+  }
+
+  private T readRecord(String line) throws IOException {
+    String[] fields = null;
+    T decrypted;
+    violations.clear();
+
+    if (line.indexOf('"') < 0 && line.indexOf('\\') < 0) {
+      decrypted = decoder.decode(line, violations);
+    } else {
+      fields = readQuotedFields(line);
+      decrypted = decoder.decode(fields, violations);
+    }
+
+    if (decrypted == null) {
+      String[] failedLine = fields != null ? fields : line.split(";", -1);
+      for (CsvDataTypeMismatchException violation : violations) {
+        capture(violation, failedLine);
+      }
+      return null;
+    }
+
+    if (verifier != null) {
+      try {
+        if (!verifier.verifyBean(decrypted)) {
+          return null;
+        }
+      } catch (CsvException e) {
+        capture(e, fields != null ? fields : line.split(";", -1));
+        return null;
+      }
+    }
+    return decrypted;
+  }
+
+  // Quoted fields may span several lines: the record is numbered after the last one
+  private String[] readQuotedFields(String line) throws IOException {
+    long firstLine = linesRead;
+    String[] fields = parser.parseLineMulti(line);
+    while (parser.isPending()) {
+      String nextLine = reader.readLine();
+      if (nextLine == null) {
+        throw new CsvMalformedLineException(String.format(UNTERMINATED_QUOTE,
+            StringUtils.abbreviate(parser.getPendingText(), MAX_PENDING_TEXT_WIDTH)), firstLine,
+            parser.getPendingText());
+      }
+      linesRead++;
+      fields = ArrayUtils.addAll(fields, parser.parseLineMulti(nextLine));
+    }
+    return fields;
+  }
+
+  private void capture(CsvException exception, String[] line) {
+    exception.setLine(line);
+    exception.setLineNumber(linesRead);
+    capturedExceptions.add(exception);
+  }
+}
@@ -1,6 +1,8 @@
 package it.gov.pagopa.rtd.ms.rtdmsdecrypter.service;
 
 import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.BlobApplicationAware;
+import java.io.IOException;
+import java.io.InputStream;
 
 /**
  * Interface offering PGP decryption methods.
@@ -9,4 +11,6 @@ public interface Decrypter {
 
   BlobApplicationAware decrypt(BlobApplicationAware blob);
 
+  InputStream decrypt(BlobApplicationAware blob, InputStream encrypted) throws IOException;
+
 }
@@ -2,21 +2,20 @@ package it.gov.pagopa.rtd.ms.rtdmsdecrypter.service;
 
 import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.BlobApplicationAware;
 import it.gov.pagopa.rtd.ms.rtdmsdecrypter.utils.LargeFileUtils;
-import jakarta.annotation.PostConstruct;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.utils.LargeFileUtils.Transfer;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.utils.PayloadDigestInputStream;
 import java.io.FileInputStream;
+import java.io.FilterInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.nio.charset.StandardCharsets;
+import java.io.PushbackInputStream;
 import java.nio.file.Path;
-import java.security.Security;
-import java.util.Base64;
 import java.util.Iterator;
-import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.io.IOUtils;
-import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.bouncycastle.openpgp.PGPCompressedData;
 import org.bouncycastle.openpgp.PGPEncryptedData;
 import org.bouncycastle.openpgp.PGPEncryptedDataList;
@@ -25,15 +24,10 @@ import org.bouncycastle.openpgp.PGPLiteralData;
 import org.bouncycastle.openpgp.PGPOnePassSignatureList;
 import org.bouncycastle.openpgp.PGPPrivateKey;
 import org.bouncycastle.openpgp.PGPPublicKeyEncryptedData;
-import org.bouncycastle.openpgp.PGPSecretKey;
-import org.bouncycastle.openpgp.PGPSecretKeyRingCollection;
 import org.bouncycastle.openpgp.PGPUtil;
 import org.bouncycastle.openpgp.jcajce.JcaPGPObjectFactory;
-import org.bouncycastle.openpgp.operator.jcajce.JcaKeyFingerprintCalculator;
-import org.bouncycastle.openpgp.operator.jcajce.JcePBESecretKeyDecryptorBuilder;
 import org.bouncycastle.openpgp.operator.jcajce.JcePublicKeyDataDecryptorFactoryBuilder;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Service;
 
 /**
@@ -41,21 +35,19 @@ import org.springframework.stereotype.Service;
  */
 @Service
 @Slf4j
-@Getter
+@RequiredArgsConstructor
 public class DecrypterImpl implements Decrypter {
 
-  @Value("${decrypt.private.key.password}")
-  private String privateKeyPassword;
+  private final DecryptionKeyRing decryptionKeyRing;
 
-  @Value("${decrypt.private.key.base64}")
-  private String privateKeyBase64;
+  // Size of the buffer copying the decrypted content
+  @Value("${decrypt.io.bufferSize:131072}")
+  private int bufferSize;
 
-  private String privateKey;
-
-  @PostConstruct
-  private void readKey() {
-    this.privateKey = new String(Base64.getMimeDecoder().decode(this.privateKeyBase64));
-  }
+  // The payload is digested only to be compared with the checksum header by the splitter
+  @Setter
+  @Value("${decrypt.enforceChecksum:false}")
+  private boolean checksumEnforced;
 
   /**
    * Constructor.
@@ -73,7 +65,7 @@ public class DecrypterImpl implements Decrypter {
         FileOutputStream decrypted = new FileOutputStream(
             Path.of(blob.getTargetDir(), blob.getBlob() + ".decrypted").toFile())
     ) {
-      this.decryptFile(encrypted, decrypted, blob.getBlob());
+      this.decryptFile(encrypted, decrypted, blob);
       blob.setStatus(BlobApplicationAware.Status.DECRYPTED);
       log.info("Blob decrypted: {}", blob.getBlob());
     } catch (Exception e) {
@@ -90,47 +82,93 @@ public class DecrypterImpl implements Decrypter {
     return blob;
   }
 
-  protected void decryptFile(InputStream input, OutputStream output, String blobName)
+  /**
+   * Opens a stream over the clear content of a PGP encrypted stream, so that it can be consumed
+   * without writing the decrypted file on disk. If the checksum is enforced, the digest of the
+   * payload is set on the report of the blob once the content is read to its end.
+   *
+   * @param blob      the blob being decrypted
+   * @param encrypted the encrypted content of the blob
+   * @return the decrypted content, to be closed by the caller
+   * @throws IOException if the encrypted content cannot be read or decrypted, or has no data
+   */
+  @Override
+  public InputStream decrypt(BlobApplicationAware blob, InputStream encrypted)
+      throws IOException {
+    log.info("Start streaming decrypt of blob: {}", blob.getBlob());
+    try {
+      // The first byte is read ahead, so that a file without data fails as the decrypted file does
+      PushbackInputStream unencrypted = new PushbackInputStream(
+          this.openDecryptedStream(encrypted, blob.getBlob()));
+      int first = unencrypted.read();
+      if (first < 0) {
+        unencrypted.close();
+        throw new IOException("No data found in decrypted file");
+      }
+      unencrypted.unread(first);
+      return digestIfEnforced(unencrypted, blob);
+    } catch (PGPException e) {
+      throw new IOException(e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Decrypts a PGP encrypted stream of a blob. If the checksum is enforced, the clear content is
+   * digested while it is copied and the digest is set on the report of the blob.
+   */
+  protected void decryptFile(InputStream input, OutputStream output, BlobApplicationAware blob)
       throws IOException, PGPException {
-    InputStream keyInput = IOUtils.toInputStream(this.privateKey, StandardCharsets.UTF_8);
-    char[] passwd = this.privateKeyPassword.toCharArray();
+    String blobName = blob.getBlob();
+    try (InputStream unencrypted = digestIfEnforced(this.openDecryptedStream(input, blobName),
+        blob)) {
+      log.info("Copying decrypted stream: {}", blobName);
+      Transfer transfer = LargeFileUtils.copy(unencrypted, output, bufferSize);
+      if (transfer.bytes() <= 0) {
+        throw new IllegalArgumentException("No data found in decrypted file");
+      }
+      log.info("Decrypted {}: {}", blobName, transfer);
+    }
+  }
+
+  private InputStream digestIfEnforced(InputStream clear, BlobApplicationAware blob) {
+    return checksumEnforced
+        ? new PayloadDigestInputStream(clear, blob.getReportMetaData()::setComputedCheckSum)
+        : clear;
+  }
 
-    Security.addProvider(new BouncyCastleProvider());
+  protected InputStream openDecryptedStream(InputStream input, String blobName)
+      throws IOException, PGPException {
     input = PGPUtil.getDecoderStream(input);
-    InputStream unencrypted = null;
-    InputStream clear = null;
 
-    try {
-      JcaPGPObjectFactory pgpF = new JcaPGPObjectFactory(input);
-      PGPEncryptedDataList encrypted;
+    JcaPGPObjectFactory pgpF = new JcaPGPObjectFactory(input);
+    PGPEncryptedDataList encrypted;
 
-      Object object = pgpF.nextObject();
-      // The first object might be a PGP marker packet.
-      if (object instanceof PGPEncryptedDataList pgpencrypteddatalist) {
-        encrypted = pgpencrypteddatalist;
-      } else {
-        encrypted = (PGPEncryptedDataList) pgpF.nextObject();
-      }
+    Object object = pgpF.nextObject();
+    // The first object might be a PGP marker packet.
+    if (object instanceof PGPEncryptedDataList pgpencrypteddatalist) {
+      encrypted = pgpencrypteddatalist;
+    } else {
+      encrypted = (PGPEncryptedDataList) pgpF.nextObject();
+    }
 
-      // Find the secret key
-      Iterator<PGPEncryptedData> it = encrypted.getEncryptedDataObjects();
-      PGPPrivateKey secretKey = null;
-      PGPPublicKeyEncryptedData pbe = null;
-      PGPSecretKeyRingCollection pgpSec = new PGPSecretKeyRingCollection(
-          PGPUtil.getDecoderStream(keyInput), new JcaKeyFingerprintCalculator());
+    // Find the secret key among the ones already unlocked at startup
+    Iterator<PGPEncryptedData> it = encrypted.getEncryptedDataObjects();
+    PGPPrivateKey secretKey = null;
+    PGPPublicKeyEncryptedData pbe = null;
 
-      while (secretKey == null && it.hasNext()) {
-        pbe = (PGPPublicKeyEncryptedData) it.next();
-        secretKey = findSecretKey(pgpSec, pbe.getKeyID(), passwd);
-      }
+    while (secretKey == null && it.hasNext()) {
+      pbe = (PGPPublicKeyEncryptedData) it.next();
+      secretKey = decryptionKeyRing.findPrivateKey(pbe.getKeyID());
+    }
 
-      if (secretKey == null) {
-        throw new PGPException("Secret key for message not found.");
-      }
+    if (secretKey == null) {
+      throw new PGPException("Secret key for message not found.");
+    }
 
-      clear = pbe.getDataStream(new JcePublicKeyDataDecryptorFactoryBuilder()
-          .setProvider("BC").build(secretKey));
+    InputStream clear = pbe.getDataStream(new JcePublicKeyDataDecryptorFactoryBuilder()
+        .setProvider("BC").build(secretKey));
 
+    try {
       JcaPGPObjectFactory plainFact = new JcaPGPObjectFactory(clear);
 
       Object message = plainFact.nextObject();
@@ -143,46 +181,43 @@ public class DecrypterImpl implements Decrypter {
       }
 
       if (message instanceof PGPLiteralData pgpLiteralData) {
-        PGPLiteralData ld = pgpLiteralData;
-
-        unencrypted = ld.getInputStream();
-
-        log.info("Copying decrypted stream: {}", blobName);
-        if (LargeFileUtils.copy(unencrypted, output) <= 0) {
-          throw new IllegalArgumentException("No data found in decrypted file");
-        }
-
+        return new DecryptedInputStream(pgpLiteralData.getInputStream(), clear, blobName);
       } else if (message instanceof PGPOnePassSignatureList) {
         throw new PGPException("Encrypted message contains a signed message - not literal data.");
       } else {
         throw new PGPException("Message is not a simple encrypted file - type unknown.");
       }
-
-    } finally {
-      keyInput.close();
-      if (unencrypted != null) {
-        log.info("Closing: {}", blobName + ".decrypted");
-        unencrypted.close();
-      }
-      if (clear != null) {
-        log.info("Closing clear stream: {}", blobName);
-        clear.close();
-      }
+    } catch (IOException | PGPException | RuntimeException e) {
+      log.info("Closing clear stream: {}", blobName);
+      clear.close();
+      throw e;
     }
-
   }
 
-  @Nullable
-  private PGPPrivateKey findSecretKey(PGPSecretKeyRingCollection pgpSec, long keyId, char[] pass)
-      throws PGPException {
-    PGPSecretKey pgpSecKey = pgpSec.getSecretKey(keyId);
+  /**
+   * Literal data stream that also releases the underlying decrypted stream on close.
+   */
+  private static class DecryptedInputStream extends FilterInputStream {
+
+    private final InputStream clear;
+    private final String blobName;
 
-    if (pgpSecKey == null) {
-      return null;
+    DecryptedInputStream(InputStream unencrypted, InputStream clear, String blobName) {
+      super(unencrypted);
+      this.clear = clear;
+      this.blobName = blobName;
     }
 
-    return pgpSecKey.extractPrivateKey(
-        new JcePBESecretKeyDecryptorBuilder().setProvider("BC").build(pass));
+    @Override
+    public void close() throws IOException {
+      try {
+        log.info("Closing: {}", blobName + ".decrypted");
+        super.close();
+      } finally {
+        log.info("Closing clear stream: {}", blobName);
+        clear.close();
+      }
+    }
   }
 
 }
@@ -0,0 +1,52 @@
+package it.gov.pagopa.rtd.ms.rtdmsdecrypter.service;
+
+import com.opencsv.exceptions.CsvDataTypeMismatchException;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.RtdTransaction;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Implementation of {@link DecryptedRecordDecoder} for the {@link RtdTransaction} records.
+ */
+public class RtdTransactionDecoder extends DecryptedRecordDecoder<RtdTransaction> {
+
+  // Same pattern of the CsvDate annotation of the transaction date
+  private static final DateTimeFormatter TRX_DATE_FORMATTER = DateTimeFormatter.ofPattern(
+      "yyyy-MM-dd'T'HH:mm:ss.SSS[XX][XXX]");
+
+  @Override
+  protected int columns() {
+    return 19;
+  }
+
+  @Override
+  protected RtdTransaction newRecord() {
+    return new RtdTransaction();
+  }
+
+  @Override
+  protected void decodeField(RtdTransaction transaction, int column, String value)
+      throws CsvDataTypeMismatchException {
+    switch (column) {
+      case 0 -> transaction.setAcquirerCode(value);
+      case 1 -> transaction.setOperationType(value);
+      case 2 -> transaction.setCircuitType(value);
+      case 3 -> transaction.setHpan(value);
+      case 4 -> transaction.setTrxDate(toOffsetDateTime(value, TRX_DATE_FORMATTER));
+      case 5 -> transaction.setIdTrxAcquirer(value);
+      case 6 -> transaction.setIdTrxIssuer(value);
+      case 7 -> transaction.setCorrelationId(value);
+      case 8 -> transaction.setAmount(toBigDecimal(value));
+      case 9 -> transaction.setAmountCurrency(value);
+      case 10 -> transaction.setAcquirerId(value);
+      case 11 -> transaction.setMerchantId(value);
+      case 12 -> transaction.setTerminalId(value);
+      case 13 -> transaction.setBin(value);
+      case 14 -> transaction.setMcc(value);
+      case 15 -> transaction.setFiscalCode(value);
+      case 16 -> transaction.setVat(value);
+      case 17 -> transaction.setPosType(value);
+      case 18 -> transaction.setPar(value);
+      default -> throw new IllegalArgumentException("Unmapped column " + column);
+    }
+  }
+}
@@ -3,11 +3,9 @@ package it.gov.pagopa.rtd.ms.rtdmsdecrypter.service;
 import com.opencsv.bean.BeanVerifier;
 import com.opencsv.exceptions.CsvConstraintViolationException;
 import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.RtdTransaction;
-import jakarta.validation.ConstraintViolation;
-import jakarta.validation.Validation;
-import jakarta.validation.Validator;
-import jakarta.validation.ValidatorFactory;
-import java.util.Set;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.utils.RecordValidator;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.utils.RecordValidator.Violation;
+import java.util.List;
 
 /**
  * Implementation of {@link BeanVerifier}, used to verify the validity of the
@@ -16,33 +14,31 @@ import java.util.Set;
  */
 public class RtdTransactionsVerifier implements BeanVerifier<RtdTransaction> {
 
-  private static final ValidatorFactory factory = Validation.buildDefaultValidatorFactory();
-
-  private static final Validator validator = factory.getValidator();
+  private static final RecordValidator<RtdTransaction> validator = RecordValidator.compile(
+      RtdTransaction.class);
 
   @Override
   public boolean verifyBean(RtdTransaction rtdTransactions) throws CsvConstraintViolationException {
-    Set<ConstraintViolation<RtdTransaction>> violations = validator.validate(
-        rtdTransactions);
+    List<Violation> violations = validator.validate(rtdTransactions);
 
     if (!violations.isEmpty()) {
       StringBuilder malformedFields = new StringBuilder();
-      for (ConstraintViolation<RtdTransaction> violation : violations) {
-        if (!violation.getPropertyPath().toString().equals("acquirerCode")) {
+      for (Violation violation : violations) {
+        if (!violation.propertyPath().equals("acquirerCode")) {
           malformedFields.append(String.format("[ Acquirer code: %s ] ",
               rtdTransactions.getAcquirerCode()));
         }
-        if (!violation.getPropertyPath().toString().equals("terminalId")) {
+        if (!violation.propertyPath().equals("terminalId")) {
           malformedFields.append(String.format("[ Terminal id: %s ] ",
               rtdTransactions.getTerminalId()));
         }
-        if (!violation.getPropertyPath().toString().equals("fiscalCode")) {
+        if (!violation.propertyPath().equals("fiscalCode")) {
           malformedFields.append(String.format("[ Fiscal code: %s ] ",
               rtdTransactions.getFiscalCode()));
         }
         malformedFields.append("Malformed fields extracted : (")
-            .append(violation.getPropertyPath().toString()).append(": ");
-        malformedFields.append(violation.getMessage()).append(") ");
+            .append(violation.propertyPath()).append(": ");
+        malformedFields.append(violation.message()).append(") ");
       }
 
       throw new CsvConstraintViolationException(malformedFields.toString());
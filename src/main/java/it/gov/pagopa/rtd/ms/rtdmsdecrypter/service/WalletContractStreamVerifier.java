@@ -0,0 +1,298 @@
+package it.gov.pagopa.rtd.ms.rtdmsdecrypter.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.exc.MismatchedInputException;
+import com.fasterxml.jackson.databind.exc.UnrecognizedPropertyException;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.ContractMethodAttributes;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.WalletContract;
+import java.io.IOException;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Streaming counterpart of {@link BlobVerifierImpl#deserializeAndVerifyContract}: it checks a
+ * wallet contract token by token, with the same rules as the constraints of
+ * {@link WalletContract} and {@link ContractMethodAttributes}, and writes it to the chunk
+ * generator exactly as the serialization of the {@link WalletContract} would, without binding the
+ * object graph.
+ *
+ * <p>Field values are kept in reusable slots, so an instance must not be shared between threads.
+ */
+@Slf4j
+public class WalletContractStreamVerifier {
+
+  private static final List<Object> CONTRACT_FIELDS = List.of("action", "import_outcome",
+      "payment_method", "method_attributes", "reason_message", "original_contract_identifier");
+
+  private static final List<Object> METHOD_ATTRIBUTES_FIELDS = List.of("pan_tail", "expdate",
+      "card_id_4", "card_payment_circuit", "new_contract_identifier",
+      "original_contract_identifier", "card_bin");
+
+  private static final String NOT_NULL = "must not be null";
+
+  // Contract fields
+  private String action;
+  private String importOutcome;
+  private String paymentMethod;
+  private boolean hasMethodAttributes;
+  private String reasonMessage;
+  private String originalContractIdentifier;
+
+  // Method attributes fields
+  private String panTail;
+  private String expdate;
+  private String cardId4;
+  private String cardPaymentCircuit;
+  private String newContractIdentifier;
+  private String attributesOriginalContractIdentifier;
+  private String cardBin;
+
+  /**
+   * Reads the contract the parser is positioned on and, if it is valid, writes it to the
+   * generator.
+   *
+   * @param jsonParser       parser positioned on the start of the contract
+   * @param jsonGenerator    generator of the chunk the contract is written to
+   * @param contractsCounter number of contracts already read, for logging purposes
+   * @return whether the contract is valid
+   * @throws IOException if the contract is not well-formed, has unknown fields or fields of the
+   *                     wrong type, as the deserialization of {@link WalletContract} would
+   */
+  public boolean verifyAndCopy(JsonParser jsonParser, JsonGenerator jsonGenerator,
+      int contractsCounter) throws IOException {
+    readContract(jsonParser);
+
+    if (!isContractValid(contractsCounter)) {
+      return false;
+    }
+
+    if (importOutcome.equals("KO") && reasonMessage == null) {
+      log.error("Validation error on contract {}: import outcome KO and no reason message",
+          (contractsCounter + 1));
+      return false;
+    }
+
+    if (hasMethodAttributes) {
+      if (!areMethodAttributesValid(contractsCounter)) {
+        return false;
+      }
+    } else if (!action.equals("DELETE") && !importOutcome.equals("KO")) {
+      log.error("Method attributes of contract {} are empty", (contractsCounter + 1));
+      return false;
+    }
+
+    writeContract(jsonGenerator);
+    return true;
+  }
+
+  private void readContract(JsonParser jsonParser) throws IOException {
+    action = null;
+    importOutcome = null;
+    paymentMethod = null;
+    hasMethodAttributes = false;
+    reasonMessage = null;
+    originalContractIdentifier = null;
+
+    if (jsonParser.currentToken() != JsonToken.START_OBJECT) {
+      throw MismatchedInputException.from(jsonParser, WalletContract.class,
+          "Cannot deserialize value of type `" + WalletContract.class.getName() + "` from "
+              + jsonParser.currentToken());
+    }
+    while (jsonParser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = jsonParser.currentName();
+      jsonParser.nextToken();
+      switch (field) {
+        case "action" -> action = readString(jsonParser);
+        case "import_outcome" -> importOutcome = readString(jsonParser);
+        case "payment_method" -> paymentMethod = readString(jsonParser);
+        case "method_attributes" -> hasMethodAttributes = readMethodAttributes(jsonParser);
+        case "reason_message" -> reasonMessage = readString(jsonParser);
+        case "original_contract_identifier" -> originalContractIdentifier = readString(jsonParser);
+        default -> throw UnrecognizedPropertyException.from(jsonParser, WalletContract.class,
+            field, CONTRACT_FIELDS);
+      }
+    }
+  }
+
+  private boolean readMethodAttributes(JsonParser jsonParser) throws IOException {
+    panTail = null;
+    expdate = null;
+    cardId4 = null;
+    cardPaymentCircuit = null;
+    newContractIdentifier = null;
+    attributesOriginalContractIdentifier = null;
+    cardBin = null;
+
+    if (jsonParser.currentToken() == JsonToken.VALUE_NULL) {
+      return false;
+    }
+    if (jsonParser.currentToken() != JsonToken.START_OBJECT) {
+      throw MismatchedInputException.from(jsonParser, ContractMethodAttributes.class,
+          "Cannot deserialize value of type `" + ContractMethodAttributes.class.getName()
+              + "` from " + jsonParser.currentToken());
+    }
+    while (jsonParser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = jsonParser.currentName();
+      jsonParser.nextToken();
+      switch (field) {
+        case "pan_tail" -> panTail = readString(jsonParser);
+        case "expdate" -> expdate = readString(jsonParser);
+        case "card_id_4" -> cardId4 = readString(jsonParser);
+        case "card_payment_circuit" -> cardPaymentCircuit = readString(jsonParser);
+        case "new_contract_identifier" -> newContractIdentifier = readString(jsonParser);
+        case "original_contract_identifier" ->
+            attributesOriginalContractIdentifier = readString(jsonParser);
+        case "card_bin" -> cardBin = readString(jsonParser);
+        default -> throw UnrecognizedPropertyException.from(jsonParser,
+            ContractMethodAttributes.class, field, METHOD_ATTRIBUTES_FIELDS);
+      }
+    }
+    return true;
+  }
+
+  // Same coercions of the String deserializer: scalars as text, structures rejected
+  private static String readString(JsonParser jsonParser) throws IOException {
+    JsonToken token = jsonParser.currentToken();
+    if (token == JsonToken.VALUE_STRING) {
+      return jsonParser.getText();
+    }
+    if (token == JsonToken.VALUE_NULL) {
+      return null;
+    }
+    if (token.isScalarValue()) {
+      return jsonParser.getValueAsString();
+    }
+    throw MismatchedInputException.from(jsonParser, String.class,
+        "Cannot deserialize value of type `java.lang.String` from " + token);
+  }
+
+  private boolean isContractValid(int contractsCounter) {
+    String actionViolation = action == null ? NOT_NULL
+        : isCreateOrDelete(action) ? null : "must match \"CREATE|DELETE\"";
+    String importOutcomeViolation = importOutcome == null ? NOT_NULL
+        : isOkOrKo(importOutcome) ? null : "must match \"OK|KO\"";
+
+    if (actionViolation == null && importOutcomeViolation == null) {
+      return true;
+    }
+    log.error("Validation error in contract {}: fields are not valid", (contractsCounter + 1));
+    if (actionViolation != null) {
+      log.error("{}", actionViolation);
+    }
+    if (importOutcomeViolation != null) {
+      log.error("{}", importOutcomeViolation);
+    }
+    return false;
+  }
+
+  private boolean areMethodAttributesValid(int contractsCounter) {
+    boolean valid = panTail == null || isDigits(panTail, 4);
+    valid &= expdate != null && cardId4 != null && cardPaymentCircuit != null
+        && newContractIdentifier != null && attributesOriginalContractIdentifier != null
+        && cardBin != null && (isDigits(cardBin, 6) || isDigits(cardBin, 8));
+    if (valid) {
+      return true;
+    }
+
+    log.error("Validation error on contract {}: method attributes are not valid",
+        (contractsCounter + 1));
+    if (panTail != null && !isDigits(panTail, 4)) {
+      log.error("{} {}", "panTail", "must match \"\\d{4}\"");
+    }
+    logIfNull("expdate", expdate);
+    logIfNull("cardId4", cardId4);
+    logIfNull("cardPaymentCircuit", cardPaymentCircuit);
+    logIfNull("newContractIdentifier", newContractIdentifier);
+    logIfNull("originalContractIdentifier", attributesOriginalContractIdentifier);
+    logIfNull("cardBin", cardBin);
+    if (cardBin != null && !isDigits(cardBin, 6) && !isDigits(cardBin, 8)) {
+      log.error("{} {}", "cardBin", "must match \"\\d{6}|\\d{8}\"");
+    }
+    return false;
+  }
+
+  private static void logIfNull(String property, String value) {
+    if (value == null) {
+      log.error("{} {}", property, NOT_NULL);
+    }
+  }
+
+  // Field order and inclusion rules of the WalletContract serialization
+  private void writeContract(JsonGenerator jsonGenerator) throws IOException {
+    jsonGenerator.writeStartObject();
+    jsonGenerator.writeStringField("action", action);
+    jsonGenerator.writeStringField("import_outcome", importOutcome);
+    if (paymentMethod != null) {
+      jsonGenerator.writeStringField("payment_method", paymentMethod);
+    }
+    if (hasMethodAttributes) {
+      jsonGenerator.writeObjectFieldStart("method_attributes");
+      writeNullableStringField(jsonGenerator, "pan_tail", panTail);
+      writeNullableStringField(jsonGenerator, "expdate", expdate);
+      writeNullableStringField(jsonGenerator, "card_id_4", cardId4);
+      writeNullableStringField(jsonGenerator, "card_payment_circuit", cardPaymentCircuit);
+      writeNullableStringField(jsonGenerator, "new_contract_identifier", newContractIdentifier);
+      writeNullableStringField(jsonGenerator, "original_contract_identifier",
+          attributesOriginalContractIdentifier);
+      writeNullableStringField(jsonGenerator, "card_bin", cardBin);
+      jsonGenerator.writeEndObject();
+    }
+    if (reasonMessage != null) {
+      jsonGenerator.writeStringField("reason_message", reasonMessage);
+    }
+    if (originalContractIdentifier != null) {
+      jsonGenerator.writeStringField("original_contract_identifier", originalContractIdentifier);
+    }
+    jsonGenerator.writeEndObject();
+  }
+
+  private static void writeNullableStringField(JsonGenerator jsonGenerator, String field,
+      String value) throws IOException {
+    if (value == null) {
+      jsonGenerator.writeNullField(field);
+    } else {
+      jsonGenerator.writeStringField(field, value);
+    }
+  }
+
+  // Patterns are case insensitive for ASCII letters only, as java.util.regex by default
+  private static boolean isCreateOrDelete(String value) {
+    return equalsAsciiIgnoreCase(value, "CREATE") || equalsAsciiIgnoreCase(value, "DELETE");
+  }
+
+  private static boolean isOkOrKo(String value) {
+    return equalsAsciiIgnoreCase(value, "OK") || equalsAsciiIgnoreCase(value, "KO");
+  }
+
+  private static boolean equalsAsciiIgnoreCase(String value, String upperCase) {
+    if (value.length() != upperCase.length()) {
+      return false;
+    }
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c >= 'a' && c <= 'z') {
+        c -= 'a' - 'A';
+      }
+      if (c != upperCase.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // \d without UNICODE_CHARACTER_CLASS only matches ASCII digits
+  private static boolean isDigits(String value, int length) {
+    if (value.length() != length) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      char c = value.charAt(i);
+      if (c < '0' || c > '9') {
+        return false;
+      }
+    }
+    return true;
+  }
+}
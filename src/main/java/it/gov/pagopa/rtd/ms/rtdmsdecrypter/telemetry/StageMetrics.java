@@ -0,0 +1,126 @@
+package it.gov.pagopa.rtd.ms.rtdmsdecrypter.telemetry;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.BlobApplicationAware;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.BlobChunk;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+/**
+ * Meters of the stages a blob goes through, tagged by stage, application and outcome: the time
+ * spent on each blob, the bytes it carried and their throughput. Comparing the stages under load
+ * tells which one is the bottleneck.
+ */
+@Component
+public class StageMetrics {
+
+  public static final String DOWNLOAD = "download";
+  public static final String DECRYPT = "decrypt";
+  public static final String SPLIT = "split";
+  // Download, decrypt and split of a streamed blob, overlapping each other
+  public static final String STREAM = "stream";
+  public static final String VERIFY = "verify";
+  public static final String UPLOAD = "upload";
+  public static final String METADATA = "metadata";
+
+  public static final String SUCCESS = "success";
+  public static final String FAILURE = "failure";
+  public static final String ERROR = "error";
+
+  private final ObjectProvider<MeterRegistry> meterRegistry;
+
+  public StageMetrics(ObjectProvider<MeterRegistry> meterRegistry) {
+    this.meterRegistry = meterRegistry;
+  }
+
+  /**
+   * Runs a stage of a blob, recording its duration and the bytes it produced. A stage throwing an
+   * exception is recorded with the error outcome and the exception is rethrown.
+   *
+   * @param stage     the name of the stage
+   * @param blob      the blob going through the stage
+   * @param step      the stage
+   * @param succeeded tells whether the outcome of the stage is successful
+   * @param bytes     the bytes produced by the stage, e.g. the size of the downloaded file
+   * @param <T>       the type of the outcome of the stage
+   * @return the outcome of the stage
+   */
+  public <T> T record(String stage, BlobApplicationAware blob, Supplier<T> step,
+      Predicate<T> succeeded, ToLongFunction<T> bytes) {
+    MeterRegistry registry = meterRegistry.getIfAvailable();
+    if (registry == null) {
+      return step.get();
+    }
+    long start = System.nanoTime();
+    T result;
+    try {
+      result = step.get();
+    } catch (RuntimeException e) {
+      record(registry, stage, blob, ERROR, System.nanoTime() - start, 0);
+      throw e;
+    }
+    record(registry, stage, blob, succeeded.test(result) ? SUCCESS : FAILURE,
+        System.nanoTime() - start, bytes.applyAsLong(result));
+    return result;
+  }
+
+  /**
+   * Size of the local file of a blob, or zero if it is not on disk, e.g. when streamed. The size of
+   * a chunk is the one counted while writing it, if known.
+   */
+  public static long fileSize(BlobApplicationAware blob) {
+    if (blob instanceof BlobChunk chunk && chunk.getByteSize() != BlobChunk.UNKNOWN) {
+      return chunk.getByteSize();
+    }
+    if (blob.getTargetDir() == null || blob.getBlob() == null) {
+      return 0;
+    }
+    return Path.of(blob.getTargetDir(), blob.getBlob()).toFile().length();
+  }
+
+  public static long fileSize(Collection<BlobApplicationAware> blobs) {
+    return blobs.stream().mapToLong(StageMetrics::fileSize).sum();
+  }
+
+  private void record(MeterRegistry registry, String stage, BlobApplicationAware blob,
+      String outcome, long nanos, long bytes) {
+    Tags tags = Tags.of("stage", stage, "application", String.valueOf(blob.getApp()),
+        "outcome", outcome);
+    Timer.builder("decrypter.stage.duration")
+        .description("Time spent by a blob in a stage of the pipeline")
+        .tags(tags)
+        .publishPercentiles(0.5, 0.9, 0.99)
+        .publishPercentileHistogram()
+        .register(registry)
+        .record(nanos, TimeUnit.NANOSECONDS);
+    if (bytes <= 0) {
+      return;
+    }
+    Counter.builder("decrypter.stage.bytes")
+        .description("Bytes produced by a stage of the pipeline")
+        .baseUnit(BaseUnits.BYTES)
+        .tags(tags)
+        .register(registry)
+        .increment(bytes);
+    if (nanos > 0) {
+      DistributionSummary.builder("decrypter.stage.throughput")
+          .description("Bytes per second of a blob in a stage of the pipeline")
+          .baseUnit("bytes.per.second")
+          .tags(tags)
+          .publishPercentiles(0.5, 0.9, 0.99)
+          .register(registry)
+          .record(bytes * 1e9 / nanos);
+    }
+  }
+}
@@ -0,0 +1,66 @@
+package it.gov.pagopa.rtd.ms.rtdmsdecrypter.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Utility class to build executors with a bounded number of workers and to run batches of tasks
+ * on them.
+ */
+public final class BoundedExecutors {
+
+  /**
+   * Creates an executor running at most the given number of tasks at the same time.
+   *
+   * @param name           prefix of the worker thread names
+   * @param threads        number of workers, or a non-positive value for one per available CPU
+   * @param virtualThreads whether the workers are virtual threads instead of platform ones
+   * @return the executor, to be shut down by the owner
+   */
+  public static ExecutorService newBoundedExecutor(String name, int threads,
+      boolean virtualThreads) {
+    int workers = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    ThreadFactory factory = virtualThreads
+        ? Thread.ofVirtual().name(name + "-", 0).factory()
+        : Thread.ofPlatform().name(name + "-", 0).daemon().factory();
+    return Executors.newFixedThreadPool(workers, factory);
+  }
+
+  /**
+   * Runs the tasks on the executor and waits for all of them to complete.
+   *
+   * @param executor the executor running the tasks
+   * @param tasks    the tasks to run
+   * @param <T>      type of the task results
+   * @return the results, in the same order as the tasks
+   * @throws IllegalStateException if the waiting thread is interrupted
+   */
+  public static <T> List<T> invokeAllOrdered(ExecutorService executor,
+      List<? extends Callable<T>> tasks) {
+    try {
+      List<Future<T>> futures = executor.invokeAll(tasks);
+      List<T> results = new ArrayList<>(futures.size());
+      for (Future<T> future : futures) {
+        results.add(future.get());
+      }
+      return results;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for tasks completion", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException runtimeException) {
+        throw runtimeException;
+      }
+      if (e.getCause() instanceof Error error) {
+        throw error;
+      }
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+}
@@ -0,0 +1,59 @@
+package it.gov.pagopa.rtd.ms.rtdmsdecrypter.utils;
+
+/**
+ * Counter of the distinct values of a stream, e.g. the merchants of an ADE file, keeping a 64-bit
+ * fingerprint of every value instead of the value itself.
+ */
+public interface CardinalityCounter {
+
+  /**
+   * Kinds of counters.
+   */
+  enum Mode {
+    // Exact up to fingerprint collisions, with memory growing with the distinct values
+    EXACT,
+    // Estimated within about 1% of error, with a bounded memory
+    HYPERLOGLOG;
+
+    public CardinalityCounter newCounter() {
+      return this == EXACT ? new FingerprintSet() : new HyperLogLog();
+    }
+  }
+
+  default void add(CharSequence value) {
+    addFingerprint(fingerprint(value));
+  }
+
+  void addFingerprint(long fingerprint);
+
+  long cardinality();
+
+  /**
+   * Adds the values counted by another counter.
+   *
+   * @param other the counter to be merged into this one
+   * @return the union of the counters: this one, or an estimating one if only the other is
+   */
+  CardinalityCounter merge(CardinalityCounter other);
+
+  /**
+   * Hashes the UTF-16 chars of a value with FNV-1a, mixing the bits with the finalizer of
+   * MurmurHash3 so that every bit of the fingerprint is evenly distributed.
+   *
+   * @param value the value
+   * @return the 64-bit fingerprint
+   */
+  static long fingerprint(CharSequence value) {
+    long hash = 0xcbf29ce484222325L;
+    for (int i = 0; i < value.length(); i++) {
+      hash ^= value.charAt(i);
+      hash *= 0x100000001b3L;
+    }
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9fe1a85ec53L;
+    hash ^= hash >>> 33;
+    return hash;
+  }
+}
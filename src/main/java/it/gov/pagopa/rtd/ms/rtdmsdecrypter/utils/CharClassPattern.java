@@ -0,0 +1,214 @@
+package it.gov.pagopa.rtd.ms.rtdmsdecrypter.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Matcher of the regular expressions made of ASCII character classes, literals and bounded
+ * repetitions, such as {@code [a-zA-Z0-9]{1,255}} or {@code \d{6}|\d{8}}, that are the patterns
+ * of the record constraints. It gives the same result of {@link java.util.regex.Matcher#matches()}
+ * without allocating, by checking each character against bit masks.
+ */
+public final class CharClassPattern {
+
+  private static final String METACHARACTERS = ".^$*+?()[]{}|\\";
+
+  // For every alternative, one mask pair and repetition bounds per atom
+  private final long[][] lowMasks;
+  private final long[][] highMasks;
+  private final int[][] minOccurrences;
+  private final int[][] maxOccurrences;
+
+  private CharClassPattern(List<List<Atom>> alternatives) {
+    int size = alternatives.size();
+    lowMasks = new long[size][];
+    highMasks = new long[size][];
+    minOccurrences = new int[size][];
+    maxOccurrences = new int[size][];
+    for (int i = 0; i < size; i++) {
+      List<Atom> atoms = alternatives.get(i);
+      lowMasks[i] = atoms.stream().mapToLong(Atom::lowMask).toArray();
+      highMasks[i] = atoms.stream().mapToLong(Atom::highMask).toArray();
+      minOccurrences[i] = atoms.stream().mapToInt(Atom::min).toArray();
+      maxOccurrences[i] = atoms.stream().mapToInt(Atom::max).toArray();
+    }
+  }
+
+  /**
+   * Compiles a regular expression, if it only uses the supported syntax.
+   *
+   * @param regex the regular expression, without flags
+   * @return the compiled pattern, or empty if the expression needs {@link java.util.regex}
+   */
+  public static Optional<CharClassPattern> compile(String regex) {
+    try {
+      return Optional.of(new CharClassPattern(new Parser(regex).parse()));
+    } catch (IllegalArgumentException e) {
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * Tells whether the whole value matches the pattern.
+   *
+   * @param value the value to match
+   * @return true if the value matches
+   */
+  public boolean matches(CharSequence value) {
+    for (int i = 0; i < lowMasks.length; i++) {
+      if (matches(i, 0, value, 0)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // Greedy repetitions, backtracking when the rest of the alternative does not match
+  private boolean matches(int alternative, int atom, CharSequence value, int position) {
+    if (atom == lowMasks[alternative].length) {
+      return position == value.length();
+    }
+    int max = Math.min(maxOccurrences[alternative][atom], value.length() - position);
+    int count = 0;
+    while (count < max && inClass(alternative, atom, value.charAt(position + count))) {
+      count++;
+    }
+    for (; count >= minOccurrences[alternative][atom]; count--) {
+      if (matches(alternative, atom + 1, value, position + count)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean inClass(int alternative, int atom, char c) {
+    if (c < 64) {
+      return (lowMasks[alternative][atom] & (1L << c)) != 0;
+    }
+    return c < 128 && (highMasks[alternative][atom] & (1L << (c - 64))) != 0;
+  }
+
+  private record Atom(long lowMask, long highMask, int min, int max) {
+
+  }
+
+  private static final class Parser {
+
+    private final String regex;
+    private int position;
+
+    private Parser(String regex) {
+      this.regex = regex;
+    }
+
+    private List<List<Atom>> parse() {
+      List<List<Atom>> alternatives = new ArrayList<>();
+      List<Atom> atoms = new ArrayList<>();
+      while (position < regex.length()) {
+        char c = regex.charAt(position++);
+        if (c == '|') {
+          alternatives.add(atoms);
+          atoms = new ArrayList<>();
+          continue;
+        }
+        long[] masks = new long[2];
+        if (c == '[') {
+          parseClass(masks);
+        } else if (c == '\\') {
+          parseEscape(masks);
+        } else if (METACHARACTERS.indexOf(c) < 0 && c < 128) {
+          add(masks, c, c);
+        } else {
+          throw new IllegalArgumentException("Unsupported character " + c);
+        }
+        atoms.add(parseQuantifier(masks));
+      }
+      alternatives.add(atoms);
+      return alternatives;
+    }
+
+    private void parseClass(long[] masks) {
+      if (position < regex.length() && regex.charAt(position) == '^') {
+        throw new IllegalArgumentException("Unsupported negated class");
+      }
+      while (position < regex.length() && regex.charAt(position) != ']') {
+        char c = regex.charAt(position++);
+        if (c == '\\') {
+          parseEscape(masks);
+        } else if (c == '[' || c == '&' || c == '-' || c >= 128) {
+          throw new IllegalArgumentException("Unsupported class character " + c);
+        } else if (position + 1 < regex.length() && regex.charAt(position) == '-'
+            && regex.charAt(position + 1) != ']') {
+          char last = regex.charAt(position + 1);
+          if (last < c || last >= 128 || last == '\\' || last == '[') {
+            throw new IllegalArgumentException("Unsupported range " + c + "-" + last);
+          }
+          add(masks, c, last);
+          position += 2;
+        } else {
+          add(masks, c, c);
+        }
+      }
+      if (position++ >= regex.length()) {
+        throw new IllegalArgumentException("Unterminated class");
+      }
+    }
+
+    // \d only matches ASCII digits, as UNICODE_CHARACTER_CLASS is not set
+    private void parseEscape(long[] masks) {
+      if (position >= regex.length()) {
+        throw new IllegalArgumentException("Trailing escape");
+      }
+      char c = regex.charAt(position++);
+      if (c == 'd') {
+        add(masks, '0', '9');
+      } else if (METACHARACTERS.indexOf(c) >= 0 || c == '-') {
+        add(masks, c, c);
+      } else {
+        throw new IllegalArgumentException("Unsupported escape \\" + c);
+      }
+    }
+
+    private Atom parseQuantifier(long[] masks) {
+      int min = 1;
+      int max = 1;
+      if (position < regex.length()) {
+        char c = regex.charAt(position);
+        if (c == '{') {
+          int end = regex.indexOf('}', position);
+          if (end < 0) {
+            throw new IllegalArgumentException("Unterminated quantifier");
+          }
+          String[] bounds = regex.substring(position + 1, end).split(",", -1);
+          if (bounds.length > 2 || bounds[0].isEmpty()) {
+            throw new IllegalArgumentException("Unsupported quantifier");
+          }
+          // Throws NumberFormatException, an IllegalArgumentException, when malformed
+          min = Integer.parseInt(bounds[0]);
+          max = bounds.length == 1 ? min
+              : bounds[1].isEmpty() ? Integer.MAX_VALUE : Integer.parseInt(bounds[1]);
+          position = end + 1;
+        } else if (c == '?' || c == '*' || c == '+') {
+          min = c == '+' ? 1 : 0;
+          max = c == '?' ? 1 : Integer.MAX_VALUE;
+          position++;
+        }
+        if (min > max) {
+          throw new IllegalArgumentException("Illegal repetition range");
+        }
+        // Lazy and possessive quantifiers are not supported
+        if (position < regex.length() && "?+*{".indexOf(regex.charAt(position)) >= 0) {
+          throw new IllegalArgumentException("Unsupported quantifier");
+        }
+      }
+      return new Atom(masks[0], masks[1], min, max);
+    }
+
+    private static void add(long[] masks, char first, char last) {
+      for (char c = first; c <= last; c++) {
+        masks[c >> 6] |= 1L << (c & 63);
+      }
+    }
+  }
+}
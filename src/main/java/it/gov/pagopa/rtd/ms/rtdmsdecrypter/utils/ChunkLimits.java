@@ -0,0 +1,53 @@
+package it.gov.pagopa.rtd.ms.rtdmsdecrypter.utils;
+
+/**
+ * Limits of the chunks of a split: a chunk is closed by the line, or the contract, reaching either
+ * its number of lines or its size in bytes, whichever comes first.
+ *
+ * @param maxLines the lines of a chunk
+ * @param maxBytes the bytes of a chunk, or a non-positive value to limit only the lines
+ */
+public record ChunkLimits(int maxLines, long maxBytes) {
+
+  /**
+   * Tells whether a chunk is complete.
+   *
+   * @param lines the lines written to the chunk
+   * @param bytes the bytes written to the chunk
+   * @return true if no more lines are to be written to the chunk
+   */
+  public boolean isReached(long lines, long bytes) {
+    return lines >= maxLines || (maxBytes > 0 && bytes >= maxBytes);
+  }
+
+  public boolean hasByteLimit() {
+    return maxBytes > 0;
+  }
+
+  /**
+   * Counts the bytes of the UTF-8 encoding of a line, without encoding it.
+   *
+   * @param line the line
+   * @return the number of bytes
+   */
+  public static long utf8Length(CharSequence line) {
+    int length = line.length();
+    long bytes = length;
+    for (int i = 0; i < length; i++) {
+      char c = line.charAt(i);
+      if (c >= 0x80) {
+        if (c < 0x800) {
+          bytes++;
+        } else if (Character.isHighSurrogate(c) && i + 1 < length
+            && Character.isLowSurrogate(line.charAt(i + 1))) {
+          // Two chars of a supplementary code point, encoded in four bytes
+          bytes += 2;
+          i++;
+        } else {
+          bytes += 2;
+        }
+      }
+    }
+    return bytes;
+  }
+}
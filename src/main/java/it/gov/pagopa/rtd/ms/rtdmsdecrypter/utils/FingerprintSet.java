@@ -0,0 +1,98 @@
+package it.gov.pagopa.rtd.ms.rtdmsdecrypter.utils;
+
+import java.util.function.LongConsumer;
+
+/**
+ * Exact counter keeping the fingerprints in an open addressing table of longs, linearly probed,
+ * in a fraction of the memory of a set of strings.
+ */
+public class FingerprintSet implements CardinalityCounter {
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  // The empty slots hold zero, so the zero fingerprint is tracked apart
+  private long[] slots = new long[INITIAL_CAPACITY];
+
+  private boolean containsZero;
+
+  private int size;
+
+  @Override
+  public void addFingerprint(long fingerprint) {
+    if (fingerprint == 0) {
+      if (!containsZero) {
+        containsZero = true;
+        size++;
+      }
+      return;
+    }
+    if (insert(slots, fingerprint)) {
+      size++;
+      // Grown at three quarters of the slots, keeping probe sequences short
+      if (size > slots.length - (slots.length >>> 2)) {
+        grow();
+      }
+    }
+  }
+
+  @Override
+  public long cardinality() {
+    return size;
+  }
+
+  @Override
+  public CardinalityCounter merge(CardinalityCounter other) {
+    if (other instanceof FingerprintSet set) {
+      set.forEach(this::addFingerprint);
+      return this;
+    }
+    if (other instanceof HyperLogLog hyperLogLog) {
+      return hyperLogLog.copy().merge(this);
+    }
+    throw new IllegalArgumentException("Cannot merge " + other.getClass().getSimpleName());
+  }
+
+  /**
+   * Passes every fingerprint to the consumer, in no particular order.
+   *
+   * @param consumer the consumer of the fingerprints
+   */
+  public void forEach(LongConsumer consumer) {
+    if (containsZero) {
+      consumer.accept(0);
+    }
+    for (long slot : slots) {
+      if (slot != 0) {
+        consumer.accept(slot);
+      }
+    }
+  }
+
+  int capacity() {
+    return slots.length;
+  }
+
+  private void grow() {
+    long[] grown = new long[slots.length << 1];
+    for (long slot : slots) {
+      if (slot != 0) {
+        insert(grown, slot);
+      }
+    }
+    slots = grown;
+  }
+
+  private static boolean insert(long[] table, long fingerprint) {
+    int mask = table.length - 1;
+    // The low bits of the fingerprint are already mixed, no need to spread them again
+    for (int i = (int) fingerprint & mask; ; i = (i + 1) & mask) {
+      if (table[i] == 0) {
+        table[i] = fingerprint;
+        return true;
+      }
+      if (table[i] == fingerprint) {
+        return false;
+      }
+    }
+  }
+}
@@ -1,15 +1,65 @@
 package it.gov.pagopa.rtd.ms.rtdmsdecrypter.utils;
 
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.util.Assert;
 
 /**
- * Utility class to handle large files operations like copy.
+ * Utility class to handle large files operations like copy. Files are copied channel to channel
+ * by the kernel when both ends are files, otherwise through buffers reused across copies: direct
+ * ones between channels, heap ones when an end is a stream, since streams only read and write
+ * arrays.
  */
+@Slf4j
 public final class LargeFileUtils {
 
+  public static final int DEFAULT_BUFFER_SIZE = 128 * 1024;
+
+  // Buffers kept for reuse of every size, the others are left to the garbage collector
+  private static final int POOLED_BUFFERS = 16;
+
+  private static final Map<Integer, BlockingQueue<ByteBuffer>> DIRECT_BUFFERS =
+      new ConcurrentHashMap<>();
+
+  private static final Map<Integer, BlockingQueue<ByteBuffer>> HEAP_BUFFERS =
+      new ConcurrentHashMap<>();
+
+  private LargeFileUtils() {
+  }
+
+  /**
+   * Bytes copied and the time taken to copy them.
+   *
+   * @param bytes the number of bytes copied
+   * @param nanos the duration of the copy
+   */
+  public record Transfer(long bytes, long nanos) {
+
+    public long bytesPerSecond() {
+      return nanos > 0 ? (long) (bytes * 1_000_000_000d / nanos) : 0;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(Locale.ROOT, "%d bytes in %d ms (%.1f MB/s)", bytes,
+          nanos / 1_000_000, bytesPerSecond() / 1_048_576d);
+    }
+  }
+
   /**
    * A copy methods inspired by StreamUtils.copy but for a large files.
    *
@@ -19,17 +69,200 @@ public final class LargeFileUtils {
    * @throws IOException if some IO error happens
    */
   public static long copy(InputStream in, OutputStream out) throws IOException {
+    return copy(in, out, DEFAULT_BUFFER_SIZE).bytes();
+  }
+
+  /**
+   * Copies a stream to its end, channel to channel if both are files.
+   *
+   * @param in         source stream
+   * @param out        target stream, flushed but not closed
+   * @param bufferSize size of the copy buffer, or a non-positive value for the default one
+   * @return the bytes copied and their throughput
+   * @throws IOException if some IO error happens
+   */
+  public static Transfer copy(InputStream in, OutputStream out, int bufferSize)
+      throws IOException {
     Assert.notNull(in, "No InputStream specified");
     Assert.notNull(out, "No OutputStream specified");
+    if (in instanceof FileInputStream fileIn && out instanceof FileOutputStream fileOut) {
+      return copy(fileIn.getChannel(), fileOut.getChannel(), bufferSize);
+    }
+    long start = System.nanoTime();
     long byteCount = 0;
+    ByteBuffer buffer = acquire(bufferSize, false);
+    try {
+      byte[] array = buffer.array();
+      int bytesRead;
+      while ((bytesRead = in.read(array, 0, buffer.capacity())) != -1) {
+        out.write(array, 0, bytesRead);
+        byteCount += bytesRead;
+      }
+    } finally {
+      release(buffer);
+    }
+    out.flush();
+    return completed(byteCount, start);
+  }
 
-    int bytesRead;
-    for (byte[] buffer = new byte[4096]; (bytesRead = in.read(buffer)) != -1;
-        byteCount += bytesRead) {
-      out.write(buffer, 0, bytesRead);
+  /**
+   * Copies a channel to its end: files are transferred by the kernel, the other channels through
+   * a direct buffer.
+   *
+   * @param in         source channel, read from its position
+   * @param out        target channel, written at its position
+   * @param bufferSize size of the copy buffer, or a non-positive value for the default one
+   * @return the bytes copied and their throughput
+   * @throws IOException if some IO error happens
+   */
+  public static Transfer copy(ReadableByteChannel in, WritableByteChannel out, int bufferSize)
+      throws IOException {
+    Assert.notNull(in, "No ReadableByteChannel specified");
+    Assert.notNull(out, "No WritableByteChannel specified");
+    long start = System.nanoTime();
+    long byteCount = 0;
+    if (in instanceof FileChannel file) {
+      long position = file.position();
+      long size = file.size();
+      while (position + byteCount < size) {
+        byteCount += file.transferTo(position + byteCount, size - position - byteCount, out);
+      }
+      file.position(position + byteCount);
+      return completed(byteCount, start);
     }
+    if (out instanceof FileChannel file) {
+      long position = file.position();
+      long transferred;
+      while ((transferred = file.transferFrom(in, position + byteCount,
+          chunkSize(bufferSize))) > 0) {
+        byteCount += transferred;
+      }
+      file.position(position + byteCount);
+      return completed(byteCount, start);
+    }
+    ByteBuffer buffer = acquire(bufferSize, true);
+    try {
+      while (in.read(buffer) != -1) {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+          byteCount += out.write(buffer);
+        }
+        buffer.clear();
+      }
+    } finally {
+      release(buffer);
+    }
+    return completed(byteCount, start);
+  }
 
+  /**
+   * Copies a region of a file to a stream, channel to channel if the stream is a file.
+   *
+   * @param in         source file
+   * @param position   offset of the region
+   * @param count      length of the region
+   * @param out        target stream, flushed but not closed
+   * @param bufferSize size of the copy buffer, or a non-positive value for the default one
+   * @return the bytes copied and their throughput
+   * @throws IOException if some IO error happens, or the file ends before the region
+   */
+  public static Transfer copy(FileChannel in, long position, long count, OutputStream out,
+      int bufferSize) throws IOException {
+    Assert.notNull(in, "No FileChannel specified");
+    Assert.notNull(out, "No OutputStream specified");
+    long start = System.nanoTime();
+    long byteCount = 0;
+    if (out instanceof FileOutputStream fileOut) {
+      while (byteCount < count) {
+        long transferred = in.transferTo(position + byteCount, count - byteCount,
+            fileOut.getChannel());
+        if (transferred <= 0 && position + byteCount >= in.size()) {
+          throw new IOException("Unexpected end of file at " + (position + byteCount));
+        }
+        byteCount += transferred;
+      }
+      return completed(byteCount, start);
+    }
+    ByteBuffer buffer = acquire(bufferSize, false);
+    try {
+      while (byteCount < count) {
+        buffer.limit((int) Math.min(buffer.capacity(), count - byteCount));
+        int bytesRead = in.read(buffer, position + byteCount);
+        if (bytesRead < 0) {
+          throw new IOException("Unexpected end of file at " + (position + byteCount));
+        }
+        out.write(buffer.array(), 0, bytesRead);
+        byteCount += bytesRead;
+        buffer.clear();
+      }
+    } finally {
+      release(buffer);
+    }
     out.flush();
-    return byteCount;
+    return completed(byteCount, start);
+  }
+
+  /**
+   * Copies a stream to its end at a position of a file, advancing the position as bytes are
+   * written, so that a copy broken midway can be resumed from the first missing byte.
+   *
+   * @param in         source stream
+   * @param out        target file
+   * @param position   offset of the file the next byte is written at
+   * @param bufferSize size of the copy buffer, or a non-positive value for the default one
+   * @return the bytes copied and their throughput
+   * @throws IOException if some IO error happens
+   */
+  public static Transfer copy(InputStream in, FileChannel out, AtomicLong position,
+      int bufferSize) throws IOException {
+    Assert.notNull(in, "No InputStream specified");
+    Assert.notNull(out, "No FileChannel specified");
+    long start = System.nanoTime();
+    long byteCount = 0;
+    ByteBuffer buffer = acquire(bufferSize, false);
+    try {
+      int bytesRead;
+      while ((bytesRead = in.read(buffer.array(), 0, buffer.capacity())) != -1) {
+        buffer.limit(bytesRead);
+        while (buffer.hasRemaining()) {
+          out.write(buffer, position.get() + buffer.position());
+        }
+        position.addAndGet(bytesRead);
+        byteCount += bytesRead;
+        buffer.clear();
+      }
+    } finally {
+      release(buffer);
+    }
+    return completed(byteCount, start);
+  }
+
+  private static int chunkSize(int bufferSize) {
+    return bufferSize > 0 ? bufferSize : DEFAULT_BUFFER_SIZE;
+  }
+
+  private static ByteBuffer acquire(int bufferSize, boolean direct) {
+    int size = chunkSize(bufferSize);
+    ByteBuffer buffer = pool(size, direct).poll();
+    if (buffer == null) {
+      buffer = direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+    }
+    return buffer;
+  }
+
+  private static void release(ByteBuffer buffer) {
+    buffer.clear();
+    pool(buffer.capacity(), buffer.isDirect()).offer(buffer);
+  }
+
+  private static BlockingQueue<ByteBuffer> pool(int size, boolean direct) {
+    return (direct ? DIRECT_BUFFERS : HEAP_BUFFERS).computeIfAbsent(size,
+        s -> new ArrayBlockingQueue<>(POOLED_BUFFERS));
+  }
+
+  private static Transfer completed(long byteCount, long start) {
+    Transfer transfer = new Transfer(byteCount, System.nanoTime() - start);
+    log.debug("Copied {}", transfer);
+    return transfer;
   }
 }
@@ -0,0 +1,344 @@
+package it.gov.pagopa.rtd.ms.rtdmsdecrypter.utils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Scanner of the newline bytes of a file, memory-mapped in windows, used to split files in chunks
+ * of lines without decoding them. Eight bytes at a time are tested for newlines, carriage returns
+ * and non-ASCII bytes, so that plain ASCII runs are skipped in one step.
+ *
+ * <p>Chunks of bytes are equal to the lines read by a {@link java.io.BufferedReader} and written
+ * back with a {@code \n} terminator only when the file has no carriage return and is well-formed
+ * UTF-8: otherwise the scan gives up, and the file has to be split line by line.
+ */
+public final class MappedLineScanner {
+
+  static final int WINDOW_SIZE = 64 * 1024 * 1024;
+
+  private static final long NEWLINES = 0x0A0A0A0A0A0A0A0AL;
+  private static final long CARRIAGE_RETURNS = 0x0D0D0D0D0D0D0D0DL;
+  private static final long LOW_BITS = 0x0101010101010101L;
+  private static final long HIGH_BITS = 0x8080808080808080L;
+
+  private final FileChannel channel;
+
+  private final long size;
+
+  private final int windowSize;
+
+  private MappedByteBuffer window;
+
+  private long windowStart;
+
+  private long lines;
+
+  private long[] boundaries = new long[16];
+
+  private int found;
+
+  private MappedLineScanner(FileChannel channel, int windowSize) throws IOException {
+    this.channel = channel;
+    this.size = channel.size();
+    this.windowSize = windowSize;
+  }
+
+  /**
+   * Finds the boundaries of the chunks of a file, each closed by the line reaching the limits.
+   *
+   * @param channel the file
+   * @param start   the offset of the first line
+   * @param limits  the limits of a chunk
+   * @return the offsets where chunks start, followed by the size of the file, or null if the file
+   *     has carriage returns or malformed UTF-8
+   * @throws IOException if the file cannot be mapped
+   */
+  public static long[] chunkBoundaries(FileChannel channel, long start, ChunkLimits limits)
+      throws IOException {
+    return chunkBoundaries(channel, start, limits, WINDOW_SIZE);
+  }
+
+  static long[] chunkBoundaries(FileChannel channel, long start, ChunkLimits limits,
+      int windowSize) throws IOException {
+    MappedLineScanner scanner = new MappedLineScanner(channel, windowSize);
+    if (!scanner.scan(start, scanner.size, limits.maxLines(), maxBytes(limits), 0)) {
+      return null;
+    }
+    return scanner.boundaries(start);
+  }
+
+  /**
+   * Finds the boundaries of the chunks of a file as {@link #chunkBoundaries(FileChannel, long,
+   * ChunkLimits)} does, scanning regions of the file concurrently. Regions are aligned to lines:
+   * the lines of each region are counted, and their prefix sums give the lines before every
+   * region, so that the regions can then be scanned for the boundaries of the chunks at the same
+   * time. A limit on bytes makes every boundary depend on the previous one, so that the file is
+   * then scanned sequentially.
+   *
+   * @param channel  the file
+   * @param start    the offset of the first line
+   * @param limits   the limits of a chunk
+   * @param executor the executor scanning the regions
+   * @param regions  the number of regions
+   * @return the offsets where chunks start, followed by the size of the file, or null if the file
+   *     has carriage returns or malformed UTF-8
+   * @throws IOException if the file cannot be mapped
+   */
+  public static long[] chunkBoundaries(FileChannel channel, long start, ChunkLimits limits,
+      ExecutorService executor, int regions) throws IOException {
+    return chunkBoundaries(channel, start, limits, executor, regions, WINDOW_SIZE);
+  }
+
+  static long[] chunkBoundaries(FileChannel channel, long start, ChunkLimits limits,
+      ExecutorService executor, int regions, int windowSize) throws IOException {
+    if (limits.hasByteLimit()) {
+      return chunkBoundaries(channel, start, limits, windowSize);
+    }
+    int linesPerChunk = limits.maxLines();
+    long[] regionStarts = regionStarts(channel, start, regions);
+
+    List<MappedLineScanner> counters = scanRegions(channel, regionStarts, windowSize, executor,
+        (scanner, r) -> scanner.scan(regionStarts[r], regionStarts[r + 1], Integer.MAX_VALUE,
+            Long.MAX_VALUE, 0));
+    if (counters == null) {
+      return null;
+    }
+    // Lines before every region, modulo the lines of a chunk
+    int[] linesBefore = new int[regions];
+    long lines = 0;
+    for (int r = 0; r < regions; r++) {
+      linesBefore[r] = (int) (lines % linesPerChunk);
+      lines += counters.get(r).lines;
+    }
+
+    List<MappedLineScanner> scanners = scanRegions(channel, regionStarts, windowSize, executor,
+        (scanner, r) -> scanner.scan(regionStarts[r], regionStarts[r + 1], linesPerChunk,
+            Long.MAX_VALUE, linesBefore[r]));
+    MappedLineScanner merged = new MappedLineScanner(channel, windowSize);
+    for (MappedLineScanner scanner : scanners) {
+      for (int i = 0; i < scanner.found; i++) {
+        merged.add(scanner.boundaries[i]);
+      }
+    }
+    return merged.boundaries(start);
+  }
+
+  private static long maxBytes(ChunkLimits limits) {
+    return limits.hasByteLimit() ? limits.maxBytes() : Long.MAX_VALUE;
+  }
+
+  // Offsets of the regions of about the same size, each starting at a line, followed by the size
+  private static long[] regionStarts(FileChannel channel, long start, int regions)
+      throws IOException {
+    long size = channel.size();
+    long[] regionStarts = new long[regions + 1];
+    regionStarts[0] = start;
+    for (int r = 1; r < regions; r++) {
+      long offset = start + (size - start) / regions * r;
+      long lineStart = offset == start ? start : lineEnd(channel, offset - 1);
+      regionStarts[r] = Math.max(regionStarts[r - 1], lineStart);
+    }
+    regionStarts[regions] = size;
+    return regionStarts;
+  }
+
+  // Scans every region with a scanner of its own, returning them or null if any scan gave up
+  private static List<MappedLineScanner> scanRegions(FileChannel channel, long[] regionStarts,
+      int windowSize, ExecutorService executor, RegionScan regionScan) throws IOException {
+    List<Callable<MappedLineScanner>> scans = new ArrayList<>();
+    for (int r = 0; r < regionStarts.length - 1; r++) {
+      int region = r;
+      scans.add(() -> {
+        try {
+          MappedLineScanner scanner = new MappedLineScanner(channel, windowSize);
+          return regionScan.scan(scanner, region) ? scanner : null;
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      });
+    }
+    try {
+      List<MappedLineScanner> scanners = BoundedExecutors.invokeAllOrdered(executor, scans);
+      return scanners.contains(null) ? null : scanners;
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  @FunctionalInterface
+  private interface RegionScan {
+
+    boolean scan(MappedLineScanner scanner, int region) throws IOException;
+  }
+
+  /**
+   * Finds the end of a line.
+   *
+   * @param channel the file
+   * @param start   the offset of the line
+   * @return the offset after the newline ending the line, or the size of the file
+   * @throws IOException if the file cannot be mapped
+   */
+  public static long lineEnd(FileChannel channel, long start) throws IOException {
+    MappedLineScanner scanner = new MappedLineScanner(channel, WINDOW_SIZE);
+    for (long position = start; position < scanner.size; position++) {
+      if (scanner.byteAt(position) == '\n') {
+        return position + 1;
+      }
+    }
+    return scanner.size;
+  }
+
+  /**
+   * Scans the lines between two offsets, adding the offset after every newline that completes a
+   * chunk.
+   *
+   * @param start         the offset of the first line
+   * @param end           the offset after the last line
+   * @param linesPerChunk the number of lines of a chunk
+   * @param bytesPerChunk the number of bytes reached by a chunk
+   * @param linesBefore   the lines of the chunk of the first line before it
+   * @return false if the lines have carriage returns or malformed UTF-8
+   */
+  private boolean scan(long start, long end, int linesPerChunk, long bytesPerChunk,
+      int linesBefore) throws IOException {
+    int chunkLines = linesBefore;
+    long chunkStart = start;
+    long position = start;
+
+    while (position < end) {
+      map(position);
+      int limit = (int) Math.min(window.limit(), end - windowStart);
+      int i = (int) (position - windowStart);
+      position = -1;
+      while (i < limit) {
+        if (i + Long.BYTES <= limit && isPlainAscii(window.getLong(i))) {
+          i += Long.BYTES;
+          continue;
+        }
+        byte b = window.get(i);
+        if (b == '\n') {
+          lines++;
+          long next = windowStart + i + 1;
+          if (++chunkLines == linesPerChunk || next - chunkStart >= bytesPerChunk) {
+            chunkLines = 0;
+            chunkStart = next;
+            add(next);
+          }
+          i++;
+        } else if (b == '\r') {
+          return false;
+        } else if (b < 0) {
+          // A sequence may cross the end of the window, that is moved to read it
+          long sequence = windowStart + i;
+          int length = sequenceLength(sequence);
+          if (length < 0) {
+            return false;
+          }
+          position = sequence + length;
+          break;
+        } else {
+          i++;
+        }
+      }
+      if (position < 0) {
+        position = windowStart + i;
+      }
+    }
+    return true;
+  }
+
+  private void add(long boundary) {
+    if (found == boundaries.length) {
+      boundaries = Arrays.copyOf(boundaries, found * 2);
+    }
+    boundaries[found++] = boundary;
+  }
+
+  // The start, the boundaries found and the size, unless the last chunk ends at a boundary
+  private long[] boundaries(long start) {
+    long last = found > 0 ? boundaries[found - 1] : start;
+    long[] chunks = new long[found + (last < size ? 2 : 1)];
+    chunks[0] = start;
+    System.arraycopy(boundaries, 0, chunks, 1, found);
+    if (last < size) {
+      chunks[chunks.length - 1] = size;
+    }
+    return chunks;
+  }
+
+  private static boolean isPlainAscii(long word) {
+    return (word & HIGH_BITS) == 0 && !hasByte(word, NEWLINES)
+        && !hasByte(word, CARRIAGE_RETURNS);
+  }
+
+  // Exact test of a byte of the word being equal to the repeated pattern
+  private static boolean hasByte(long word, long pattern) {
+    long x = word ^ pattern;
+    return ((x - LOW_BITS) & ~x & HIGH_BITS) != 0;
+  }
+
+  /**
+   * Length of the well-formed UTF-8 sequence at a position, as defined by the Unicode standard
+   * and accepted by the JDK decoder: no overlong forms, surrogates or code points past U+10FFFF.
+   */
+  private int sequenceLength(long position) throws IOException {
+    int lead = byteAt(position) & 0xFF;
+    int length;
+    int secondMin = 0x80;
+    int secondMax = 0xBF;
+    if (lead >= 0xC2 && lead <= 0xDF) {
+      length = 2;
+    } else if (lead >= 0xE0 && lead <= 0xEF) {
+      length = 3;
+      if (lead == 0xE0) {
+        secondMin = 0xA0;
+      } else if (lead == 0xED) {
+        secondMax = 0x9F;
+      }
+    } else if (lead >= 0xF0 && lead <= 0xF4) {
+      length = 4;
+      if (lead == 0xF0) {
+        secondMin = 0x90;
+      } else if (lead == 0xF4) {
+        secondMax = 0x8F;
+      }
+    } else {
+      return -1;
+    }
+    if (position + length > size) {
+      return -1;
+    }
+    for (int i = 1; i < length; i++) {
+      int next = byteAt(position + i) & 0xFF;
+      int min = i == 1 ? secondMin : 0x80;
+      int max = i == 1 ? secondMax : 0xBF;
+      if (next < min || next > max) {
+        return -1;
+      }
+    }
+    return length;
+  }
+
+  private byte byteAt(long position) throws IOException {
+    map(position);
+    return window.get((int) (position - windowStart));
+  }
+
+  // Maps the window holding the position, unless the current one does
+  private void map(long position) throws IOException {
+    if (window != null && position >= windowStart && position < windowStart + window.limit()) {
+      return;
+    }
+    windowStart = position;
+    window = channel.map(MapMode.READ_ONLY, position, Math.min(windowSize, size - position));
+  }
+}
@@ -0,0 +1,112 @@
+package it.gov.pagopa.rtd.ms.rtdmsdecrypter.utils;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.function.Consumer;
+
+/**
+ * Stream computing the SHA-256 digest of the content it reads after the first line, i.e. of the
+ * payload following the checksum header of the decrypted files, without reading it again.
+ */
+public class PayloadDigestInputStream extends FilterInputStream {
+
+  private final MessageDigest digest;
+
+  private final Consumer<String> onDigest;
+
+  private boolean header = true;
+
+  private String hexDigest;
+
+  /**
+   * Constructor.
+   *
+   * @param in       the decrypted content
+   * @param onDigest the consumer of the hex digest, called once the content is read to its end
+   */
+  public PayloadDigestInputStream(InputStream in, Consumer<String> onDigest) {
+    super(in);
+    this.onDigest = onDigest;
+    try {
+      this.digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  @Override
+  public int read() throws IOException {
+    int b = in.read();
+    if (b < 0) {
+      complete();
+    } else if (header) {
+      header = b != '\n';
+    } else {
+      digest.update((byte) b);
+    }
+    return b;
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int length) throws IOException {
+    int count = in.read(buffer, offset, length);
+    if (count < 0) {
+      complete();
+      return count;
+    }
+    int payload = offset;
+    int end = offset + count;
+    if (header) {
+      while (payload < end && buffer[payload] != '\n') {
+        payload++;
+      }
+      if (payload == end) {
+        return count;
+      }
+      header = false;
+      payload++;
+    }
+    digest.update(buffer, payload, end - payload);
+    return count;
+  }
+
+  @Override
+  public long skip(long n) throws IOException {
+    // Skipped bytes would be missing from the digest
+    long skipped = 0;
+    byte[] buffer = new byte[(int) Math.min(n, 8192)];
+    while (skipped < n) {
+      int count = read(buffer, 0, (int) Math.min(n - skipped, buffer.length));
+      if (count < 0) {
+        break;
+      }
+      skipped += count;
+    }
+    return skipped;
+  }
+
+  @Override
+  public boolean markSupported() {
+    return false;
+  }
+
+  /**
+   * Returns the digest of the payload.
+   *
+   * @return the lowercase hex digest, or null if the content has not been read to its end
+   */
+  public String getHexDigest() {
+    return hexDigest;
+  }
+
+  private void complete() {
+    if (hexDigest == null) {
+      hexDigest = HexFormat.of().formatHex(digest.digest());
+      onDigest.accept(hexDigest);
+    }
+  }
+}
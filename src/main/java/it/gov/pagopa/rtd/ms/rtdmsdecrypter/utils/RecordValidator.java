@@ -0,0 +1,275 @@
+package it.gov.pagopa.rtd.ms.rtdmsdecrypter.utils;
+
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.MessageInterpolator;
+import jakarta.validation.Validation;
+import jakarta.validation.ValidationException;
+import jakarta.validation.Validator;
+import jakarta.validation.ValidatorFactory;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.Size;
+import jakarta.validation.groups.Default;
+import jakarta.validation.metadata.ConstraintDescriptor;
+import jakarta.validation.metadata.PropertyDescriptor;
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Validator of the Jakarta Validation constraints of a record type, compiled once into plain
+ * per-field checks so that records are validated without the reflection, the violation sets and
+ * the message interpolation of Hibernate Validator. Messages are interpolated by Hibernate when
+ * the checks are compiled, so violations are reported as it would. Valid records are checked
+ * without allocating.
+ *
+ * <p>{@link NotNull}, {@link NotBlank}, {@link Size}, {@link Min} and {@link Pattern} are
+ * compiled; the properties with other constraints are left to Hibernate.
+ *
+ * @param <T> the type of the records
+ */
+public final class RecordValidator<T> {
+
+  private static final ValidatorFactory factory = Validation.buildDefaultValidatorFactory();
+
+  private static final Validator validator = factory.getValidator();
+
+  private final Check[] checks;
+
+  private final List<String> delegatedProperties;
+
+  /**
+   * A constraint violated by a record.
+   *
+   * @param propertyPath the name of the property
+   * @param message      the interpolated message of the constraint
+   */
+  public record Violation(String propertyPath, String message) {
+
+  }
+
+  private RecordValidator(List<Check> checks, List<String> delegatedProperties) {
+    this.checks = checks.toArray(Check[]::new);
+    this.delegatedProperties = delegatedProperties;
+  }
+
+  /**
+   * Compiles the constraints of the properties of a type, in order of declaration.
+   *
+   * @param type the type of the records
+   * @param <T>  the type of the records
+   * @return the validator of the type
+   */
+  public static <T> RecordValidator<T> compile(Class<T> type) {
+    List<Check> checks = new ArrayList<>();
+    List<String> delegatedProperties = new ArrayList<>();
+    for (Field field : type.getDeclaredFields()) {
+      PropertyDescriptor property = validator.getConstraintsForClass(type)
+          .getConstraintsForProperty(field.getName());
+      if (property == null) {
+        continue;
+      }
+      List<Check> propertyChecks = new ArrayList<>();
+      for (ConstraintDescriptor<?> descriptor : property.getConstraintDescriptors()) {
+        Check check = compile(type, field, descriptor);
+        if (check == null) {
+          propertyChecks = null;
+          break;
+        }
+        propertyChecks.add(check);
+      }
+      if (propertyChecks == null) {
+        delegatedProperties.add(field.getName());
+      } else {
+        checks.addAll(propertyChecks);
+      }
+    }
+    return new RecordValidator<>(checks, delegatedProperties);
+  }
+
+  /**
+   * Tells whether a record satisfies all its constraints.
+   *
+   * @param bean the record to validate
+   * @return true if no constraint is violated
+   */
+  public boolean isValid(T bean) {
+    for (Check check : checks) {
+      if (!check.isValid(bean)) {
+        return false;
+      }
+    }
+    for (String property : delegatedProperties) {
+      if (!validator.validateProperty(bean, property).isEmpty()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Validates a record, listing the violations of the compiled constraints in order of
+   * declaration.
+   *
+   * @param bean the record to validate
+   * @return the violated constraints, empty if the record is valid
+   */
+  public List<Violation> validate(T bean) {
+    if (isValid(bean)) {
+      return Collections.emptyList();
+    }
+    List<Violation> violations = new ArrayList<>();
+    for (Check check : checks) {
+      if (!check.isValid(bean)) {
+        violations.add(check.violation());
+      }
+    }
+    for (String property : delegatedProperties) {
+      for (ConstraintViolation<T> violation : validator.validateProperty(bean, property)) {
+        violations.add(new Violation(property, violation.getMessage()));
+      }
+    }
+    return violations;
+  }
+
+  private static Check compile(Class<?> type, Field field, ConstraintDescriptor<?> descriptor) {
+    // Expressions may refer to the validated value, that is not known in advance
+    if (!descriptor.getGroups().equals(Set.of(Default.class))
+        || descriptor.getMessageTemplate().contains("${")
+        || !descriptor.getComposingConstraints().isEmpty()) {
+      return null;
+    }
+    Violation violation = new Violation(field.getName(), factory.getMessageInterpolator()
+        .interpolate(descriptor.getMessageTemplate(), new DescriptorContext(descriptor)));
+    Annotation annotation = descriptor.getAnnotation();
+    Class<?> fieldType = field.getType();
+
+    if (fieldType.isPrimitive()) {
+      if (fieldType == boolean.class || fieldType == float.class || fieldType == double.class) {
+        return null;
+      }
+      MethodHandle getter = getter(type, field, long.class);
+      if (annotation instanceof NotNull) {
+        return new Check(violation, getter, null);
+      } else if (annotation instanceof Min min) {
+        return new Check(violation, getter, null, min.value());
+      }
+      return null;
+    }
+
+    MethodHandle getter = getter(type, field, Object.class);
+    Predicate<Object> predicate;
+    if (annotation instanceof NotNull) {
+      predicate = value -> value != null;
+    } else if (annotation instanceof NotBlank && fieldType == String.class) {
+      predicate = value -> value != null && !isBlank((String) value);
+    } else if (annotation instanceof Size size && fieldType == String.class) {
+      int min = size.min();
+      int max = size.max();
+      predicate = value -> value == null
+          || ((String) value).length() >= min && ((String) value).length() <= max;
+    } else if (annotation instanceof Min min
+        && (fieldType == Long.class || fieldType == Integer.class
+        || fieldType == Short.class || fieldType == Byte.class)) {
+      long minimum = min.value();
+      predicate = value -> value == null || ((Number) value).longValue() >= minimum;
+    } else if (annotation instanceof Pattern pattern && fieldType == String.class) {
+      predicate = patternPredicate(pattern);
+    } else {
+      return null;
+    }
+    return new Check(violation, getter, predicate);
+  }
+
+  private static Predicate<Object> patternPredicate(Pattern pattern) {
+    if (pattern.flags().length == 0) {
+      CharClassPattern compiled = CharClassPattern.compile(pattern.regexp()).orElse(null);
+      if (compiled != null) {
+        return value -> value == null || compiled.matches((String) value);
+      }
+    }
+    int flags = 0;
+    for (Pattern.Flag flag : pattern.flags()) {
+      flags |= flag.getValue();
+    }
+    java.util.regex.Pattern regex = java.util.regex.Pattern.compile(pattern.regexp(), flags);
+    return value -> value == null || regex.matcher((String) value).matches();
+  }
+
+  // Same as String.trim().isEmpty(), without trimming
+  private static boolean isBlank(String value) {
+    for (int i = 0; i < value.length(); i++) {
+      if (value.charAt(i) > ' ') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static MethodHandle getter(Class<?> type, Field field, Class<?> returnType) {
+    try {
+      return MethodHandles.privateLookupIn(type, MethodHandles.lookup())
+          .unreflectGetter(field)
+          .asType(MethodType.methodType(returnType, Object.class));
+    } catch (IllegalAccessException e) {
+      throw new IllegalStateException("Cannot access field " + field.getName(), e);
+    }
+  }
+
+  /**
+   * Check of a constraint on a reference field, by a predicate, or on a primitive field, against
+   * a minimum: primitives are never null.
+   */
+  private record Check(Violation violation, MethodHandle getter, Predicate<Object> predicate,
+                       long minimum) {
+
+    private Check(Violation violation, MethodHandle getter, Predicate<Object> predicate) {
+      this(violation, getter, predicate, Long.MIN_VALUE);
+    }
+
+    private boolean isValid(Object bean) {
+      try {
+        if (predicate == null) {
+          return (long) getter.invokeExact(bean) >= minimum;
+        }
+        return predicate.test((Object) getter.invokeExact(bean));
+      } catch (Throwable e) {
+        throw new IllegalStateException("Cannot read " + violation.propertyPath(), e);
+      }
+    }
+  }
+
+  /**
+   * Interpolation context of a constraint, before any value is validated.
+   */
+  private record DescriptorContext(ConstraintDescriptor<?> descriptor) implements
+      MessageInterpolator.Context {
+
+    @Override
+    public ConstraintDescriptor<?> getConstraintDescriptor() {
+      return descriptor;
+    }
+
+    @Override
+    public Object getValidatedValue() {
+      return null;
+    }
+
+    @Override
+    public <U> U unwrap(Class<U> type) {
+      if (type.isInstance(this)) {
+        return type.cast(this);
+      }
+      throw new ValidationException("Type " + type + " not supported");
+    }
+  }
+}
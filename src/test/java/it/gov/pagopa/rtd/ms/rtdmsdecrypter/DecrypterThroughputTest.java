@@ -0,0 +1,207 @@
+package it.gov.pagopa.rtd.ms.rtdmsdecrypter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.BlobApplicationAware.Application;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.support.Fixtures;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.support.LocalBlobStorage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.TestPropertySource;
+
+/**
+ * End-to-end throughput of the decrypter: Event Grid events of generated encrypted files are
+ * published to an embedded Kafka, and the blobs are downloaded from and uploaded to a local
+ * stand-in of the blob storage. Reports the files per minute, the MB per second of decrypted
+ * content and the percentiles of the time from the event to the metadata of its blob.
+ *
+ * <p>The default load is small, to run along with the build. A larger one is run with e.g.
+ * {@code mvn test -Dtest=DecrypterThroughputTest -Dthroughput.files=200
+ * -Dthroughput.rows=100000}, and the pipeline is tuned with the properties of the application,
+ * e.g. {@code -Ddecrypt.enableStreaming=true}.
+ */
+@Slf4j
+@SpringBootTest
+@EmbeddedKafka(topics = {
+    "rtd-platform-events"}, partitions = 1, bootstrapServersProperty = "spring.cloud.stream.kafka.binder.brokers")
+@ActiveProfiles("test")
+// The settings of the application are in the default profile, so the real beans need them here
+@TestPropertySource(properties = {
+    "decrypt.enableChunkUpload=true",
+    "decrypt.skipChecksum=false",
+    "decrypt.private.key.path=src/test/resources/certs/private.key",
+    "decrypt.private.key.password=privatekeypass",
+    "decrypt.blobclient.apikey=myapikey",
+    "decrypt.blobclient.basepath=storage",
+    "decrypt.blobclient.sftp-basepath=sftp-storage",
+    "decrypt.splitter.aggregatesThreshold=250000",
+    "decrypt.splitter.walletThreshold=100000",
+})
+class DecrypterThroughputTest {
+
+  private static final String TOPIC = "rtd-platform-events";
+
+  private static final int FILES = Integer.getInteger("throughput.files", 4);
+
+  private static final int ROWS = Integer.getInteger("throughput.rows", 1000);
+
+  // Events of distinct blobs in a single record, as Event Grid batches them
+  private static final int EVENTS_PER_RECORD = Integer.getInteger("throughput.eventsPerRecord", 1);
+
+  private static final Application APPLICATION = Application.valueOf(
+      System.getProperty("throughput.application", "RTD"));
+
+  private static final long TIMEOUT_MINUTES = Long.getLong("throughput.timeoutMinutes", 5);
+
+  private static final LocalBlobStorage storage;
+
+  static {
+    try {
+      storage = new LocalBlobStorage();
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  @Autowired
+  EmbeddedKafkaBroker broker;
+
+  @Value("${decrypt.blobclient.basepath}")
+  String basePath;
+
+  @TempDir
+  Path tmpDirectory;
+
+  @DynamicPropertySource
+  static void storageProperties(DynamicPropertyRegistry registry) {
+    registry.add("decrypt.api.baseurl", storage::getBaseUrl);
+  }
+
+  @AfterAll
+  static void stopStorage() {
+    storage.close();
+  }
+
+  @Test
+  void shouldReportThroughputOfEncryptedFiles() throws Exception {
+    Path clear = tmpDirectory.resolve("clear.csv");
+    Path encrypted = tmpDirectory.resolve("encrypted.csv.pgp");
+    Fixtures.writeDecrypted(APPLICATION, clear, ROWS);
+    Fixtures.encrypt(clear, encrypted);
+    byte[] content = Files.readAllBytes(encrypted);
+
+    // Every blob is the same file under a distinct name, so they differ only in their events
+    List<String> subjects = new ArrayList<>();
+    for (int i = 0; i < FILES; i++) {
+      String subject = Fixtures.blobUri(APPLICATION, i);
+      subjects.add(subject);
+      storage.putBlob(path(subject), content);
+    }
+    storage.setUploadsRetained(false);
+
+    Map<String, Long> sentAt = new ConcurrentHashMap<>();
+    Queue<Long> latencies = new ConcurrentLinkedQueue<>();
+    CountDownLatch handled = new CountDownLatch(FILES);
+    storage.onMetadata(path -> {
+      Long sent = sentAt.remove(path);
+      if (sent != null) {
+        latencies.add(System.nanoTime() - sent);
+        storage.removeBlob(path);
+        handled.countDown();
+      }
+    });
+
+    KafkaTemplate<String, String> template = producer();
+    long start = System.nanoTime();
+    for (int i = 0; i < FILES; i += EVENTS_PER_RECORD) {
+      List<String> record = subjects.subList(i, Math.min(i + EVENTS_PER_RECORD, FILES));
+      long now = System.nanoTime();
+      record.forEach(subject -> sentAt.put(path(subject), now));
+      template.send(TOPIC, eventGridBatch(record));
+    }
+    template.flush();
+
+    boolean completed = handled.await(TIMEOUT_MINUTES, TimeUnit.MINUTES);
+    long elapsed = System.nanoTime() - start;
+    template.destroy();
+    report(elapsed, Files.size(clear), latencies);
+
+    assertTrue(completed, "Blobs not handled: " + sentAt.keySet());
+    assertEquals(0, sentAt.size());
+    assertTrue(storage.getUploadedBytes() > 0);
+  }
+
+  private static void report(long elapsed, long decryptedBytes, Queue<Long> latencies) {
+    long[] sorted = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+    double seconds = elapsed / 1e9;
+    log.info(String.format(Locale.ROOT,
+        "Throughput of %d %s files of %d rows: %.1f files/min, %.2f MB/s decrypted,"
+            + " latency p50 %d ms, p99 %d ms",
+        sorted.length, APPLICATION, ROWS, sorted.length * 60 / seconds,
+        sorted.length * decryptedBytes / 1e6 / seconds,
+        TimeUnit.NANOSECONDS.toMillis(percentile(sorted, 0.5)),
+        TimeUnit.NANOSECONDS.toMillis(percentile(sorted, 0.99))));
+  }
+
+  // Nearest-rank percentile
+  private static long percentile(long[] sorted, double percentile) {
+    if (sorted.length == 0) {
+      return 0;
+    }
+    return sorted[Math.max(0, (int) Math.ceil(percentile * sorted.length) - 1)];
+  }
+
+  private KafkaTemplate<String, String> producer() {
+    Map<String, Object> producerProps = KafkaTestUtils.producerProps(broker);
+    producerProps.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+    producerProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+    return new KafkaTemplate<>(new DefaultKafkaProducerFactory<>(producerProps));
+  }
+
+  // The path of a blob in the storage, from the subject of its event
+  private String path(String subject) {
+    return "/" + basePath + "/" + subject.replace("/blobServices/default/containers/", "")
+        .replace("/blobs/", "/");
+  }
+
+  private static String eventGridBatch(List<String> subjects) {
+    StringBuilder batch = new StringBuilder("[");
+    for (String subject : subjects) {
+      if (batch.length() > 1) {
+        batch.append(',');
+      }
+      batch.append("{\"id\":\"").append(subject.hashCode()).append("\",\"topic\":\"my_topic\",")
+          .append("\"eventType\":\"Microsoft.Storage.BlobCreated\",")
+          .append("\"subject\":\"").append(subject).append("\"}");
+    }
+    return batch.append(']').toString();
+  }
+}
@@ -15,6 +15,7 @@ import it.gov.pagopa.rtd.ms.rtdmsdecrypter.service.BlobRestConnectorImpl;
 import it.gov.pagopa.rtd.ms.rtdmsdecrypter.service.BlobSplitterImpl;
 import it.gov.pagopa.rtd.ms.rtdmsdecrypter.service.BlobVerifierImpl;
 import it.gov.pagopa.rtd.ms.rtdmsdecrypter.service.DecrypterImpl;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.service.DecryptionKeyRing;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
@@ -54,6 +55,9 @@ class RtdMsDecrypterApplicationTest {
     @MockBean
     DecrypterImpl decrypterImpl;
 
+    @MockBean
+    DecryptionKeyRing decryptionKeyRing;
+
     @SpyBean
     EventHandler handler;
 
@@ -0,0 +1,154 @@
+package it.gov.pagopa.rtd.ms.rtdmsdecrypter.event;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.BlobApplicationAware;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.service.BlobRestConnectorImpl;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.service.BlobSplitterImpl;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.service.BlobVerifierImpl;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.service.DecrypterImpl;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.service.DecryptionKeyRing;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+
+@SpringBootTest
+@EmbeddedKafka(topics = {
+    "rtd-platform-events"}, partitions = 1, bootstrapServersProperty = "spring.cloud.stream.kafka.binder.brokers")
+@ActiveProfiles("test")
+@TestPropertySource(properties = {
+    "decrypt.enableChunkUpload=true",
+    "decrypt.consumer.batchMode=true",
+    "spring.cloud.stream.kafka.binder.configuration.max.poll.records=10",
+    "spring.cloud.stream.kafka.binder.configuration.fetch.max.wait.ms=1000",
+    "spring.cloud.stream.kafka.binder.configuration.fetch.min.bytes=1000000",
+})
+class EventHandlerBatchTest {
+
+  private static final String TOPIC = "rtd-platform-events";
+
+  private static final String GROUP = "rtd-decrypter-consumer-group";
+
+  private static final int RECORDS = 3;
+
+  @Autowired
+  EmbeddedKafkaBroker broker;
+
+  @MockBean
+  private BlobRestConnectorImpl blobRestConnectorImpl;
+
+  @MockBean
+  private DecrypterImpl decrypterImpl;
+
+  @MockBean
+  private DecryptionKeyRing decryptionKeyRing;
+
+  @MockBean
+  private BlobSplitterImpl blobSplitter;
+
+  @MockBean
+  private BlobVerifierImpl blobVerifierImpl;
+
+  private final String container = "rtd-transactions-32489876908u74bh781e2db57k098c5ad034341i8u7y";
+
+  @Test
+  void shouldHandleBlobsOfBatchConcurrentlyAndCommitTogether() throws Exception {
+    // Every download completes only when the blobs of all the records are in flight together
+    CountDownLatch inFlight = new CountDownLatch(RECORDS);
+    AtomicInteger concurrentDownloads = new AtomicInteger();
+    doAnswer(invocation -> {
+      BlobApplicationAware blob = invocation.getArgument(0);
+      inFlight.countDown();
+      if (inFlight.await(10, TimeUnit.SECONDS)) {
+        concurrentDownloads.incrementAndGet();
+      }
+      blob.setStatus(BlobApplicationAware.Status.DOWNLOADED);
+      return blob;
+    }).when(blobRestConnectorImpl).get(any(BlobApplicationAware.class));
+    doAnswer(invocation -> {
+      BlobApplicationAware blob = invocation.getArgument(0);
+      blob.setStatus(BlobApplicationAware.Status.DECRYPTED);
+      return blob;
+    }).when(decrypterImpl).decrypt(any(BlobApplicationAware.class));
+    doAnswer(invocation -> {
+      BlobApplicationAware blob = invocation.getArgument(0);
+      BlobApplicationAware chunk = new BlobApplicationAware(blob.getBlobUri());
+      chunk.setOriginalBlob(blob);
+      chunk.setStatus(BlobApplicationAware.Status.SPLIT);
+      return Stream.of(chunk);
+    }).when(blobSplitter).split(any(BlobApplicationAware.class));
+    doAnswer(invocation -> {
+      BlobApplicationAware chunk = invocation.getArgument(0);
+      chunk.setStatus(BlobApplicationAware.Status.VERIFIED);
+      return chunk;
+    }).when(blobVerifierImpl).verify(any(BlobApplicationAware.class));
+    doAnswer(invocation -> {
+      BlobApplicationAware chunk = invocation.getArgument(0);
+      chunk.setStatus(BlobApplicationAware.Status.UPLOADED);
+      return chunk;
+    }).when(blobRestConnectorImpl).put(any(BlobApplicationAware.class));
+
+    Map<String, Object> producerProps = KafkaTestUtils.producerProps(broker);
+    producerProps.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+    producerProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+    // All the records are appended to the log at once, so that a single poll returns them
+    producerProps.put(ProducerConfig.LINGER_MS_CONFIG, 500);
+    KafkaTemplate<String, String> template = new KafkaTemplate<>(
+        new DefaultKafkaProducerFactory<>(producerProps));
+    for (int i = 0; i < RECORDS; i++) {
+      template.send(TOPIC, eventGridBatch("CSTAR.9991" + i + ".TRNLOG.20220228.103107.001.csv.pgp"));
+    }
+    template.flush();
+
+    await().atMost(Duration.ofSeconds(30)).untilAsserted(() -> {
+      verify(blobRestConnectorImpl, times(RECORDS)).put(any());
+      verify(blobRestConnectorImpl, times(RECORDS)).setMetadata(any());
+      assertEquals(RECORDS, committedOffset());
+    });
+    // The blobs of the batch are handled concurrently
+    assertEquals(RECORDS, concurrentDownloads.get());
+    template.destroy();
+  }
+
+  private long committedOffset() throws Exception {
+    try (AdminClient admin = AdminClient.create(Map.of(
+        AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, broker.getBrokersAsString()))) {
+      OffsetAndMetadata offset = admin.listConsumerGroupOffsets(GROUP)
+          .partitionsToOffsetAndMetadata().get()
+          .get(new TopicPartition(TOPIC, 0));
+      return offset == null ? 0 : offset.offset();
+    }
+  }
+
+  private String eventGridBatch(String blobName) {
+    return "[{\"id\":\"my_id\",\"topic\":\"my_topic\","
+        + "\"eventType\":\"Microsoft.Storage.BlobCreated\","
+        + "\"subject\":\"/blobServices/default/containers/" + container + "/blobs/" + blobName
+        + "\"}]";
+  }
+}
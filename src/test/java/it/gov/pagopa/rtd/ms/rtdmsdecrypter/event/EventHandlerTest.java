@@ -1,19 +1,34 @@
 package it.gov.pagopa.rtd.ms.rtdmsdecrypter.event;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.BlobApplicationAware;
 import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.EventGridEvent;
 import it.gov.pagopa.rtd.ms.rtdmsdecrypter.service.BlobRestConnectorImpl;
 import it.gov.pagopa.rtd.ms.rtdmsdecrypter.service.BlobSplitterImpl;
 import it.gov.pagopa.rtd.ms.rtdmsdecrypter.service.BlobVerifierImpl;
 import it.gov.pagopa.rtd.ms.rtdmsdecrypter.service.DecrypterImpl;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.service.DecryptionKeyRing;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -43,6 +58,9 @@ class EventHandlerTest {
   @Autowired
   Consumer<Message<List<EventGridEvent>>> myConsumer;
 
+  @Autowired
+  MeterRegistry meterRegistry;
+
 
   @MockBean
   private BlobRestConnectorImpl blobRestConnectorImpl;
@@ -50,6 +68,9 @@ class EventHandlerTest {
   @MockBean
   private DecrypterImpl decrypterImpl;
 
+  @MockBean
+  private DecryptionKeyRing decryptionKeyRing;
+
   @MockBean
   private BlobSplitterImpl blobSplitter;
 
@@ -154,6 +175,172 @@ class EventHandlerTest {
     verify(blobRestConnectorImpl, times(3)).put(any());
   }
 
+  @Test
+  void shouldUploadChunksConcurrently() {
+    String blobUri = "/blobServices/default/containers/" + container
+        + "/blobs/CSTAR.99910.TRNLOG.20220228.103107.001.csv.pgp";
+    myEvent.setSubject(blobUri);
+
+    BlobApplicationAware blobDownloaded = new BlobApplicationAware(blobUri);
+    BlobApplicationAware blobDecrypted = new BlobApplicationAware(blobUri);
+    BlobApplicationAware blobSplit = new BlobApplicationAware(blobUri);
+    BlobApplicationAware blobVerified = new BlobApplicationAware(blobUri);
+    blobDownloaded.setStatus(BlobApplicationAware.Status.DOWNLOADED);
+    blobDecrypted.setStatus(BlobApplicationAware.Status.DECRYPTED);
+    blobVerified.setStatus(BlobApplicationAware.Status.VERIFIED);
+    blobSplit.setStatus(BlobApplicationAware.Status.SPLIT);
+    blobSplit.setOriginalBlob(blobDecrypted);
+    doReturn(blobDownloaded).when(blobRestConnectorImpl).get(any(BlobApplicationAware.class));
+    doReturn(blobDecrypted).when(decrypterImpl).decrypt(any(BlobApplicationAware.class));
+    doReturn(Stream.of(blobSplit, blobSplit, blobSplit)).when(blobSplitter)
+        .split(any(BlobApplicationAware.class));
+    doReturn(blobVerified).when(blobVerifierImpl).verify(any(BlobApplicationAware.class));
+
+    // Every upload completes only when all the uploads are in flight at the same time
+    CountDownLatch inFlight = new CountDownLatch(3);
+    AtomicInteger concurrentUploads = new AtomicInteger();
+    doAnswer(invocation -> {
+      inFlight.countDown();
+      if (inFlight.await(5, TimeUnit.SECONDS)) {
+        concurrentUploads.incrementAndGet();
+      }
+      BlobApplicationAware uploaded = new BlobApplicationAware(blobUri);
+      uploaded.setStatus(BlobApplicationAware.Status.UPLOADED);
+      return uploaded;
+    }).when(blobRestConnectorImpl).put(any(BlobApplicationAware.class));
+
+    myConsumer.accept(msg);
+
+    verify(blobRestConnectorImpl, times(3)).put(any());
+    assertEquals(3, concurrentUploads.get());
+  }
+
+  @Test
+  void shouldRecordStageMeters() {
+    String blobUri = "/blobServices/default/containers/" + container
+        + "/blobs/CSTAR.99910.TRNLOG.20220228.103107.001.csv.pgp";
+    myEvent.setSubject(blobUri);
+
+    BlobApplicationAware blobDownloaded = new BlobApplicationAware(blobUri);
+    BlobApplicationAware blobDecrypted = new BlobApplicationAware(blobUri);
+    BlobApplicationAware blobSplit = new BlobApplicationAware(blobUri);
+    BlobApplicationAware blobVerified = new BlobApplicationAware(blobUri);
+    BlobApplicationAware blobUploaded = new BlobApplicationAware(blobUri);
+    blobDownloaded.setStatus(BlobApplicationAware.Status.DOWNLOADED);
+    blobDecrypted.setStatus(BlobApplicationAware.Status.DECRYPTED);
+    blobVerified.setStatus(BlobApplicationAware.Status.VERIFIED);
+    blobSplit.setStatus(BlobApplicationAware.Status.SPLIT);
+    blobSplit.setOriginalBlob(blobDecrypted);
+    blobUploaded.setStatus(BlobApplicationAware.Status.UPLOADED);
+    doReturn(blobDownloaded).when(blobRestConnectorImpl).get(any(BlobApplicationAware.class));
+    doReturn(blobDecrypted).when(decrypterImpl).decrypt(any(BlobApplicationAware.class));
+    doReturn(Stream.of(blobSplit, blobSplit, blobSplit)).when(blobSplitter)
+        .split(any(BlobApplicationAware.class));
+    doReturn(blobVerified).when(blobVerifierImpl).verify(any(BlobApplicationAware.class));
+    // The upload of the second chunk fails
+    doReturn(blobUploaded, blobVerified, blobUploaded).when(blobRestConnectorImpl)
+        .put(any(BlobApplicationAware.class));
+    Map<String, Long> before = stageCounts();
+
+    myConsumer.accept(msg);
+
+    Map<String, Long> after = stageCounts();
+    assertEquals(1, delta(before, after, "download", "success"));
+    assertEquals(1, delta(before, after, "decrypt", "success"));
+    assertEquals(1, delta(before, after, "split", "success"));
+    assertEquals(3, delta(before, after, "verify", "success"));
+    assertEquals(2, delta(before, after, "upload", "success"));
+    assertEquals(1, delta(before, after, "upload", "failure"));
+  }
+
+  @Test
+  void shouldIsolateFailuresOfDistinctBlobs() {
+    String failingUri = "/blobServices/default/containers/" + container
+        + "/blobs/CSTAR.99910.TRNLOG.20220228.103107.001.csv.pgp";
+    String blobUri = "/blobServices/default/containers/" + container
+        + "/blobs/CSTAR.99911.TRNLOG.20220228.103107.001.csv.pgp";
+    myEvent.setSubject(failingUri);
+    EventGridEvent otherEvent = new EventGridEvent();
+    otherEvent.setId(myID);
+    otherEvent.setTopic(myTopic);
+    otherEvent.setEventType(myEventType);
+    otherEvent.setSubject(blobUri);
+    // Duplicated events of the same blob are handled once
+    myList.add(otherEvent);
+    myList.add(otherEvent);
+
+    BlobApplicationAware blobDownloaded = new BlobApplicationAware(blobUri);
+    BlobApplicationAware blobDecrypted = new BlobApplicationAware(blobUri);
+    BlobApplicationAware blobSplit = new BlobApplicationAware(blobUri);
+    BlobApplicationAware blobVerified = new BlobApplicationAware(blobUri);
+    BlobApplicationAware blobUploaded = new BlobApplicationAware(blobUri);
+    blobDownloaded.setStatus(BlobApplicationAware.Status.DOWNLOADED);
+    blobDecrypted.setStatus(BlobApplicationAware.Status.DECRYPTED);
+    blobVerified.setStatus(BlobApplicationAware.Status.VERIFIED);
+    blobSplit.setStatus(BlobApplicationAware.Status.SPLIT);
+    blobSplit.setOriginalBlob(blobDecrypted);
+    blobUploaded.setStatus(BlobApplicationAware.Status.UPLOADED);
+    doAnswer(invocation -> {
+      BlobApplicationAware blob = invocation.getArgument(0);
+      if (failingUri.equals(blob.getBlobUri())) {
+        throw new IllegalStateException("Unexpected failure");
+      }
+      return blobDownloaded;
+    }).when(blobRestConnectorImpl).get(any(BlobApplicationAware.class));
+    doReturn(blobDecrypted).when(decrypterImpl).decrypt(any(BlobApplicationAware.class));
+    doReturn(Stream.of(blobSplit)).when(blobSplitter).split(any(BlobApplicationAware.class));
+    doReturn(blobVerified).when(blobVerifierImpl).verify(any(BlobApplicationAware.class));
+    doReturn(blobUploaded).when(blobRestConnectorImpl).put(any(BlobApplicationAware.class));
+
+    // The failure reaches the binder, to retry the record, once the other blob is handled
+    IllegalStateException failure = assertThrows(IllegalStateException.class,
+        () -> myConsumer.accept(msg));
+
+    assertEquals("Unexpected failure", failure.getMessage());
+    verify(blobRestConnectorImpl, times(2)).get(any());
+    verify(decrypterImpl, times(1)).decrypt(any());
+    verify(blobRestConnectorImpl, times(1)).put(any());
+    verify(blobRestConnectorImpl, times(1)).setMetadata(any());
+  }
+
+  @Test
+  void shouldSuppressFailuresOfOtherBlobs() {
+    myEvent.setSubject("/blobServices/default/containers/" + container
+        + "/blobs/CSTAR.99910.TRNLOG.20220228.103107.001.csv.pgp");
+    EventGridEvent otherEvent = new EventGridEvent();
+    otherEvent.setId(myID);
+    otherEvent.setTopic(myTopic);
+    otherEvent.setEventType(myEventType);
+    otherEvent.setSubject("/blobServices/default/containers/" + container
+        + "/blobs/CSTAR.99911.TRNLOG.20220228.103107.001.csv.pgp");
+    myList.add(otherEvent);
+    doAnswer(invocation -> {
+      throw new IllegalStateException("Unexpected failure");
+    }).when(blobRestConnectorImpl).get(any(BlobApplicationAware.class));
+
+    IllegalStateException failure = assertThrows(IllegalStateException.class,
+        () -> myConsumer.accept(msg));
+
+    verify(blobRestConnectorImpl, times(2)).get(any());
+    assertEquals(1, failure.getSuppressed().length);
+  }
+
+  @Test
+  void shouldNotSplitStreamedBlobThatCannotBeDecrypted() throws IOException {
+    BlobApplicationAware blob = new BlobApplicationAware("/blobServices/default/containers/"
+        + container + "/blobs/CSTAR.99910.TRNLOG.20220228.103107.001.csv.pgp");
+    blob.setStatus(BlobApplicationAware.Status.DOWNLOADED);
+    doThrow(new IOException("Not a PGP stream")).when(decrypterImpl)
+        .decrypt(any(BlobApplicationAware.class), any(InputStream.class));
+
+    List<BlobApplicationAware> chunks = EventHandler.decryptAndSplit(blob,
+        new ByteArrayInputStream(new byte[0]), decrypterImpl, blobSplitter);
+
+    assertEquals(List.of(blob), chunks);
+    assertEquals(BlobApplicationAware.Status.DELETED, blob.getStatus());
+    verify(blobSplitter, times(0)).split(any(), any());
+  }
+
   //The test parameters reproduce the following scenarios: blobUriShouldFailWrongService, blobUriShouldFailNoService,
   // blobUriShouldFailShortABI, blobUriShouldFailLongABI, blobUriShouldFailNoABI, blobUriShouldFailWrongFiletype, blobUriShouldFailNoFiletype,
   // blobUriShouldFailWrongDate, blobUriShouldFailNoDate, blobUriShouldFailWrongTime, blobUriShouldFailNoTime, blobUriShouldFailWrongProgressive,
@@ -239,4 +426,16 @@ class EventHandlerTest {
     verify(blobRestConnectorImpl, times(0)).put(any());
   }
 
+  private Map<String, Long> stageCounts() {
+    return meterRegistry.find("decrypter.stage.duration").tag("application", "RTD").timers()
+        .stream()
+        .collect(Collectors.toMap(
+            t -> t.getId().getTag("stage") + "/" + t.getId().getTag("outcome"), Timer::count));
+  }
+
+  private static long delta(Map<String, Long> before, Map<String, Long> after, String stage,
+      String outcome) {
+    String key = stage + "/" + outcome;
+    return after.getOrDefault(key, 0L) - before.getOrDefault(key, 0L);
+  }
 }
@@ -0,0 +1,64 @@
+package it.gov.pagopa.rtd.ms.rtdmsdecrypter.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.BlobApplicationAware.Application;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.BlobApplicationAware.Status;
+import org.junit.jupiter.api.Test;
+
+class BlobChunkTest {
+
+  String containerAde = "ade-transactions-32489876908u74bh781e2db57k098c5ad00000000000";
+
+  String blobNameAde = "ADE.99999.TRNLOG.20220721.095718.001.01.csv.pgp";
+
+  @Test
+  void shouldTakeFieldsOfOriginalBlob() {
+    BlobApplicationAware parent = new BlobApplicationAware(
+        "/blobServices/default/containers/" + containerAde + "/blobs/" + blobNameAde);
+    parent.setTargetDir("src/test/resources/tmp");
+
+    BlobChunk chunk = new BlobChunk(parent, "AGGADE.99999.20220721.095718.001.01000");
+
+    assertSame(parent, chunk.getOriginalBlob());
+    assertEquals(blobNameAde, chunk.getOriginalBlobName());
+    assertEquals("AGGADE.99999.20220721.095718.001.01000", chunk.getBlob());
+    assertEquals(Status.SPLIT, chunk.getStatus());
+    assertEquals(Application.ADE, chunk.getApp());
+    assertEquals(containerAde, chunk.getContainer());
+    assertEquals("ade-transactions-decrypted", chunk.getTargetContainer());
+    assertEquals("src/test/resources/tmp", chunk.getTargetDir());
+    assertEquals("99999", chunk.getSenderCode());
+    assertEquals("20220721", chunk.getFileCreationDate());
+    assertEquals("095718", chunk.getFileCreationTime());
+    assertEquals("001", chunk.getFlowNumber());
+    assertEquals("01", chunk.getBatchServiceChunkNumber());
+    assertEquals(BlobChunk.UNKNOWN, chunk.getByteSize());
+    assertEquals(BlobChunk.UNKNOWN, chunk.getLineCount());
+  }
+
+  @Test
+  void shouldDeriveUriFromOriginalBlob() {
+    BlobApplicationAware parent = new BlobApplicationAware(
+        "/blobServices/default/containers/" + containerAde + "/blobs/" + blobNameAde);
+
+    BlobChunk chunk = new BlobChunk(parent, "AGGADE.99999.20220721.095718.001.01000");
+
+    assertEquals("/blobServices/default/containers/" + containerAde
+        + "/blobs/AGGADE.99999.20220721.095718.001.01000", chunk.getBlobUri());
+  }
+
+  @Test
+  void shouldAllocateOwnReport() {
+    BlobApplicationAware parent = new BlobApplicationAware(
+        "/blobServices/default/containers/" + containerAde + "/blobs/" + blobNameAde);
+
+    BlobChunk chunk = new BlobChunk(parent, "AGGADE.99999.20220721.095718.001.01000");
+
+    assertSame(chunk.getReportMetaData(), chunk.getReportMetaData());
+    assertNotSame(parent.getReportMetaData(), chunk.getReportMetaData());
+    assertEquals(0, chunk.getReportMetaData().getNumMerchant());
+  }
+}
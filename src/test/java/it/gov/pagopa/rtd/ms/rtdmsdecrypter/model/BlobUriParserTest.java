@@ -0,0 +1,76 @@
+package it.gov.pagopa.rtd.ms.rtdmsdecrypter.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.regex.Matcher;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class BlobUriParserTest {
+
+  @Test
+  void shouldMatchRtdUri() {
+    Matcher matcher = BlobUriParser.matchRtdUri("/blobServices/default/containers/"
+        + "ade-transactions-55555c507a68f3093e885765257ed3f176c757aaf62b/blobs/"
+        + "ADE.45678.TRNLOG.20220228.103107.001.csv.pgp");
+
+    assertTrue(matcher.matches());
+    assertEquals("ade-transactions-55555c507a68f3093e885765257ed3f176c757aaf62b",
+        matcher.group(1));
+    assertEquals("ade", matcher.group(2));
+    assertEquals("ADE.45678.TRNLOG.20220228.103107.001.csv.pgp", matcher.group(4));
+  }
+
+  @Test
+  void shouldMatchWalletUri() {
+    Matcher matcher = BlobUriParser.matchWalletUri("/blobServices/default/containers/nexi/blobs/"
+        + "in/PAGOPAPM_NPG_CONTRACTS_20240313182500_001_OUT");
+
+    assertTrue(matcher.matches());
+    assertEquals("nexi", matcher.group(1));
+    assertEquals("PAGOPAPM_NPG_CONTRACTS_20240313182500_001_OUT", matcher.group(2));
+  }
+
+  @Test
+  void shouldCheckNameTokens() {
+    assertTrue(BlobUriParser.isRtdService("CSTAR"));
+    assertTrue(BlobUriParser.isRtdService("ADE"));
+    assertFalse(BlobUriParser.isRtdService("STAR"));
+    assertTrue(BlobUriParser.isSenderCode("A99z0"));
+    assertFalse(BlobUriParser.isSenderCode("111111"));
+    assertTrue(BlobUriParser.isFlowNumber("001"));
+    assertFalse(BlobUriParser.isFlowNumber("01"));
+    assertTrue(BlobUriParser.isBatchServiceChunkNumber("01"));
+    assertFalse(BlobUriParser.isBatchServiceChunkNumber("csv"));
+  }
+
+  @Test
+  void shouldAcceptExistingDateTime() {
+    assertTrue(BlobUriParser.isCreationDateTime("20240229", "235959"));
+  }
+
+  @ParameterizedTest
+  @CsvSource({
+      "20230229, 120000",
+      "20221301, 120000",
+      "20220431, 120000",
+      "20220419, 240000",
+      "20220419, 126000",
+      "20220419, 12104",
+      "20220419, 1210455",
+      "2022419, 121045",
+  })
+  void shouldRefuseWrongDateTime(String date, String time) {
+    assertFalse(BlobUriParser.isCreationDateTime(date, time));
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"1.0", "12a", ""})
+  void shouldRefuseWrongFlowNumber(String token) {
+    assertFalse(BlobUriParser.isFlowNumber(token));
+  }
+}
@@ -0,0 +1,95 @@
+package it.gov.pagopa.rtd.ms.rtdmsdecrypter.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.opencsv.exceptions.CsvConstraintViolationException;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.AdeTransactionsAggregate;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class AdeAggregatesVerifierTest {
+
+  private static final String ADE_RECORD =
+      "99999;00;2022-07-21;2022-07-20;77;0;978;99999;8894738909374375872;4759769053262163701;"
+          + "00000000003;00000000003;00";
+
+  private final AdeAggregatesVerifier verifier = new AdeAggregatesVerifier();
+
+  @Test
+  void shouldAcceptValidAggregate() throws CsvConstraintViolationException {
+    assertTrue(verifier.verifyBean(aggregate()));
+  }
+
+  @Test
+  void shouldReportTroubleshootingInfoBeforeMalformedFields() {
+    AdeTransactionsAggregate aggregate = aggregate();
+    aggregate.setNumTrx(0);
+    aggregate.setAccountingDate("2022-13-20");
+
+    CsvConstraintViolationException exception = assertThrows(
+        CsvConstraintViolationException.class, () -> verifier.verifyBean(aggregate));
+
+    assertEquals("[Acquirer code: 99999] [Terminal id: 4759769053262163701] "
+        + "[Fiscal code: 00000000003] "
+        + "Malformed field extracted: (numTrx: The number of transactions must be positive), "
+        + "Malformed field extracted: (accounting date: Invalid accounting date 2022-13-20), ",
+        exception.getMessage());
+  }
+
+  @Test
+  void shouldReportMissingDates() {
+    AdeTransactionsAggregate aggregate = aggregate();
+    aggregate.setAcquirerCode("");
+    aggregate.setTransmissionDate(null);
+
+    CsvConstraintViolationException exception = assertThrows(
+        CsvConstraintViolationException.class, () -> verifier.verifyBean(aggregate));
+
+    assertTrue(exception.getMessage().startsWith("[Terminal id: 4759769053262163701] "));
+    assertTrue(exception.getMessage().endsWith(
+        "Malformed field extracted: (transmission date: Invalid transmission date null), "));
+  }
+
+  @Test
+  void shouldValidateDatesAsFormatter() {
+    List<String> dates = new ArrayList<>();
+    for (String year : new String[]{"0000", "0001", "2022", "2024", "2100", "9999"}) {
+      for (int month = 0; month <= 13; month++) {
+        for (int day = 0; day <= 32; day++) {
+          dates.add(String.format("%s-%02d-%02d", year, month, day));
+        }
+      }
+    }
+    for (String date : dates) {
+      assertEquals(formatterAccepts(date), AdeAggregatesVerifier.validateDate(date), date);
+    }
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"", " ", "2022-07-2", "2022-7-21", "22-07-21", "+2022-07-21",
+      "12022-07-21", "2022/07/21", "2022-07-21 ", "2022-0a-21", "２０２２-07-21", "2022-07-21T00"})
+  void shouldValidateOddDatesAsFormatter(String date) {
+    assertEquals(formatterAccepts(date), AdeAggregatesVerifier.validateDate(date));
+  }
+
+  private static boolean formatterAccepts(String date) {
+    try {
+      LocalDate.parse(date, DateTimeFormatter.ofPattern("yyyy-MM-dd"));
+      return true;
+    } catch (DateTimeParseException e) {
+      return false;
+    }
+  }
+
+  private static AdeTransactionsAggregate aggregate() {
+    return new AdeTransactionsAggregateDecoder().decode(ADE_RECORD, new ArrayList<>());
+  }
+}
@@ -0,0 +1,183 @@
+package it.gov.pagopa.rtd.ms.rtdmsdecrypter.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.config.ExecutorConfiguration;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.BlobApplicationAware;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.BlobApplicationAware.Status;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.support.LocalBlobStorage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.hc.client5.http.classic.HttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.TestPropertySource;
+
+@SpringBootTest
+@ContextConfiguration(classes = { BlobRestConnectorImpl.class, ExecutorConfiguration.class,
+    BlobRestConnectorRangedDownloadTest.HttpClientConfiguration.class })
+@TestPropertySource(value = { "classpath:application-nokafka.yml" }, inheritProperties = false,
+    properties = {
+        "decrypt.blobclient.apikey=myapikey",
+        "decrypt.blobclient.basepath=storage",
+        "decrypt.blobclient.sftp-basepath=sftp-storage",
+        "decrypt.downloader.enableRangedDownload=true",
+        "decrypt.downloader.rangeSize=1024",
+        "decrypt.downloader.parallelism=4",
+        "decrypt.downloader.rangeRetries=2",
+        "decrypt.downloader.rangeRetryBackoffMillis=0" })
+class BlobRestConnectorRangedDownloadTest {
+
+  private static final LocalBlobStorage storage;
+
+  static {
+    try {
+      storage = new LocalBlobStorage();
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static final String container = "rtd-transactions-32489876908u74bh781e2db57k098c5ad034341i8u7y";
+
+  private static final String blobName = "CSTAR.99910.TRNLOG.20220228.103107.001.csv.pgp";
+
+  private static final String blobPath = "/storage/" + container + "/" + blobName;
+
+  @Autowired
+  BlobRestConnectorImpl blobRestConnectorImpl;
+
+  @TempDir
+  Path tmpDirectory;
+
+  BlobApplicationAware blobIn;
+
+  @DynamicPropertySource
+  static void storageProperties(DynamicPropertyRegistry registry) {
+    registry.add("decrypt.api.baseurl", storage::getBaseUrl);
+  }
+
+  @TestConfiguration
+  static class HttpClientConfiguration {
+
+    @Bean
+    HttpClient httpClient() {
+      return HttpClients.custom()
+          .setConnectionManager(PoolingHttpClientConnectionManagerBuilder.create()
+              .setMaxConnPerRoute(8).build())
+          .build();
+    }
+  }
+
+  @BeforeEach
+  void setUp() {
+    storage.clear();
+    blobIn = new BlobApplicationAware(
+        "/blobServices/default/containers/" + container + "/blobs/" + blobName);
+    blobIn.setTargetDir(tmpDirectory.toString());
+  }
+
+  @AfterAll
+  static void tearDown() {
+    storage.close();
+  }
+
+  @Test
+  void shouldDownloadRangesInParallel() throws IOException {
+    byte[] content = storeBlob(10 * 1024 + 17);
+
+    BlobApplicationAware blobOut = blobRestConnectorImpl.get(blobIn);
+
+    assertEquals(Status.DOWNLOADED, blobOut.getStatus());
+    assertArrayEquals(content, Files.readAllBytes(tmpDirectory.resolve(blobName)));
+    assertEquals(11, storage.getRequestedRanges().size());
+    assertTrue(storage.getRequestedRanges().contains("bytes=10240-10256"));
+  }
+
+  @Test
+  void shouldResumeBrokenRangesFromMissingBytes() throws IOException {
+    byte[] content = storeBlob(4 * 1024);
+    storage.truncateNextRangeResponses(1);
+
+    BlobApplicationAware blobOut = blobRestConnectorImpl.get(blobIn);
+
+    assertEquals(Status.DOWNLOADED, blobOut.getStatus());
+    assertArrayEquals(content, Files.readAllBytes(tmpDirectory.resolve(blobName)));
+    assertEquals(4 + 1, storage.getRequestedRanges().size());
+    // The resumed request starts in the middle of a range, after the bytes already written
+    assertEquals(1, storage.getRequestedRanges().stream()
+        .map(range -> Long.parseLong(range.substring("bytes=".length(), range.indexOf('-'))))
+        .filter(start -> start % 1024 != 0)
+        .count());
+  }
+
+  @Test
+  void shouldFailWhenRangeRetriesAreExhausted() throws IOException {
+    storeBlob(2 * 1024);
+    storage.truncateNextRangeResponses(Integer.MAX_VALUE);
+
+    BlobApplicationAware blobOut = blobRestConnectorImpl.get(blobIn);
+
+    assertEquals(Status.RECEIVED, blobOut.getStatus());
+  }
+
+  @Test
+  void shouldFailWhenBlobChangesMidDownload() throws IOException {
+    storeBlob(4 * 1024);
+    AtomicBoolean overwritten = new AtomicBoolean(false);
+    storage.onRange(path -> {
+      if (overwritten.compareAndSet(false, true)) {
+        byte[] newVersion = new byte[4 * 1024];
+        new Random(0).nextBytes(newVersion);
+        storage.putBlob(path, newVersion);
+      }
+    });
+
+    BlobApplicationAware blobOut = blobRestConnectorImpl.get(blobIn);
+
+    assertEquals(Status.RECEIVED, blobOut.getStatus());
+    // A range of the old version is not retried
+    assertTrue(storage.getRequestedRanges().size() <= 4);
+  }
+
+  @Test
+  void shouldGetSmallBlobInOneCall() throws IOException {
+    byte[] content = storeBlob(512);
+
+    BlobApplicationAware blobOut = blobRestConnectorImpl.get(blobIn);
+
+    assertEquals(Status.DOWNLOADED, blobOut.getStatus());
+    assertArrayEquals(content, Files.readAllBytes(tmpDirectory.resolve(blobName)));
+    assertTrue(storage.getRequestedRanges().isEmpty());
+  }
+
+  @Test
+  void shouldNotGetMissingBlob() {
+    BlobApplicationAware blobOut = blobRestConnectorImpl.get(blobIn);
+
+    assertEquals(Status.RECEIVED, blobOut.getStatus());
+  }
+
+  private byte[] storeBlob(int size) {
+    byte[] content = new byte[size];
+    new Random(size).nextBytes(content);
+    storage.putBlob(blobPath, content);
+    return content;
+  }
+}
@@ -0,0 +1,157 @@
+package it.gov.pagopa.rtd.ms.rtdmsdecrypter.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.config.ExecutorConfiguration;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.BlobApplicationAware;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.BlobApplicationAware.Status;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.support.LocalBlobStorage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import org.apache.hc.client5.http.classic.HttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.TestPropertySource;
+
+@SpringBootTest
+@ContextConfiguration(classes = { BlobRestConnectorImpl.class, ExecutorConfiguration.class,
+    BlobRestConnectorStagedUploadTest.HttpClientConfiguration.class })
+@TestPropertySource(value = { "classpath:application-nokafka.yml" }, inheritProperties = false,
+    properties = {
+        "decrypt.blobclient.apikey=myapikey",
+        "decrypt.blobclient.basepath=storage",
+        "decrypt.blobclient.sftp-basepath=sftp-storage",
+        "decrypt.uploader.enableStagedUpload=true",
+        "decrypt.uploader.blockSize=1024",
+        "decrypt.uploader.blockParallelism=4",
+        "decrypt.uploader.blockRetries=2",
+        "decrypt.uploader.blockRetryBackoffMillis=0" })
+class BlobRestConnectorStagedUploadTest {
+
+  private static final LocalBlobStorage storage;
+
+  static {
+    try {
+      storage = new LocalBlobStorage();
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static final String container = "rtd-transactions-decrypted";
+
+  private static final String chunkName = "CSTAR.99910.TRNLOG.20220228.103107.001.csv.pgp.0.decrypted";
+
+  private static final String chunkPath = "/storage/" + container + "/" + chunkName;
+
+  @Autowired
+  BlobRestConnectorImpl blobRestConnectorImpl;
+
+  @TempDir
+  Path tmpDirectory;
+
+  BlobApplicationAware chunk;
+
+  @DynamicPropertySource
+  static void storageProperties(DynamicPropertyRegistry registry) {
+    registry.add("decrypt.api.baseurl", storage::getBaseUrl);
+  }
+
+  @TestConfiguration
+  static class HttpClientConfiguration {
+
+    @Bean
+    HttpClient httpClient() {
+      return HttpClients.custom()
+          .setConnectionManager(PoolingHttpClientConnectionManagerBuilder.create()
+              .setMaxConnPerRoute(8).build())
+          .build();
+    }
+  }
+
+  @BeforeEach
+  void setUp() {
+    storage.clear();
+    chunk = new BlobApplicationAware(
+        "/blobServices/default/containers/rtd-transactions-32489876908u74bh781e2db57k098c5ad034341i8u7y/blobs/CSTAR.99910.TRNLOG.20220228.103107.001.csv.pgp");
+    chunk.setBlob(chunkName);
+    chunk.setTargetContainer(container);
+    chunk.setTargetDir(tmpDirectory.toString());
+    chunk.setNumChunk(1);
+    chunk.setTotChunk(1);
+  }
+
+  @AfterAll
+  static void tearDown() {
+    storage.close();
+  }
+
+  @Test
+  void shouldStageBlocksAndCommitThem() throws IOException {
+    byte[] content = writeChunk(10 * 1024 + 17);
+
+    BlobApplicationAware uploaded = blobRestConnectorImpl.put(chunk);
+
+    assertEquals(Status.UPLOADED, uploaded.getStatus());
+    assertArrayEquals(content, storage.getBlob(chunkPath));
+    assertEquals(11, storage.getBlockPuts());
+    assertEquals("1", storage.getMetadata(chunkPath).get("numchunk"));
+    assertEquals("1", storage.getMetadata(chunkPath).get("totalchunk"));
+  }
+
+  @Test
+  void shouldRetryOnlyFailedBlocks() throws IOException {
+    byte[] content = writeChunk(4 * 1024);
+    storage.failNextBlockPuts(2);
+
+    BlobApplicationAware uploaded = blobRestConnectorImpl.put(chunk);
+
+    assertEquals(Status.UPLOADED, uploaded.getStatus());
+    assertArrayEquals(content, storage.getBlob(chunkPath));
+    assertEquals(4 + 2, storage.getBlockPuts());
+  }
+
+  @Test
+  void shouldNotCommitWhenBlockRetriesAreExhausted() throws IOException {
+    writeChunk(2 * 1024);
+    storage.failNextBlockPuts(Integer.MAX_VALUE);
+
+    BlobApplicationAware uploaded = blobRestConnectorImpl.put(chunk);
+
+    assertEquals(Status.RECEIVED, uploaded.getStatus());
+    assertNull(storage.getBlob(chunkPath));
+  }
+
+  @Test
+  void shouldPutSmallChunkInOneCall() throws IOException {
+    byte[] content = writeChunk(512);
+
+    BlobApplicationAware uploaded = blobRestConnectorImpl.put(chunk);
+
+    assertEquals(Status.UPLOADED, uploaded.getStatus());
+    assertArrayEquals(content, storage.getBlob(chunkPath));
+    assertEquals(0, storage.getBlockPuts());
+  }
+
+  private byte[] writeChunk(int size) throws IOException {
+    byte[] content = new byte[size];
+    new Random(size).nextBytes(content);
+    Files.write(tmpDirectory.resolve(chunkName), content);
+    return content;
+  }
+}
@@ -7,20 +7,33 @@ import static org.hamcrest.Matchers.not;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.BlobApplicationAware;
 import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.BlobApplicationAware.Application;
 import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.BlobApplicationAware.Status;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.utils.BoundedExecutors;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
 import org.apache.commons.io.IOUtils;
 import org.apache.hc.client5.http.classic.HttpClient;
 import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.client5.http.classic.methods.HttpHead;
 import org.apache.hc.client5.http.classic.methods.HttpPut;
 import org.apache.hc.client5.http.classic.methods.HttpUriRequest;
 import org.apache.hc.core5.http.ContentType;
@@ -28,9 +41,11 @@ import org.apache.hc.core5.http.HttpException;
 import org.apache.hc.core5.http.impl.io.DefaultClassicHttpResponseFactory;
 import org.apache.hc.core5.http.io.HttpClientResponseHandler;
 import org.apache.hc.core5.http.io.entity.BasicHttpEntity;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 import org.mockito.Mock;
@@ -48,6 +63,9 @@ class BlobRestConnectorTest {
   @Mock
   HttpClient client;
 
+  @TempDir
+  Path tmpDirectory;
+
   private final static String container = "rtd-transactions-32489876908u74bh781e2db57k098c5ad034341i8u7y";
 
   private final static String containerWallet = "nexi";
@@ -64,6 +82,10 @@ class BlobRestConnectorTest {
 
   private BlobApplicationAware blobInWallet;
 
+  private ExecutorService rangeDownloader;
+
+  private ExecutorService blockUploader;
+
   @BeforeEach
   public void setUp() {
     blobIn = new BlobApplicationAware(
@@ -71,7 +93,15 @@ class BlobRestConnectorTest {
     blobInWallet = new BlobApplicationAware(
         "/blobServices/default/containers/" + containerWallet + "/blobs/" + directoryWallet + "/"
             + blobNameWallet);
-    blobRestConnectorImpl = new BlobRestConnectorImpl(client);
+    rangeDownloader = BoundedExecutors.newBoundedExecutor("test-range-downloader", 1, false);
+    blockUploader = BoundedExecutors.newBoundedExecutor("test-block-uploader", 1, false);
+    blobRestConnectorImpl = new BlobRestConnectorImpl(client, rangeDownloader, blockUploader);
+  }
+
+  @AfterEach
+  public void tearDown() {
+    rangeDownloader.shutdownNow();
+    blockUploader.shutdownNow();
   }
 
   @Test
@@ -134,6 +164,51 @@ class BlobRestConnectorTest {
     assertThat(output.getOut(), containsString("Cannot GET blob"));
   }
 
+  @Test
+  void shouldFailGetWhenInterruptedBeforeRangeRetry(CapturedOutput output) throws IOException {
+    blobIn.setTargetDir(tmpDirectory.toString());
+    blobRestConnectorImpl.setRangedDownloadEnabled(true);
+    blobRestConnectorImpl.setRangeSize(1024);
+    blobRestConnectorImpl.setRangeRetries(2);
+    blobRestConnectorImpl.setRangeRetryBackoffMillis(60_000);
+    when(client.execute(any(HttpHead.class), any(HttpClientResponseHandler.class)))
+        .thenReturn(new BlobRestConnectorImpl.BlobProperties(2048L, "\"0x1\""));
+    doAnswer(invocation -> {
+      Thread.currentThread().interrupt();
+      throw new IOException(EXCEPTION_MESSAGE);
+    }).when(client).execute(any(HttpGet.class), any(HttpClientResponseHandler.class));
+
+    BlobApplicationAware blobOut = blobRestConnectorImpl.get(blobIn);
+
+    assertEquals(BlobApplicationAware.Status.RECEIVED, blobOut.getStatus());
+    assertThat(output.getOut(), containsString("Interrupted before retrying range"));
+    assertThat(output.getOut(), containsString("Cannot GET blob"));
+  }
+
+  @Test
+  void shouldStream(CapturedOutput output) throws IOException {
+    when(client.execute(any(HttpGet.class), any(HttpClientResponseHandler.class)))
+        .thenReturn("handled");
+
+    Optional<Object> result = blobRestConnectorImpl.stream(blobIn, content -> "unused");
+
+    assertEquals(Optional.of("handled"), result);
+    assertEquals(BlobApplicationAware.Status.DOWNLOADED, blobIn.getStatus());
+    assertThat(output.getOut(), containsString("Successful streaming GET of blob "));
+  }
+
+  @Test
+  void shouldFailStream(CapturedOutput output) throws IOException {
+    doThrow(new IOException(EXCEPTION_MESSAGE)).when(client)
+        .execute(any(HttpGet.class), any(HttpClientResponseHandler.class));
+
+    Optional<Object> result = blobRestConnectorImpl.stream(blobIn, content -> "unused");
+
+    assertTrue(result.isEmpty());
+    assertEquals(BlobApplicationAware.Status.RECEIVED, blobIn.getStatus());
+    assertThat(output.getOut(), containsString("Cannot GET blob"));
+  }
+
   @Test
   void shouldPut(CapturedOutput output) throws IOException {
     BlobApplicationAware blobOut = blobRestConnectorImpl.put(blobIn);
@@ -167,6 +242,26 @@ class BlobRestConnectorTest {
     assertThat(output.getOut(), containsString("Cannot PUT blob "));
   }
 
+  @Test
+  void shouldFailPutWhenInterruptedBeforeBlockRetry(CapturedOutput output) throws IOException {
+    blobIn.setTargetDir(tmpDirectory.toString());
+    Files.write(tmpDirectory.resolve(blobName), new byte[2048]);
+    blobRestConnectorImpl.setStagedUploadEnabled(true);
+    blobRestConnectorImpl.setBlockSize(1024);
+    blobRestConnectorImpl.setBlockRetries(2);
+    blobRestConnectorImpl.setBlockRetryBackoffMillis(60_000);
+    doAnswer(invocation -> {
+      Thread.currentThread().interrupt();
+      throw new IOException(EXCEPTION_MESSAGE);
+    }).when(client).execute(any(HttpPut.class), any(HttpClientResponseHandler.class));
+
+    BlobApplicationAware blobOut = blobRestConnectorImpl.put(blobIn);
+
+    assertEquals(BlobApplicationAware.Status.RECEIVED, blobOut.getStatus());
+    assertThat(output.getOut(), containsString("Interrupted before retrying block"));
+    assertThat(output.getOut(), containsString("Some blocks cannot be staged"));
+  }
+
   @Test
   void givenGetResponse200ThenReturnsInt() throws HttpException, IOException {
     var response = DefaultClassicHttpResponseFactory.INSTANCE.newHttpResponse(200, "test");
@@ -176,7 +271,7 @@ class BlobRestConnectorTest {
 
     var byteCopied = blobRestConnectorImpl.downloadFileIn(blobIn).handleResponse(response);
 
-    assertThat(byteCopied, greaterThan(0));
+    assertThat(byteCopied, greaterThan(0L));
   }
 
   @ParameterizedTest
@@ -192,6 +287,59 @@ class BlobRestConnectorTest {
     }
   }
 
+  @Test
+  void givenRangeResponse412ThenThrowsBlobChanged() throws IOException {
+    try (var response = DefaultClassicHttpResponseFactory.INSTANCE.newHttpResponse(412, "test");
+        FileChannel target = FileChannel.open(tmpDirectory.resolve(blobName),
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+
+      var lambda = blobRestConnectorImpl.writeRangeAt(target, new AtomicLong(0), 1023, 2048);
+
+      assertThrows(BlobRestConnectorImpl.BlobChangedException.class,
+          () -> lambda.handleResponse(response));
+    }
+  }
+
+  @Test
+  void givenMismatchedContentRangeThenThrowsBlobChanged() throws IOException {
+    try (var response = DefaultClassicHttpResponseFactory.INSTANCE.newHttpResponse(206, "test");
+        FileChannel target = FileChannel.open(tmpDirectory.resolve(blobName),
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+      // The blob grew since its size was read
+      response.setHeader("Content-Range", "bytes 0-1023/4096");
+      response.setEntity(new BasicHttpEntity(new ByteArrayInputStream(new byte[1024]),
+          ContentType.APPLICATION_OCTET_STREAM));
+
+      var lambda = blobRestConnectorImpl.writeRangeAt(target, new AtomicLong(0), 1023, 2048);
+
+      assertThrows(BlobRestConnectorImpl.BlobChangedException.class,
+          () -> lambda.handleResponse(response));
+      assertEquals(0, target.size());
+    }
+  }
+
+  @Test
+  void givenStreamResponse200ThenHandsContentOver() throws HttpException, IOException {
+    var response = DefaultClassicHttpResponseFactory.INSTANCE.newHttpResponse(200, "test");
+    response.setEntity(
+        new BasicHttpEntity(IOUtils.toInputStream("fake_content", StandardCharsets.UTF_8),
+            ContentType.APPLICATION_OCTET_STREAM));
+
+    var content = blobRestConnectorImpl.<String>streamContentTo(
+        in -> IOUtils.toString(in, StandardCharsets.UTF_8)).handleResponse(response);
+
+    assertEquals("fake_content", content);
+  }
+
+  @ParameterizedTest
+  @ValueSource(ints = { 404, 500 })
+  void givenBadStatusCodeAsStreamResponseThenThrowException(int statusCode) {
+    var response = DefaultClassicHttpResponseFactory.INSTANCE.newHttpResponse(statusCode, "test");
+    var handler = blobRestConnectorImpl.<String>streamContentTo(in -> "unused");
+
+    assertThrows(ResponseStatusException.class, () -> handler.handleResponse(response));
+  }
+
   @Test
   void givenPutResponse201ThenReturnsNull() throws HttpException, IOException {
     var response = DefaultClassicHttpResponseFactory.INSTANCE.newHttpResponse(201, "test");
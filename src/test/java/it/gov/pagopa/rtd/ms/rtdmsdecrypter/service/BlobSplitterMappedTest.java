@@ -0,0 +1,208 @@
+package it.gov.pagopa.rtd.ms.rtdmsdecrypter.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.config.VerifierFactory;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.BlobApplicationAware;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.BlobApplicationAware.Application;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.BlobApplicationAware.Status;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.BlobChunk;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.ReportMetaData;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+
+/**
+ * Chunks split on the mapped newline bytes are compared with the ones split line by line.
+ */
+@SpringBootTest
+@ContextConfiguration(classes = {BlobSplitterImpl.class, BlobVerifierImpl.class,
+    VerifierFactory.class})
+@TestPropertySource(value = {"classpath:application-nokafka.yml"}, inheritProperties = false)
+class BlobSplitterMappedTest {
+
+  @Autowired
+  BlobSplitterImpl blobSplitterImpl;
+
+  @Value("${decrypt.resources.base.path}/tmp")
+  String tmpDirectory;
+
+  @AfterEach
+  void cleanTmpFiles() throws IOException {
+    blobSplitterImpl.setMappedSplitEnabled(false);
+    blobSplitterImpl.setVerifyWhileSplitting(false);
+    blobSplitterImpl.setChecksumSkipped(false);
+    blobSplitterImpl.setSplitParallelism(1);
+    blobSplitterImpl.setAggregatesMaxBytes(0);
+    FileUtils.deleteDirectory(Path.of(tmpDirectory).toFile());
+  }
+
+  @ParameterizedTest
+  @MethodSource("contents")
+  void shouldSplitMappedAsLineByLine(String blobName, String content, int threshold)
+      throws IOException {
+    blobSplitterImpl.setAggregatesLineThreshold(threshold);
+    for (boolean checksumSkipped : new boolean[]{false, true}) {
+      for (boolean verifyWhileSplitting : new boolean[]{false, true}) {
+        blobSplitterImpl.setChecksumSkipped(checksumSkipped);
+        blobSplitterImpl.setVerifyWhileSplitting(verifyWhileSplitting);
+        assertEquals(split(blobName, content, false), split(blobName, content, true));
+      }
+    }
+  }
+
+  @ParameterizedTest
+  @MethodSource("contents")
+  void shouldSplitMappedOnBytesAsLineByLine(String blobName, String content, int threshold)
+      throws IOException {
+    blobSplitterImpl.setAggregatesLineThreshold(threshold);
+    for (long maxBytes : new long[]{1, 300}) {
+      for (boolean verifyWhileSplitting : new boolean[]{false, true}) {
+        blobSplitterImpl.setAggregatesMaxBytes(maxBytes);
+        blobSplitterImpl.setVerifyWhileSplitting(verifyWhileSplitting);
+        blobSplitterImpl.setSplitParallelism(1);
+        List<String> lineByLine = split(blobName, content, false);
+        assertEquals(lineByLine, split(blobName, content, true));
+        blobSplitterImpl.setSplitParallelism(3);
+        assertEquals(lineByLine, split(blobName, content, true));
+      }
+    }
+  }
+
+  @ParameterizedTest
+  @MethodSource("contents")
+  void shouldSplitRegionsAsSequentially(String blobName, String content, int threshold)
+      throws IOException {
+    blobSplitterImpl.setAggregatesLineThreshold(threshold);
+    for (boolean verifyWhileSplitting : new boolean[]{false, true}) {
+      blobSplitterImpl.setVerifyWhileSplitting(verifyWhileSplitting);
+      blobSplitterImpl.setSplitParallelism(1);
+      List<String> sequential = split(blobName, content, false);
+      for (int parallelism : new int[]{2, 3, 16}) {
+        blobSplitterImpl.setSplitParallelism(parallelism);
+        assertEquals(sequential, split(blobName, content, true));
+      }
+    }
+  }
+
+  @Test
+  void shouldNumberAdeChunksOfRegionsAsSequentially() throws IOException {
+    String ade = Files.readString(
+        Path.of("src/test/resources/ADE.99999.TRNLOG.20220721.095718.001.01.csv"));
+    String header = ade.substring(0, ade.indexOf('\n') + 1);
+    String records = ade.substring(header.length());
+    String content = header + records.repeat(300);
+    blobSplitterImpl.setAggregatesLineThreshold(7);
+
+    List<String> sequential = split("ADE.99999.TRNLOG.20220721.095718.001.01.csv", content,
+        false);
+    blobSplitterImpl.setSplitParallelism(5);
+    List<String> regions = split("ADE.99999.TRNLOG.20220721.095718.001.01.csv", content, true);
+
+    assertEquals(sequential, regions);
+    assertTrue(sequential.size() > 100);
+    assertTrue(regions.get(100).startsWith("AGGADE.99999.20220721.095718.001.01100 "));
+  }
+
+  static Stream<Arguments> contents() throws IOException {
+    String rtd = Files.readString(
+        Path.of("src/test/resources/CSTAR.99999.TRNLOG.20220419.121045.001.01.csv"));
+    String ade = Files.readString(
+        Path.of("src/test/resources/ADE.99999.TRNLOG.20220721.095718.001.01.csv"));
+    String rtdName = "CSTAR.99999.TRNLOG.20220419.121045.001.01.csv";
+    String adeName = "ADE.99999.TRNLOG.20220721.095718.001.01.csv";
+    String header = rtd.substring(0, rtd.indexOf('\n'));
+    return Stream.of(
+        Arguments.of(rtdName, rtd, 1),
+        Arguments.of(rtdName, rtd, 2),
+        Arguments.of(rtdName, rtd, 1000),
+        Arguments.of(rtdName, rtd.stripTrailing(), 2),
+        Arguments.of(rtdName, rtd.replace("\n", "\n\n"), 3),
+        Arguments.of(rtdName, rtd.replace("\n", "\r\n"), 2),
+        Arguments.of(adeName, ade, 1),
+        Arguments.of(adeName, ade, 4),
+        Arguments.of(adeName, ade.replace(";978;", ";€;"), 2),
+        Arguments.of(adeName, header, 2),
+        Arguments.of(adeName, header + "\n", 2),
+        Arguments.of(adeName, header + "\r\nrecord\n", 2),
+        Arguments.of(adeName, "\n" + header + "\n", 2),
+        Arguments.of(adeName, "sha256sum:" + header + "\n", 2),
+        Arguments.of(adeName, "", 2));
+  }
+
+  @Test
+  void shouldFallBackOnMalformedUtf8() throws IOException {
+    blobSplitterImpl.setAggregatesLineThreshold(1);
+    byte[] content = {'#', 's', 'h', 'a', '2', '5', '6', '\n', 'a', (byte) 0xC3, '\n', 'b'};
+
+    List<String> lineByLine = split("ADE.99999.TRNLOG.20220721.095718.001.01.csv", content,
+        false);
+    List<String> mapped = split("ADE.99999.TRNLOG.20220721.095718.001.01.csv", content, true);
+
+    assertEquals(lineByLine, mapped);
+    assertEquals("a\uFFFD\n", mapped.get(0).substring(mapped.get(0).indexOf('\n') + 1));
+  }
+
+  private List<String> split(String blobName, String content, boolean mapped)
+      throws IOException {
+    return split(blobName, content.getBytes(StandardCharsets.UTF_8), mapped);
+  }
+
+  // The outcome of the split, the chunks with their content and the report of the blob
+  private List<String> split(String blobName, byte[] content, boolean mapped)
+      throws IOException {
+    FileUtils.deleteDirectory(Path.of(tmpDirectory).toFile());
+    Path.of(tmpDirectory).toFile().mkdirs();
+    Files.write(Path.of(tmpDirectory, blobName + ".decrypted"), content);
+    String container = blobName.startsWith("ADE")
+        ? "ade-transactions-32489876908u74bh781e2db57k098c5ad00000000000"
+        : "rtd-transactions-32489876908u74bh781e2db57k098c5ad00000000000";
+    BlobApplicationAware blob = new BlobApplicationAware(
+        "/blobServices/default/containers/" + container + "/blobs/" + blobName);
+    blob.setTargetDir(tmpDirectory);
+    blob.setStatus(Status.DECRYPTED);
+    blob.setApp(blobName.startsWith("ADE") ? Application.ADE : Application.RTD);
+
+    blobSplitterImpl.setMappedSplitEnabled(mapped);
+    List<String> outcome = new ArrayList<>();
+    blobSplitterImpl.split(blob).forEach(c -> {
+      Path chunk = Path.of(c.getTargetDir(), c.getBlob());
+      try {
+        if (c instanceof BlobChunk split) {
+          assertEquals(Files.size(chunk), split.getByteSize());
+        }
+        outcome.add(c.getBlob() + " " + c.getStatus() + " " + c.getNumChunk() + "/"
+            + c.getTotChunk() + " " + c.getBlobUri() + "\n"
+            + (Files.exists(chunk) ? Files.readString(chunk) : ""));
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    });
+    outcome.add(blob.getStatus() + " " + describe(blob.getReportMetaData()));
+    return outcome;
+  }
+
+  private String describe(ReportMetaData report) {
+    return report.getNumMerchant() + " " + report.getNumPositiveTrx() + " "
+        + report.getNumCanceledTrx() + " " + report.getTotalAmountPositiveTrx() + " "
+        + report.getTotalAmountCanceledTrx() + " " + report.getMinAccountingDate() + " "
+        + report.getMaxAccountingDate() + " " + report.getCheckSum();
+  }
+}
@@ -1,16 +1,32 @@
 package it.gov.pagopa.rtd.ms.rtdmsdecrypter.service;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.BlobApplicationAware;
 import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.BlobApplicationAware.Application;
 import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.BlobApplicationAware.Status;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.BlobChunk;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.utils.PayloadDigestInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import org.apache.commons.io.FileUtils;
@@ -24,13 +40,16 @@ import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.TestPropertySource;
 
 @SpringBootTest
-@ContextConfiguration(classes = {BlobSplitterImpl.class})
+@ContextConfiguration(classes = {BlobSplitterImpl.class, SimpleMeterRegistry.class})
 @TestPropertySource(value = {"classpath:application-nokafka.yml"}, inheritProperties = false)
 class BlobSplitterTest {
 
   @Autowired
   BlobSplitterImpl blobSplitterImpl;
 
+  @Autowired
+  MeterRegistry meterRegistry;
+
   @Value("${decrypt.resources.base.path}")
   String resources;
 
@@ -324,6 +343,9 @@ class BlobSplitterTest {
 
   @AfterEach
   void cleanTmpFiles() throws IOException {
+    blobSplitterImpl.setAggregatesMaxBytes(0);
+    blobSplitterImpl.setContractsSplitMaxBytes(0);
+    blobSplitterImpl.setChecksumEnforced(false);
     FileUtils.deleteDirectory(Path.of(tmpDirectory).toFile());
   }
 
@@ -347,6 +369,88 @@ class BlobSplitterTest {
     assertEquals(3, i);
   }
 
+  @Test
+  void shouldSplitRTDOnBytes() throws IOException {
+
+    blobSplitterImpl.setAggregatesLineThreshold(1000);
+    blobSplitterImpl.setAggregatesMaxBytes(1);
+    blobSplitterImpl.setChecksumSkipped(false);
+    double recordedChunks = chunkSizes("RTD").count();
+
+    List<BlobApplicationAware> chunks = blobSplitterImpl.split(fakeBlobRTD).toList();
+
+    assertEquals(3, chunks.size());
+    long totalSize = 0;
+    for (BlobApplicationAware b : chunks) {
+      assertEquals(Status.SPLIT, b.getStatus());
+      assertEquals(3, b.getTotChunk());
+      totalSize += Files.size(Path.of(b.getTargetDir(), b.getBlob()));
+      assertEquals(Files.size(Path.of(b.getTargetDir(), b.getBlob())),
+          ((BlobChunk) b).getByteSize());
+      assertEquals(1, ((BlobChunk) b).getLineCount());
+    }
+    assertEquals(recordedChunks + 3, chunkSizes("RTD").count());
+    assertTrue(chunkSizes("RTD").totalAmount() >= totalSize);
+  }
+
+  @Test
+  void shouldSplitRTDOnLinesBeforeBytes() {
+
+    blobSplitterImpl.setAggregatesLineThreshold(2);
+    blobSplitterImpl.setAggregatesMaxBytes(1_000_000);
+    blobSplitterImpl.setChecksumSkipped(false);
+
+    List<BlobApplicationAware> chunks = blobSplitterImpl.split(fakeBlobRTD).toList();
+
+    assertEquals(2, chunks.size());
+  }
+
+  @Test
+  void shouldSplitRTDFromStream() throws IOException {
+
+    blobSplitterImpl.setAggregatesLineThreshold(1);
+    blobSplitterImpl.setChecksumSkipped(false);
+
+    // No decrypted file is needed when the content is streamed
+    Files.delete(Path.of(tmpDirectory, blobNameRTD + ".decrypted"));
+
+    List<BlobApplicationAware> chunks;
+    try (InputStream decrypted = new FileInputStream(Path.of(resources, blobNameRTD).toFile())) {
+      chunks = blobSplitterImpl.split(fakeBlobRTD, decrypted).toList();
+    }
+
+    assertEquals(3, chunks.size());
+    for (int i = 0; i < chunks.size(); i++) {
+      assertEquals(Status.SPLIT, chunks.get(i).getStatus());
+      assertEquals(blobNameRTD + "." + i + ".decrypted", chunks.get(i).getBlob());
+      assertTrue(Files.exists(Path.of(tmpDirectory, chunks.get(i).getBlob())));
+    }
+    assertEquals("#sha256sum:615bbf196371b6f95b738dccf4a4e3873dff569f7a5c1eb3b50ff52b0718f65d",
+        fakeBlobRTD.getReportMetaData().getCheckSum());
+  }
+
+  @Test
+  void shouldCleanUpChunksWhenStreamFails() {
+
+    blobSplitterImpl.setAggregatesLineThreshold(1);
+    blobSplitterImpl.setChecksumSkipped(false);
+
+    InputStream failing = new SequenceInputStream(
+        new ByteArrayInputStream("#sha256sum:abc\nline1\nline2\n".getBytes()),
+        new InputStream() {
+          @Override
+          public int read() throws IOException {
+            throw new IOException("Connection reset");
+          }
+        });
+
+    List<BlobApplicationAware> chunks = blobSplitterImpl.split(fakeBlobRTD, failing).toList();
+
+    assertEquals(1, chunks.size());
+    assertEquals(Status.DELETED, chunks.get(0).getStatus());
+    assertFalse(Files.exists(Path.of(tmpDirectory, blobNameRTD + ".0.decrypted")));
+  }
+
   @Test
   void shouldNotSplitRTDForMalformedCheckSum() {
 
@@ -365,6 +469,75 @@ class BlobSplitterTest {
 
   }
 
+  @Test
+  void shouldNotSplitRTDForMismatchingCheckSumIfEnforced() {
+
+    blobSplitterImpl.setAggregatesLineThreshold(1);
+    blobSplitterImpl.setChecksumSkipped(false);
+    blobSplitterImpl.setChecksumEnforced(true);
+    fakeBlobRTD.getReportMetaData().setComputedCheckSum(
+        "3a9261e5f8d2b23c8ad8f4b1c5e0d4b7a0a6c1f1e2d3c4b5a69788796a5b4c3d");
+
+    List<BlobApplicationAware> chunks = blobSplitterImpl.split(fakeBlobRTD).toList();
+
+    assertEquals(1, chunks.size());
+    assertEquals(Status.DELETED, chunks.get(0).getStatus());
+    assertEquals(blobNameRTD, chunks.get(0).getBlob());
+    assertFalse(Files.exists(Path.of(tmpDirectory, blobNameRTD + ".0.decrypted")));
+  }
+
+  @Test
+  void shouldSplitRTDForMismatchingCheckSumIfNotEnforced() {
+
+    blobSplitterImpl.setAggregatesLineThreshold(1);
+    blobSplitterImpl.setChecksumSkipped(false);
+    fakeBlobRTD.getReportMetaData().setComputedCheckSum(
+        "3a9261e5f8d2b23c8ad8f4b1c5e0d4b7a0a6c1f1e2d3c4b5a69788796a5b4c3d");
+
+    List<BlobApplicationAware> chunks = blobSplitterImpl.split(fakeBlobRTD).toList();
+
+    assertEquals(3, chunks.size());
+    assertFalse(fakeBlobRTD.getReportMetaData().isCheckSumVerified());
+  }
+
+  @Test
+  void shouldSplitRTDForMatchingCheckSumIfEnforced() {
+
+    blobSplitterImpl.setAggregatesLineThreshold(1);
+    blobSplitterImpl.setChecksumSkipped(false);
+    blobSplitterImpl.setChecksumEnforced(true);
+    fakeBlobRTD.getReportMetaData().setComputedCheckSum(
+        "615BBF196371B6F95B738DCCF4A4E3873DFF569F7A5C1EB3B50FF52B0718F65D");
+
+    List<BlobApplicationAware> chunks = blobSplitterImpl.split(fakeBlobRTD).toList();
+
+    assertEquals(3, chunks.size());
+    chunks.forEach(b -> assertEquals(Status.SPLIT, b.getStatus()));
+  }
+
+  @Test
+  void shouldSplitRTDStreamDigestedWhileSplitting()
+      throws IOException, NoSuchAlgorithmException {
+
+    blobSplitterImpl.setAggregatesLineThreshold(1);
+    blobSplitterImpl.setChecksumSkipped(false);
+    blobSplitterImpl.setChecksumEnforced(true);
+    String payload = "line1\nline2\n";
+    String digest = HexFormat.of().formatHex(
+        MessageDigest.getInstance("SHA-256").digest(payload.getBytes()));
+
+    List<BlobApplicationAware> chunks;
+    try (InputStream decrypted = new PayloadDigestInputStream(
+        new ByteArrayInputStream(("#sha256sum:" + digest + "\n" + payload).getBytes()),
+        fakeBlobRTD.getReportMetaData()::setComputedCheckSum)) {
+      chunks = blobSplitterImpl.split(fakeBlobRTD, decrypted).toList();
+    }
+
+    assertEquals(2, chunks.size());
+    chunks.forEach(b -> assertEquals(Status.SPLIT, b.getStatus()));
+    assertEquals(digest, fakeBlobRTD.getReportMetaData().getComputedCheckSum());
+  }
+
   @Test
   void shouldSplitWallet() {
 
@@ -382,6 +555,25 @@ class BlobSplitterTest {
     assertEquals(4, i);
   }
 
+  @Test
+  void shouldSplitWalletOnBytes() throws IOException {
+
+    blobSplitterImpl.setContractsSplitThreshold(1000);
+    blobSplitterImpl.setContractsSplitMaxBytes(1);
+
+    List<BlobApplicationAware> chunks = blobSplitterImpl.split(fakeBlobWallet).toList();
+
+    assertEquals(4, chunks.size());
+    for (BlobApplicationAware b : chunks) {
+      assertEquals(Status.SPLIT, b.getStatus());
+      assertEquals(1, new ObjectMapper().readTree(
+          Path.of(b.getTargetDir(), b.getBlob()).toFile()).size());
+      assertEquals(Files.size(Path.of(b.getTargetDir(), b.getBlob())),
+          ((BlobChunk) b).getByteSize());
+      assertEquals(1, ((BlobChunk) b).getLineCount());
+    }
+  }
+
   @Test
   void shouldNotSplitWalletMalformed() {
     blobSplitterImpl.setContractsSplitThreshold(1);
@@ -649,4 +841,106 @@ class BlobSplitterTest {
     assertEquals(Status.DELETED, originalMissingBlob.get(0).getStatus());
   }
 
+  @Test
+  void shouldSplitWalletPassthroughAsBoundContracts() throws IOException {
+    blobSplitterImpl.setContractsSplitThreshold(3);
+
+    byte[] export = Files.readAllBytes(Path.of(resources, blobNameWallet));
+
+    assertEquals(splitWalletChunks(export, false), splitWalletChunks(export, true));
+  }
+
+  @Test
+  void shouldPassthroughEdgeCaseContractsAsBoundContracts() throws IOException {
+    blobSplitterImpl.setContractsSplitThreshold(2);
+
+    // Shuffled fields, explicit nulls, duplicated and non-textual values, lower case action
+    byte[] export = walletExport("""
+        {"method_attributes": {"card_bin": 12345678, "pan_tail": null, "expdate": "04/28",
+          "card_id_4": "a\\u00e8\\"b", "card_payment_circuit": "VISA",
+          "new_contract_identifier": "n1", "original_contract_identifier": "o1"},
+         "import_outcome": "OK", "action": "create", "payment_method": null},
+        {"action": "DELETE", "import_outcome": "OK", "original_contract_identifier": "o2",
+         "reason_message": null, "method_attributes": null},
+        {"action": "CREATE", "import_outcome": "KO", "reason_message": "Duplicated",
+         "action": "DELETE"},
+        {"import_outcome": "ok", "action": "CREATE", "payment_method": true,
+         "method_attributes": {"pan_tail": 1234, "expdate": "", "card_id_4": "x",
+          "card_payment_circuit": "MC", "new_contract_identifier": 1.5,
+          "original_contract_identifier": "o4", "card_bin": "123456"}}
+        """);
+
+    List<String> bound = splitWalletChunks(export, false);
+
+    assertEquals(2, bound.size());
+    assertEquals(bound, splitWalletChunks(export, true));
+  }
+
+  @Test
+  void shouldNotSplitWalletInvalidContractsWithPassthrough() throws IOException {
+    blobSplitterImpl.setContractsSplitThreshold(1);
+
+    List<String> invalidContracts = List.of(
+        "{\"action\": \"UPDATE\", \"import_outcome\": \"OK\"}",
+        "{\"action\": \"DELETE\", \"import_outcome\": null}",
+        "{\"action\": \"DELETE\", \"import_outcome\": \"KO\"}",
+        "{\"action\": \"CREATE\", \"import_outcome\": \"OK\"}",
+        "{\"action\": \"DELETE\", \"import_outcome\": \"OK\", \"unknown\": \"x\"}",
+        "{\"action\": [\"DELETE\"], \"import_outcome\": \"OK\"}",
+        "{\"action\": \"CREATE\", \"import_outcome\": \"OK\", \"method_attributes\": \"x\"}",
+        "{\"action\": \"CREATE\", \"import_outcome\": \"OK\", \"method_attributes\": "
+            + "{\"pan_tail\": \"12\", \"card_bin\": \"1234567\"}}",
+        "{\"action\": \"CREATE\", \"import_outcome\": \"OK\", \"method_attributes\": "
+            + "{\"card_bin\": \"123456\", \"cvv\": \"123\"}}",
+        "\"DELETE\"");
+
+    for (String contract : invalidContracts) {
+      byte[] export = walletExport(contract);
+      for (boolean passthrough : List.of(false, true)) {
+        blobSplitterImpl.setWalletPassthrough(passthrough);
+        List<BlobApplicationAware> chunks = blobSplitterImpl.split(walletBlob(),
+            new ByteArrayInputStream(export)).toList();
+        assertEquals(1, chunks.size(), contract);
+        assertEquals(Status.DELETED, chunks.get(0).getStatus(), contract);
+      }
+    }
+    blobSplitterImpl.setWalletPassthrough(false);
+  }
+
+  private List<String> splitWalletChunks(byte[] export, boolean passthrough) throws IOException {
+    blobSplitterImpl.setWalletPassthrough(passthrough);
+    try {
+      List<BlobApplicationAware> chunks = blobSplitterImpl.split(walletBlob(),
+          new ByteArrayInputStream(export)).toList();
+      List<String> content = new ArrayList<>();
+      for (BlobApplicationAware chunk : chunks) {
+        assertEquals(Status.SPLIT, chunk.getStatus());
+        content.add(Files.readString(Path.of(tmpDirectory, chunk.getBlob())));
+      }
+      return content;
+    } finally {
+      blobSplitterImpl.setWalletPassthrough(false);
+    }
+  }
+
+  private byte[] walletExport(String contracts) throws IOException {
+    String export = Files.readString(Path.of(resources, blobNameWallet));
+    String header = export.substring(0, export.indexOf('[') + 1);
+    return (header + contracts + "]}").getBytes();
+  }
+
+  private BlobApplicationAware walletBlob() {
+    BlobApplicationAware blob = new BlobApplicationAware(
+        "/blobServices/default/containers/" + containerWallet + "/blobs/" + contractsFolder + "/"
+            + blobNameWallet);
+    blob.setTargetDir(tmpDirectory);
+    blob.setStatus(Status.DECRYPTED);
+    blob.setApp(Application.WALLET);
+    return blob;
+  }
+
+
+  private DistributionSummary chunkSizes(String application) {
+    return meterRegistry.summary("decrypter.splitter.chunk.size", "application", application);
+  }
 }
@@ -0,0 +1,178 @@
+package it.gov.pagopa.rtd.ms.rtdmsdecrypter.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.config.VerifierFactory;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.BlobApplicationAware;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.BlobApplicationAware.Application;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.BlobApplicationAware.Status;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.ReportMetaData;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+
+/**
+ * Chunks verified while they are split are compared with the ones split and then verified.
+ */
+@SpringBootTest
+@ContextConfiguration(classes = {BlobSplitterImpl.class, BlobVerifierImpl.class,
+    VerifierFactory.class})
+@TestPropertySource(value = {"classpath:application-nokafka.yml"}, inheritProperties = false)
+class BlobSplitterVerifyTest {
+
+  @Autowired
+  BlobSplitterImpl blobSplitterImpl;
+
+  @Autowired
+  BlobVerifierImpl blobVerifierImpl;
+
+  @Value("${decrypt.resources.base.path}")
+  String resources;
+
+  @Value("${decrypt.resources.base.path}/tmp")
+  String tmpDirectory;
+
+  @AfterEach
+  void cleanTmpFiles() throws IOException {
+    blobSplitterImpl.setVerifyWhileSplitting(false);
+    FileUtils.deleteDirectory(Path.of(tmpDirectory).toFile());
+  }
+
+  @ParameterizedTest
+  @MethodSource("contents")
+  void shouldVerifyWhileSplittingAsAfterSplitting(String blobName, String content, int threshold)
+      throws IOException {
+    blobSplitterImpl.setAggregatesLineThreshold(threshold);
+
+    blobSplitterImpl.setVerifyWhileSplitting(false);
+    BlobApplicationAware twoPassBlob = blob(blobName);
+    List<BlobApplicationAware> twoPassChunks = blobSplitterImpl.split(twoPassBlob,
+            new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)))
+        .map(chunk -> {
+          try {
+            return blobVerifierImpl.verify(chunk);
+          } catch (UncheckedIOException e) {
+            return chunk;
+          }
+        })
+        .toList();
+    List<String> twoPassContents = contents(twoPassChunks);
+    FileUtils.deleteDirectory(Path.of(tmpDirectory).toFile());
+
+    blobSplitterImpl.setVerifyWhileSplitting(true);
+    BlobApplicationAware singlePassBlob = blob(blobName);
+    List<BlobApplicationAware> singlePassChunks = blobSplitterImpl.split(singlePassBlob,
+        new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8))).toList();
+
+    assertTrue(blobSplitterImpl.isVerifyWhileSplitting());
+    assertEquals(describe(twoPassChunks), describe(singlePassChunks));
+    assertEquals(twoPassContents, contents(singlePassChunks));
+    assertEquals(describe(twoPassBlob.getReportMetaData()),
+        describe(singlePassBlob.getReportMetaData()));
+  }
+
+  static Stream<Arguments> contents() throws IOException {
+    String rtd = Files.readString(
+        Path.of("src/test/resources/CSTAR.99999.TRNLOG.20220419.121045.001.01.csv"));
+    String ade = Files.readString(
+        Path.of("src/test/resources/ADE.99999.TRNLOG.20220721.095718.001.01.csv"));
+    String rtdName = "CSTAR.99999.TRNLOG.20220419.121045.001.01.csv";
+    String adeName = "ADE.99999.TRNLOG.20220721.095718.001.01.csv";
+    String[] rtdLines = rtd.split("\n");
+    String[] adeLines = ade.split("\n");
+    String malformedRtd = String.join("\n", rtdLines[0], rtdLines[1], "36081;00;\"10",
+        rtdLines[2], rtdLines[3]);
+    String invalidAde = String.join("\n", adeLines[0], adeLines[1],
+        adeLines[2].replace(";978;", ";EUR;"), adeLines[3]);
+    return Stream.of(
+        Arguments.of(rtdName, rtd, 1),
+        Arguments.of(rtdName, rtd, 2),
+        Arguments.of(rtdName, rtd, 1000),
+        Arguments.of(rtdName, malformedRtd, 2),
+        Arguments.of(rtdName, malformedRtd, 1000),
+        Arguments.of(adeName, ade, 1),
+        Arguments.of(adeName, ade, 4),
+        Arguments.of(adeName, invalidAde, 1),
+        Arguments.of(adeName, invalidAde, 1000),
+        Arguments.of(adeName, adeLines[0] + "\n\n", 1000));
+  }
+
+  @Test
+  void shouldVerifyWalletChunksWhileSplitting() throws IOException {
+    String blobName = "PAGOPAPM_NPG_CONTRACTS_20240323000000_001_OUT";
+    BlobApplicationAware blob = new BlobApplicationAware(
+        "/blobServices/default/containers/nexi/blobs/in/" + blobName);
+    blob.setTargetDir(tmpDirectory);
+    blob.setStatus(Status.DECRYPTED);
+    Path.of(tmpDirectory).toFile().mkdirs();
+    blobSplitterImpl.setContractsSplitThreshold(1);
+    blobSplitterImpl.setVerifyWhileSplitting(true);
+
+    List<BlobApplicationAware> chunks = blobSplitterImpl.split(blob,
+        Files.newInputStream(Path.of("src/test/resources", blobName + ".decrypted"))).toList();
+
+    assertEquals(4, chunks.size());
+    assertTrue(chunks.stream().allMatch(chunk -> chunk.getStatus() == Status.VERIFIED));
+  }
+
+  @Test
+  void shouldNotVerifyWhileSplittingByDefault() {
+    assertEquals(false, blobSplitterImpl.isVerifyWhileSplitting());
+  }
+
+  private BlobApplicationAware blob(String blobName) {
+    String container = blobName.startsWith("ADE")
+        ? "ade-transactions-32489876908u74bh781e2db57k098c5ad00000000000"
+        : "rtd-transactions-32489876908u74bh781e2db57k098c5ad00000000000";
+    BlobApplicationAware blob = new BlobApplicationAware(
+        "/blobServices/default/containers/" + container + "/blobs/" + blobName);
+    blob.setTargetDir(tmpDirectory);
+    blob.setStatus(Status.DECRYPTED);
+    blob.setApp(blobName.startsWith("ADE") ? Application.ADE : Application.RTD);
+    Path.of(tmpDirectory).toFile().mkdirs();
+    return blob;
+  }
+
+  private List<String> describe(List<BlobApplicationAware> chunks) {
+    return chunks.stream()
+        .map(c -> c.getBlob() + " " + c.getStatus() + " " + c.getNumChunk() + "/"
+            + c.getTotChunk())
+        .toList();
+  }
+
+  private List<String> contents(List<BlobApplicationAware> chunks) throws IOException {
+    return chunks.stream()
+        .map(c -> {
+          try {
+            return Files.readString(Path.of(c.getTargetDir(), c.getBlob()));
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        })
+        .toList();
+  }
+
+  private String describe(ReportMetaData report) {
+    return report.getNumMerchant() + " " + report.getNumPositiveTrx() + " "
+        + report.getNumCanceledTrx() + " " + report.getTotalAmountPositiveTrx() + " "
+        + report.getTotalAmountCanceledTrx() + " " + report.getMinAccountingDate() + " "
+        + report.getMaxAccountingDate() + " " + report.getCheckSum();
+  }
+}
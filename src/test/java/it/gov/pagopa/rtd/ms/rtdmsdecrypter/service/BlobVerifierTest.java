@@ -12,18 +12,25 @@ import it.gov.pagopa.rtd.ms.rtdmsdecrypter.config.VerifierFactory;
 import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.BlobApplicationAware;
 import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.BlobApplicationAware.Application;
 import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.BlobApplicationAware.Status;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.utils.BoundedExecutors;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.utils.CardinalityCounter.Mode;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 
 import org.apache.commons.io.FileUtils;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
 import org.junit.jupiter.params.provider.ValueSource;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -151,6 +158,8 @@ class BlobVerifierTest {
 
   @AfterEach
   void cleanTmpFiles() throws IOException {
+    blobVerifierImpl.setMerchantCardinality(Mode.EXACT);
+    blobVerifierImpl.setRecordDecoderEnabled(false);
     FileUtils.deleteDirectory(Path.of(tmpDirectory).toFile());
   }
 
@@ -166,7 +175,7 @@ class BlobVerifierTest {
     fakeBlobTAE.getReportMetaData().setCheckSum("testchecksum");
     blobVerifierImpl.verify(fakeBlobTAE);
     assertEquals(Status.VERIFIED, fakeBlobTAE.getStatus());
-    assertEquals(4, fakeBlobTAE.getReportMetaData().getMerchantList().size());
+    assertEquals(4, fakeBlobTAE.getReportMetaData().getNumMerchant());
     assertEquals(192, fakeBlobTAE.getReportMetaData().getNumCanceledTrx());
     assertEquals(210, fakeBlobTAE.getReportMetaData().getNumPositiveTrx());
     assertEquals(211650, fakeBlobTAE.getReportMetaData().getTotalAmountCanceledTrx());
@@ -177,6 +186,57 @@ class BlobVerifierTest {
 
   }
 
+  @ParameterizedTest
+  @ValueSource(booleans = { false, true })
+  void shouldVerifyWithEitherRecordBinding(boolean recordDecoderEnabled) {
+    blobVerifierImpl.setRecordDecoderEnabled(recordDecoderEnabled);
+    fakeBlobTAE.setOriginalBlob(fakeBlobTAE);
+
+    blobVerifierImpl.verify(fakeBlobRTD);
+    blobVerifierImpl.verify(fakeBlobTAE);
+
+    assertEquals(Status.VERIFIED, fakeBlobRTD.getStatus());
+    assertEquals(Status.VERIFIED, fakeBlobTAE.getStatus());
+    assertEquals(4, fakeBlobTAE.getReportMetaData().getNumMerchant());
+    assertEquals(210, fakeBlobTAE.getReportMetaData().getNumPositiveTrx());
+    assertEquals(439580, fakeBlobTAE.getReportMetaData().getTotalAmountPositiveTrx());
+  }
+
+  @ParameterizedTest
+  @EnumSource(Mode.class)
+  void shouldMergeMetadataOfChunksVerifiedConcurrently(Mode merchantCardinality) {
+    blobVerifierImpl.setMerchantCardinality(merchantCardinality);
+    BlobApplicationAware original = new BlobApplicationAware(
+        "/blobServices/default/containers/" + containerTAE + "/blobs/" + blobNameTAE);
+    List<Callable<BlobApplicationAware>> verifications = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      BlobApplicationAware chunk = new BlobApplicationAware(
+          "/blobServices/default/containers/" + containerTAE + "/blobs/" + blobNameTAE
+              + ".decrypted");
+      chunk.setTargetDir(tmpDirectory);
+      chunk.setApp(Application.ADE);
+      chunk.setOriginalBlob(original);
+      verifications.add(() -> blobVerifierImpl.verify(chunk));
+    }
+
+    ExecutorService executor = BoundedExecutors.newBoundedExecutor("test-verifier", 4, false);
+    try {
+      List<BlobApplicationAware> verified = BoundedExecutors.invokeAllOrdered(executor,
+          verifications);
+      verified.forEach(b -> assertEquals(Status.VERIFIED, b.getStatus()));
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertEquals(4, original.getReportMetaData().getNumMerchant());
+    assertEquals(8 * 192, original.getReportMetaData().getNumCanceledTrx());
+    assertEquals(8 * 210, original.getReportMetaData().getNumPositiveTrx());
+    assertEquals(8 * 211650, original.getReportMetaData().getTotalAmountCanceledTrx());
+    assertEquals(8 * 439580, original.getReportMetaData().getTotalAmountPositiveTrx());
+    assertEquals("2022-07-17", original.getReportMetaData().getMinAccountingDate().toString());
+    assertEquals("2022-07-20", original.getReportMetaData().getMaxAccountingDate().toString());
+  }
+
   @ParameterizedTest
   @ValueSource(strings = {
       "",
@@ -0,0 +1,156 @@
+package it.gov.pagopa.rtd.ms.rtdmsdecrypter.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.opencsv.bean.BeanVerifier;
+import com.opencsv.bean.CsvToBean;
+import com.opencsv.bean.CsvToBeanBuilder;
+import com.opencsv.exceptions.CsvException;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.AdeTransactionsAggregate;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.DecryptedRecord;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.RtdTransaction;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+/**
+ * Records and captured exceptions of the {@link DecryptedRecordReader} are compared with the ones
+ * of the opencsv bean binding, configured as the {@link BlobVerifierImpl} did.
+ */
+class DecryptedRecordReaderTest {
+
+  private static final String RTD_RECORD =
+      "36081;00;10;5c6bda1b1f5f6238dcba70f9f4b5a77671eb2b1563b0ca6d15d14c649a9b7ce0;"
+          + "2020-08-06T12:19:16.000+00:00;80205005000037219007587693;657098;;12;978;09509;"
+          + "400000080205;80205005;40236010;4900;fc123456789;12345678901;00;";
+
+  private static final String ADE_RECORD =
+      "99999;00;2022-07-21;2022-07-20;77;0;978;99999;8894738909374375872;4759769053262163701;"
+          + "00000000003;00000000003;00";
+
+  @Test
+  void shouldDecodeRtdFixtureAsOpencsv() throws IOException {
+    String content = Files.readString(
+        Path.of("src/test/resources/CSTAR.111111.TRNLOG.20220419.121045.001.01.csv"));
+
+    assertSameAsOpencsv(content, RtdTransaction.class, new RtdTransactionDecoder(),
+        new RtdTransactionsVerifier());
+  }
+
+  @Test
+  void shouldDecodeAdeFixtureAsOpencsv() throws IOException {
+    String content = Files.readString(
+        Path.of("src/test/resources/ADE.111111.TRNLOG.20220721.095718.001.01.csv"));
+
+    assertSameAsOpencsv(content, AdeTransactionsAggregate.class,
+        new AdeTransactionsAggregateDecoder(), new AdeAggregatesVerifier());
+  }
+
+  @ParameterizedTest
+  @MethodSource("rtdContents")
+  void shouldDecodeRtdAsOpencsv(String content) {
+    assertSameAsOpencsv(content, RtdTransaction.class, new RtdTransactionDecoder(),
+        new RtdTransactionsVerifier());
+  }
+
+  @ParameterizedTest
+  @MethodSource("adeContents")
+  void shouldDecodeAdeAsOpencsv(String content) {
+    assertSameAsOpencsv(content, AdeTransactionsAggregate.class,
+        new AdeTransactionsAggregateDecoder(), new AdeAggregatesVerifier());
+  }
+
+  static Stream<String> rtdContents() {
+    return Stream.of(
+        "",
+        "\n",
+        "\n\n" + RTD_RECORD,
+        RTD_RECORD + "\r\n" + RTD_RECORD + "\r\n",
+        RTD_RECORD + "\n\n" + RTD_RECORD.replace("978", "EUR"),
+        RTD_RECORD.replace("2020-08-06T12:19:16.000+00:00", "2020-08-06T12:19:16.000Z"),
+        RTD_RECORD.replace("2020-08-06T12:19:16.000+00:00", "2020-08-06T12:19:16.000+0100"),
+        RTD_RECORD.replace("2020-08-06T12:19:16.000+00:00", "2020-08-06T12:19:16+00:00"),
+        RTD_RECORD.replace("2020-08-06T12:19:16.000+00:00", "2020-02-30T12:19:16.000+00:00"),
+        RTD_RECORD.replace("2020-08-06T12:19:16.000+00:00", " "),
+        RTD_RECORD.replace(";12;978;", "; 12 ;978;"),
+        RTD_RECORD.replace(";12;978;", ";1.5e3;978;"),
+        RTD_RECORD.replace(";12;978;", ";twelve;978;"),
+        RTD_RECORD.replace(";12;978;", ";\t;978;"),
+        RTD_RECORD.replace("2020-08-06T12:19:16.000+00:00", "yesterday").replace(";12;978;",
+            ";twelve;978;"),
+        RTD_RECORD + "EXTRA;COLUMNS",
+        "36081;00;10",
+        "36081;\"00\";10;\"5c6b;da\"",
+        "36081;\"0\n0\";10",
+        "36081;0\\0;10",
+        "\"36081\";\"00\"\"\";10\n" + RTD_RECORD);
+  }
+
+  static Stream<String> adeContents() {
+    return Stream.of(
+        "",
+        "\n",
+        ADE_RECORD + "\n\n" + ADE_RECORD,
+        ADE_RECORD.replace(";77;0;", ";;0;"),
+        ADE_RECORD.replace(";77;0;", "; 77 ; 0 ;"),
+        ADE_RECORD.replace(";77;0;", ";+77;-0;"),
+        ADE_RECORD.replace(";77;0;", ";7.7;0;"),
+        ADE_RECORD.replace(";77;0;", ";77;99999999999999999999;"),
+        ADE_RECORD.replace(";77;0;", ";3000000000;0;"),
+        ADE_RECORD.replace(";77;0;", ";x;y;"),
+        ADE_RECORD.replace(";77;0;", ";-1;-1;"),
+        ADE_RECORD.replace("2022-07-20", "2022-13-20"),
+        ADE_RECORD.replace("2022-07-20", ""),
+        ADE_RECORD.replace(";978;", ";EUR;"),
+        ADE_RECORD + ";",
+        ADE_RECORD.replace(";00;2022", ";\"00\";2022"),
+        ADE_RECORD.replace(";00;2022", ";\"0\n0\";2022") + "\n" + ADE_RECORD);
+  }
+
+  @Test
+  void shouldFailOnUnterminatedQuote() {
+    DecryptedRecordReader<RtdTransaction> reader = new DecryptedRecordReader<>(
+        new StringReader(RTD_RECORD + "\n36081;\"00;10"), new RtdTransactionDecoder(), null);
+
+    assertThrows(UncheckedIOException.class, () -> reader.stream().count());
+  }
+
+  private <T extends DecryptedRecord> void assertSameAsOpencsv(String content, Class<T> type,
+      DecryptedRecordDecoder<T> decoder, BeanVerifier<T> verifier) {
+    CsvToBean<T> csvToBean = new CsvToBeanBuilder<T>(new StringReader(content))
+        .withType(type)
+        .withSeparator(';')
+        .withVerifier(verifier)
+        .withThrowExceptions(false)
+        .withErrorLocale(Locale.ROOT)
+        .build();
+    List<String> expectedRecords = csvToBean.stream().map(Object::toString).toList();
+    List<String> expectedExceptions = describe(csvToBean.getCapturedExceptions());
+
+    DecryptedRecordReader<T> reader = new DecryptedRecordReader<>(new StringReader(content),
+        decoder, verifier);
+    List<String> records = reader.stream().map(Object::toString).toList();
+
+    assertEquals(expectedRecords, records);
+    assertEquals(expectedExceptions, describe(reader.getCapturedExceptions()));
+  }
+
+  // Constraint violations come in no particular order, so the words of messages are sorted
+  private List<String> describe(List<CsvException> exceptions) {
+    return exceptions.stream()
+        .map(e -> e.getClass().getSimpleName() + " at line " + e.getLineNumber() + " "
+            + Arrays.toString(e.getLine()) + ": " + (e.getMessage() == null ? null
+            : Arrays.stream(e.getMessage().split(" ")).sorted().toList()))
+        .toList();
+  }
+}
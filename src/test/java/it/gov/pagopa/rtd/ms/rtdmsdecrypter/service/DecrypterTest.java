@@ -4,6 +4,7 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.containsString;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
@@ -20,11 +21,15 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
 import java.security.SecureRandom;
 import java.security.Security;
+import java.util.HexFormat;
 import java.util.Iterator;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
@@ -58,7 +63,7 @@ import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.TestPropertySource;
 
 @SpringBootTest
-@ContextConfiguration(classes = {DecrypterImpl.class})
+@ContextConfiguration(classes = {DecrypterImpl.class, DecryptionKeyRing.class})
 @TestPropertySource(value = {"classpath:application-nokafka.yml"}, inheritProperties = false)
 @ExtendWith(OutputCaptureExtension.class)
 class DecrypterTest {
@@ -66,6 +71,9 @@ class DecrypterTest {
   @Autowired
   DecrypterImpl decrypterImpl;
 
+  @Autowired
+  DecryptionKeyRing decryptionKeyRing;
+
   @Value("${decrypt.resources.base.path}")
   String resources;
 
@@ -120,16 +128,24 @@ class DecrypterTest {
 
   @AfterEach
   void cleanTmpFiles() throws IOException {
+    decrypterImpl.setChecksumEnforced(false);
     FileUtils.deleteDirectory(Path.of(tmpDirectory).toFile());
   }
 
 
   @Test
-  void shouldDecodeBase64File() throws IOException {
-    // After construction, Decrypter method readKey is called, so the key is in
-    // private attribute
-    assertEquals(Files.readString(Path.of(resources, "certs/private.key")),
-        decrypterImpl.getPrivateKey());
+  void shouldDecodeBase64File() throws IOException, PGPException {
+    // After construction, the key ring is decoded and the private keys are unlocked once
+    FileInputStream publicKey = new FileInputStream(resources + "/certs/public.key");
+    assertNotNull(decryptionKeyRing.findPrivateKey(this.readPublicKey(publicKey).getKeyID()));
+  }
+
+  @Test
+  void shouldIndexSameKeysAsPrivateKeyFile() throws IOException, PGPException {
+    FileInputStream privateKey = new FileInputStream(resources + "/certs/private.key");
+    assertEquals(
+        DecryptionKeyRing.extractPrivateKeys(privateKey, privateKeyPassword.toCharArray()).size(),
+        decryptionKeyRing.size());
   }
 
   @Test
@@ -140,7 +156,7 @@ class DecrypterTest {
     FileInputStream myEncrypted = new FileInputStream(tmpDirectory + "/encrypted.pgp");
     FileOutputStream myClearText = new FileOutputStream(tmpDirectory + "/file.pgp.csv.decrypted");
 
-    decrypterImpl.decryptFile(myEncrypted, myClearText, "encrypted.pgp");
+    decrypterImpl.decryptFile(myEncrypted, myClearText, fakeBlob);
 
     myClearText.close();
 
@@ -166,7 +182,7 @@ class DecrypterTest {
         resources + "/malformedEncrypted.pgp");
     FileOutputStream myClearText = new FileOutputStream(tmpDirectory + "/malformedFile.decrypted");
     assertThrows(IOException.class, () -> {
-      decrypterImpl.decryptFile(myMalformedEncrypted, myClearText, "malformedEncrypted.pgp");
+      decrypterImpl.decryptFile(myMalformedEncrypted, myClearText, fakeBlob);
     });
 
     myClearText.close();
@@ -196,7 +212,7 @@ class DecrypterTest {
 
     // Try to decrypt the empty file, resulting in an IllegalArgumentException
     assertThrows(IllegalArgumentException.class, () -> {
-      decrypterImpl.decryptFile(myEmptyEncryptedInput, myClearText, blobName);
+      decrypterImpl.decryptFile(myEmptyEncryptedInput, myClearText, fakeBlob);
     });
     myEmptyEncryptedInput.close();
     myClearText.close();
@@ -210,7 +226,7 @@ class DecrypterTest {
 
   @Test
   void shouldDecrypt(CapturedOutput output)
-      throws IOException {
+      throws IOException, NoSuchAlgorithmException {
 
     // decrypt and compare
 
@@ -232,9 +248,79 @@ class DecrypterTest {
     assertThat(output.getOut(), containsString("Closing:"));
     assertThat(output.getOut(), containsString("Closing clear stream:"));
     assertThat(output.getOut(), containsString("Blob decrypted:"));
+    // The payload is not digested unless the checksum is enforced
+    assertEquals("", fakeBlob.getReportMetaData().getComputedCheckSum());
 
   }
 
+  @Test
+  void shouldDigestPayloadWhenChecksumEnforced() throws IOException, NoSuchAlgorithmException {
+    decrypterImpl.setChecksumEnforced(true);
+
+    decrypterImpl.decrypt(fakeBlob);
+
+    assertEquals(BlobApplicationAware.Status.DECRYPTED, fakeBlob.getStatus());
+    assertEquals(payloadDigest(), fakeBlob.getReportMetaData().getComputedCheckSum());
+  }
+
+  @Test
+  void shouldDecryptStream(CapturedOutput output)
+      throws IOException, NoSuchAlgorithmException {
+
+    try (InputStream encrypted = new FileInputStream(Path.of(tmpDirectory, blobName).toFile());
+        InputStream decrypted = decrypterImpl.decrypt(fakeBlob, encrypted)) {
+      assertTrue(IOUtils.contentEquals(
+          new FileInputStream(Path.of(resources,
+              "/CSTAR.99999.TRNLOG.20220419.121045.001.01.csv").toFile()),
+          decrypted));
+    }
+
+    assertEquals("", fakeBlob.getReportMetaData().getComputedCheckSum());
+
+    // Nothing is written on disk when decrypting a stream
+    assertFalse(Files.exists(Path.of(tmpDirectory, blobName + ".decrypted")));
+    assertThat(output.getOut(), containsString("Closing clear stream:"));
+  }
+
+  @Test
+  void shouldDigestStreamedPayloadWhenChecksumEnforced()
+      throws IOException, NoSuchAlgorithmException {
+    decrypterImpl.setChecksumEnforced(true);
+
+    try (InputStream encrypted = new FileInputStream(Path.of(tmpDirectory, blobName).toFile());
+        InputStream decrypted = decrypterImpl.decrypt(fakeBlob, encrypted)) {
+      IOUtils.consume(decrypted);
+    }
+
+    // The digest of the payload is known once the stream is read to its end
+    assertEquals(payloadDigest(), fakeBlob.getReportMetaData().getComputedCheckSum());
+  }
+
+  @Test
+  void shouldNotDecryptStreamWithoutData(CapturedOutput output)
+      throws IOException, NoSuchProviderException, PGPException {
+    FileInputStream publicKey = new FileInputStream(resources + "/certs/public.key");
+    Files.createFile(Path.of(tmpDirectory, "emptyFile"));
+    try (FileOutputStream emptyEncrypted = new FileOutputStream(tmpDirectory + "/emptyFile.pgp")) {
+      this.encryptFile(emptyEncrypted, tmpDirectory + "/emptyFile", this.readPublicKey(publicKey),
+          true, true);
+    }
+
+    try (InputStream encrypted = new FileInputStream(tmpDirectory + "/emptyFile.pgp")) {
+      IOException e = assertThrows(IOException.class,
+          () -> decrypterImpl.decrypt(fakeBlob, encrypted));
+      assertEquals("No data found in decrypted file", e.getMessage());
+    }
+    assertThat(output.getOut(), containsString("Closing clear stream:"));
+  }
+
+  @Test
+  void shouldNotDecryptMalformedStream() throws IOException {
+    try (InputStream encrypted = new FileInputStream(resources + "/malformedEncrypted.pgp")) {
+      assertThrows(IOException.class, () -> decrypterImpl.decrypt(fakeBlob, encrypted));
+    }
+  }
+
   @Test
   void shouldWarnNoData(CapturedOutput output)
       throws IOException, PGPException {
@@ -293,6 +379,14 @@ class DecrypterTest {
 
   }
 
+  // The SHA-256 of the decrypted fixture following its checksum header
+  private String payloadDigest() throws IOException, NoSuchAlgorithmException {
+    String content = Files.readString(
+        Path.of(resources, "CSTAR.99999.TRNLOG.20220419.121045.001.01.csv"));
+    return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256")
+        .digest(content.substring(content.indexOf('\n') + 1).getBytes(StandardCharsets.UTF_8)));
+  }
+
   // This routine should be factored out in a common module
   // https://github.com/pagopa/rtd-ms-transaction-filter/blob/76ef81bd58be8c9a9d417735c87ad1c08360a091/api/batch/src/main/java/it/gov/pagopa/rtd/transaction_filter/batch/encryption/EncryptUtil.java#L194
   private void encryptFile(
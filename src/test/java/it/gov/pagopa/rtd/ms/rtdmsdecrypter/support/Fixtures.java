@@ -0,0 +1,268 @@
+package it.gov.pagopa.rtd.ms.rtdmsdecrypter.support;
+
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.BlobApplicationAware.Application;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.service.DecrypterImpl;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.service.DecryptionKeyRing;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.security.Security;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.openpgp.PGPCompressedData;
+import org.bouncycastle.openpgp.PGPCompressedDataGenerator;
+import org.bouncycastle.openpgp.PGPEncryptedData;
+import org.bouncycastle.openpgp.PGPEncryptedDataGenerator;
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPLiteralData;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.bouncycastle.openpgp.PGPPublicKeyRing;
+import org.bouncycastle.openpgp.PGPPublicKeyRingCollection;
+import org.bouncycastle.openpgp.PGPUtil;
+import org.bouncycastle.openpgp.operator.jcajce.JcaKeyFingerprintCalculator;
+import org.bouncycastle.openpgp.operator.jcajce.JcePGPDataEncryptorBuilder;
+import org.bouncycastle.openpgp.operator.jcajce.JcePublicKeyKeyEncryptionMethodGenerator;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+
+/**
+ * Generators of the files the pipeline goes through, of any number of records: TRNLOG
+ * transactions, ADE aggregates and wallet exports, decrypted or encrypted with the test key as the
+ * batch service does. The records are valid and seeded, so every run generates the same files.
+ * Paths are relative to the project directory, where the tests and the benchmarks run from.
+ */
+public final class Fixtures {
+
+  public static final Path RESOURCES = Path.of("src/test/resources");
+
+  private static final long SEED = 42;
+
+  private Fixtures() {
+  }
+
+  /**
+   * URI of a blob of an application, as in the events of the blob storage.
+   */
+  public static String blobUri(Application application) {
+    return switch (application) {
+      case RTD -> "/blobServices/default/containers/"
+          + "rtd-transactions-32489876908u74bh781e2db57k098c5ad00000000000/blobs/"
+          + "CSTAR.99999.TRNLOG.20220419.121045.001.csv.pgp";
+      case ADE -> "/blobServices/default/containers/"
+          + "ade-transactions-32489876908u74bh781e2db57k098c5ad00000000000/blobs/"
+          + "ADE.99999.TRNLOG.20220721.095718.001.csv.pgp";
+      case WALLET -> "/blobServices/default/containers/nexi/blobs/in/"
+          + "PAGOPAPM_NPG_CONTRACTS_20240323000000_001_OUT";
+      case NOAPP -> "/blobServices/default/containers/cstar-exports/blobs/hashedPans_1.zip";
+    };
+  }
+
+  /**
+   * URI of the n-th of many RTD or ADE blobs of a sender, distinct in their creation time and
+   * progressive number.
+   */
+  public static String blobUri(Application application, int index) {
+    String name = String.format(Locale.ROOT, "%s.99999.TRNLOG.20220419.%s.%03d.csv.pgp",
+        application == Application.ADE ? "ADE" : "CSTAR",
+        LocalTime.MIDNIGHT.plusSeconds(index / 1000).format(DateTimeFormatter.ofPattern("HHmmss")),
+        index % 1000);
+    return "/blobServices/default/containers/" + application.name().toLowerCase(Locale.ROOT)
+        + "-transactions-32489876908u74bh781e2db57k098c5ad00000000000/blobs/" + name;
+  }
+
+  /**
+   * Writes a decrypted file: the records of RTD and ADE follow the header with their checksum,
+   * the contracts of the wallet follow the header of the export.
+   */
+  public static void writeDecrypted(Application application, Path file, int rows)
+      throws IOException {
+    try (Writer writer = writer(file)) {
+      if (application == Application.WALLET) {
+        writeWalletExport(writer, rows);
+        return;
+      }
+      // The records are generated twice, first to digest them
+      DigestOutputStream digest = new DigestOutputStream(OutputStream.nullOutputStream(),
+          sha256());
+      try (Writer digested = new OutputStreamWriter(digest, StandardCharsets.UTF_8)) {
+        writeRecords(application, digested, rows);
+      }
+      writer.write("#sha256sum:" + HexFormat.of().formatHex(digest.getMessageDigest().digest())
+          + "\n");
+      writeRecords(application, writer, rows);
+    }
+  }
+
+  /**
+   * Writes the records of a RTD or ADE chunk, without the checksum header.
+   */
+  public static void writeChunk(Application application, Path file, int rows) throws IOException {
+    try (Writer writer = writer(file)) {
+      writeRecords(application, writer, rows);
+    }
+  }
+
+  /**
+   * Encrypts a file with the public test key, compressed and with an integrity packet as the batch
+   * service does.
+   */
+  public static void encrypt(Path clear, Path encrypted) throws IOException, PGPException {
+    if (Security.getProvider(BouncyCastleProvider.PROVIDER_NAME) == null) {
+      Security.addProvider(new BouncyCastleProvider());
+    }
+    PGPEncryptedDataGenerator encryptor = new PGPEncryptedDataGenerator(
+        new JcePGPDataEncryptorBuilder(PGPEncryptedData.CAST5)
+            .setWithIntegrityPacket(true)
+            .setSecureRandom(new SecureRandom())
+            .setProvider(BouncyCastleProvider.PROVIDER_NAME));
+    encryptor.addMethod(new JcePublicKeyKeyEncryptionMethodGenerator(publicKey())
+        .setProvider(BouncyCastleProvider.PROVIDER_NAME));
+    try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(encrypted), 1 << 16);
+        OutputStream encryptedOut = encryptor.open(out, new byte[1 << 16])) {
+      PGPCompressedDataGenerator compressor = new PGPCompressedDataGenerator(
+          PGPCompressedData.ZIP);
+      PGPUtil.writeFileToLiteralData(compressor.open(encryptedOut), PGPLiteralData.BINARY,
+          clear.toFile(), new byte[1 << 16]);
+      compressor.close();
+    }
+  }
+
+  /**
+   * Starts the decrypter with the private test key, to be closed once done.
+   */
+  public static AnnotationConfigApplicationContext decrypterContext() {
+    AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+    context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("fixtures",
+        Map.of("decrypt.private.key.path", RESOURCES.resolve("certs/private.key").toString(),
+            "decrypt.private.key.password", "privatekeypass",
+            "decrypt.private.key.reloadIntervalSeconds", "0")));
+    context.register(DecryptionKeyRing.class, DecrypterImpl.class);
+    context.refresh();
+    return context;
+  }
+
+  /**
+   * A valid transaction shaped like the ones of the TRNLOG files, half of them with a par.
+   */
+  public static String rtdRecord(Random random, int i) {
+    return "36081;00;" + String.format("%02d", random.nextInt(10)) + ';' + hex(random, 32) + ';'
+        + String.format("2020-08-%02dT%02d:%02d:16.000+00:00", 1 + random.nextInt(28),
+        random.nextInt(24), random.nextInt(60)) + ';'
+        + (random.nextLong() & Long.MAX_VALUE) + ';'
+        + random.nextInt(1000000) + ";;"
+        + random.nextInt(100000) + ";978;09509;"
+        + (400000000000L + random.nextInt(100000)) + ';'
+        + (80000000 + random.nextInt(100000)) + ';'
+        + (40000000 + random.nextInt(100000)) + ";4900;fc"
+        + String.format("%09d", random.nextInt(1000000000)) + ";12345678901;00;"
+        + (i % 2 == 0 ? "" : hex(random, 15).substring(0, 29).toUpperCase());
+  }
+
+  /**
+   * A valid aggregate shaped like the ones of the ADE files.
+   */
+  public static String adeRecord(Random random) {
+    return "99999;0" + random.nextInt(2) + ";2022-07-21;2022-07-"
+        + String.format("%02d", 1 + random.nextInt(20)) + ';'
+        + (1 + random.nextInt(100)) + ';' + random.nextInt(1000000)
+        + ";978;99999;" + (random.nextLong() & Long.MAX_VALUE) + ';'
+        + (random.nextLong() & Long.MAX_VALUE)
+        + ";00000000003;00000000003;00";
+  }
+
+  /**
+   * A valid contract shaped like the ones of the wallet exports: mostly card creations, with some
+   * deletions.
+   */
+  public static String walletContract(Random random, int i) {
+    if (i % 10 == 9) {
+      return "{\"action\":\"DELETE\",\"import_outcome\":\"OK\",\"original_contract_identifier\":\""
+          + hex(random, 16) + "\"}";
+    }
+    return "{\"action\":\"CREATE\",\"import_outcome\":\"OK\",\"payment_method\":\"CARD\","
+        + "\"method_attributes\":{\"pan_tail\":\"" + String.format("%04d", random.nextInt(10000))
+        + "\",\"expdate\":\"" + String.format("%02d/%02d", 1 + random.nextInt(12),
+        25 + random.nextInt(10))
+        + "\",\"card_id_4\":\"" + hex(random, 44)
+        + "\",\"card_payment_circuit\":\"MAESTRO\",\"new_contract_identifier\":\""
+        + hex(random, 16) + "\",\"original_contract_identifier\":\"" + hex(random, 16)
+        + "\",\"card_bin\":\"" + String.format("%06d", random.nextInt(1000000)) + "\"}}";
+  }
+
+  private static void writeRecords(Application application, Writer writer, int rows)
+      throws IOException {
+    Random random = new Random(SEED);
+    for (int i = 0; i < rows; i++) {
+      writer.write(application == Application.ADE ? adeRecord(random) : rtdRecord(random, i));
+      writer.write('\n');
+    }
+  }
+
+  private static void writeWalletExport(Writer writer, int rows) throws IOException {
+    writer.write("{\n\"header\": {\"file_id\": \"PAGOPAPM_NPG_CONTRACTS_20240323000000_OUT\","
+        + "\"tenant_id\": \"20\",\"merchant_id\": \"3470428\",\"terminal_id\": \"3470428\","
+        + "\"processing_start_time\": \"2024-03-23T11:18:35Z\","
+        + "\"processing_end_time\": \"2024-03-23T11:18:45Z\","
+        + "\"export_id\": \"aeb5071e-6ecf-477d-8298-55bf1052703a\","
+        + "\"import_file_id\": \"PAGOPAPM_NPG_CONTRACTS_20240323000000\","
+        + "\"extraction_time\": \"2024-03-23T11:18:35Z\",\"contract_quantity\": " + rows
+        + ",\"file_sequence_number\": \"001\"},\n\"contracts\": [\n");
+    Random random = new Random(SEED);
+    for (int i = 0; i < rows; i++) {
+      if (i > 0) {
+        writer.write(",\n");
+      }
+      writer.write(walletContract(random, i));
+    }
+    writer.write("\n]\n}\n");
+  }
+
+  private static Writer writer(Path file) throws IOException {
+    return new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file),
+        StandardCharsets.UTF_8), 1 << 16);
+  }
+
+  private static PGPPublicKey publicKey() throws IOException, PGPException {
+    try (InputStream in = Files.newInputStream(RESOURCES.resolve("certs/public.key"))) {
+      for (PGPPublicKeyRing keyRing : new PGPPublicKeyRingCollection(
+          PGPUtil.getDecoderStream(in), new JcaKeyFingerprintCalculator())) {
+        for (PGPPublicKey key : keyRing) {
+          if (key.isEncryptionKey()) {
+            return key;
+          }
+        }
+      }
+    }
+    throw new IllegalArgumentException("Can't find encryption key in key ring.");
+  }
+
+  private static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static String hex(Random random, int bytes) {
+    byte[] value = new byte[bytes];
+    random.nextBytes(value);
+    return HexFormat.of().formatHex(value);
+  }
+}
@@ -0,0 +1,364 @@
+package it.gov.pagopa.rtd.ms.rtdmsdecrypter.support;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Minimal in-process stand-in of the blob storage REST API, serving the calls issued by the
+ * connector: Get Blob (also by range and If-Match), Get Blob Properties, Put Blob, Put Block,
+ * Put Block List and Set Blob Metadata.
+ *
+ * <p>Blobs are addressed by the request path, e.g. {@code /storage/container/blob}.
+ */
+public class LocalBlobStorage implements AutoCloseable {
+
+  private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d+)");
+
+  private static final Pattern BLOCK_LIST_ENTRY = Pattern.compile(
+      "<(?:Latest|Uncommitted|Committed)>([^<]+)</");
+
+  private final HttpServer server;
+
+  private final ExecutorService executor;
+
+  private final Map<String, byte[]> blobs = new ConcurrentHashMap<>();
+
+  private final Map<String, String> etags = new ConcurrentHashMap<>();
+
+  private final AtomicLong etagVersion = new AtomicLong();
+
+  private final Map<String, Map<String, byte[]>> stagedBlocks = new ConcurrentHashMap<>();
+
+  private final Map<String, Map<String, String>> metadata = new ConcurrentHashMap<>();
+
+  private final AtomicInteger blockPuts = new AtomicInteger();
+
+  private final AtomicInteger blockFailuresToInject = new AtomicInteger();
+
+  private final AtomicInteger rangeTruncationsToInject = new AtomicInteger();
+
+  private final List<String> requestedRanges = new CopyOnWriteArrayList<>();
+
+  private final AtomicLong uploadedBytes = new AtomicLong();
+
+  private volatile boolean uploadsRetained = true;
+
+  private volatile Consumer<String> metadataListener = path -> {
+  };
+
+  private volatile Consumer<String> rangeListener = path -> {
+  };
+
+  /**
+   * Starts the stand-in on a random local port.
+   *
+   * @throws IOException if the server cannot be started
+   */
+  public LocalBlobStorage() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    // Platform threads: a client pinning the only carrier of the virtual threads while it waits
+    // for the response would starve the handler of its request
+    executor = Executors.newCachedThreadPool();
+    server.setExecutor(executor);
+    server.createContext("/", this::handle);
+    server.start();
+  }
+
+  public String getBaseUrl() {
+    return "http://localhost:" + server.getAddress().getPort();
+  }
+
+  public void putBlob(String path, byte[] content) {
+    store(path, content);
+  }
+
+  public byte[] getBlob(String path) {
+    return blobs.get(path);
+  }
+
+  public Map<String, String> getMetadata(String path) {
+    return metadata.getOrDefault(path, Map.of());
+  }
+
+  public int getBlockPuts() {
+    return blockPuts.get();
+  }
+
+  /**
+   * Makes the next Put Block calls fail with a server error.
+   *
+   * @param failures number of calls to fail
+   */
+  public void failNextBlockPuts(int failures) {
+    blockFailuresToInject.set(failures);
+  }
+
+  /**
+   * Makes the next ranged Get Blob calls break after sending half of the requested range.
+   *
+   * @param truncations number of calls to break
+   */
+  public void truncateNextRangeResponses(int truncations) {
+    rangeTruncationsToInject.set(truncations);
+  }
+
+  public List<String> getRequestedRanges() {
+    return requestedRanges;
+  }
+
+  public void removeBlob(String path) {
+    blobs.remove(path);
+    etags.remove(path);
+  }
+
+  public long getUploadedBytes() {
+    return uploadedBytes.get();
+  }
+
+  /**
+   * Keeps or drops the content of the uploaded blobs, e.g. to hold a long load in memory. The
+   * uploaded bytes are counted anyway.
+   *
+   * @param retained whether the uploaded content is kept
+   */
+  public void setUploadsRetained(boolean retained) {
+    uploadsRetained = retained;
+  }
+
+  /**
+   * Notifies the path of every blob whose metadata are set, after they are stored.
+   *
+   * @param listener the listener of the Set Blob Metadata calls
+   */
+  public void onMetadata(Consumer<String> listener) {
+    metadataListener = listener;
+  }
+
+  /**
+   * Notifies the path of every blob requested by range, before the range is served, e.g. to
+   * overwrite the blob in the middle of a ranged download.
+   *
+   * @param listener the listener of the ranged Get Blob calls
+   */
+  public void onRange(Consumer<String> listener) {
+    rangeListener = listener;
+  }
+
+  public void clear() {
+    blobs.clear();
+    etags.clear();
+    stagedBlocks.clear();
+    metadata.clear();
+    blockPuts.set(0);
+    blockFailuresToInject.set(0);
+    rangeTruncationsToInject.set(0);
+    requestedRanges.clear();
+    uploadedBytes.set(0);
+    uploadsRetained = true;
+    metadataListener = path -> {
+    };
+    rangeListener = path -> {
+    };
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try (exchange) {
+      String path = exchange.getRequestURI().getPath();
+      Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+      byte[] body = readBody(exchange.getRequestBody());
+
+      switch (exchange.getRequestMethod()) {
+        case "HEAD" -> head(exchange, path);
+        case "GET" -> get(exchange, path);
+        case "PUT" -> put(exchange, path, query, body);
+        default -> exchange.sendResponseHeaders(405, -1);
+      }
+    }
+  }
+
+  private void head(HttpExchange exchange, String path) throws IOException {
+    byte[] content = blobs.get(path);
+    if (content == null) {
+      exchange.sendResponseHeaders(404, -1);
+      return;
+    }
+    exchange.getResponseHeaders().set("Content-Length", String.valueOf(content.length));
+    exchange.getResponseHeaders().set("ETag", etags.get(path));
+    exchange.sendResponseHeaders(200, -1);
+  }
+
+  private void get(HttpExchange exchange, String path) throws IOException {
+    String range = exchange.getRequestHeaders().getFirst("Range");
+    if (range != null) {
+      requestedRanges.add(range);
+      rangeListener.accept(path);
+    }
+    byte[] content = blobs.get(path);
+    if (content == null) {
+      exchange.sendResponseHeaders(404, -1);
+      return;
+    }
+    String etag = etags.get(path);
+    String ifMatch = exchange.getRequestHeaders().getFirst("If-Match");
+    if (ifMatch != null && !ifMatch.equals(etag)) {
+      exchange.sendResponseHeaders(412, -1);
+      return;
+    }
+    exchange.getResponseHeaders().set("ETag", etag);
+    if (range == null) {
+      exchange.sendResponseHeaders(200, content.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(content);
+      }
+      return;
+    }
+
+    Matcher matcher = RANGE.matcher(range);
+    if (!matcher.matches()) {
+      exchange.sendResponseHeaders(416, -1);
+      return;
+    }
+    int start = Integer.parseInt(matcher.group(1));
+    int end = Math.min(Integer.parseInt(matcher.group(2)), content.length - 1);
+    int length = end - start + 1;
+    exchange.getResponseHeaders()
+        .set("Content-Range", "bytes " + start + "-" + end + "/" + content.length);
+    exchange.sendResponseHeaders(206, length);
+    OutputStream out = exchange.getResponseBody();
+    if (rangeTruncationsToInject.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+      // Send only half of the range and drop the connection
+      out.write(content, start, length / 2);
+      out.flush();
+      throw new IOException("Injected truncation of range " + range);
+    }
+    try (out) {
+      out.write(content, start, length);
+    }
+  }
+
+  private void put(HttpExchange exchange, String path, Map<String, String> query, byte[] body)
+      throws IOException {
+    String comp = query.get("comp");
+    if ("block".equals(comp)) {
+      blockPuts.incrementAndGet();
+      if (blockFailuresToInject.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+        exchange.sendResponseHeaders(500, -1);
+        return;
+      }
+      stagedBlocks.computeIfAbsent(path, p -> new ConcurrentHashMap<>())
+          .put(query.get("blockid"), body);
+      exchange.sendResponseHeaders(201, -1);
+    } else if ("blocklist".equals(comp)) {
+      commitBlockList(exchange, path, new String(body, StandardCharsets.UTF_8));
+    } else if ("metadata".equals(comp)) {
+      storeMetadata(exchange, path);
+      exchange.sendResponseHeaders(200, -1);
+      metadataListener.accept(path);
+    } else {
+      if ("*".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))
+          && blobs.containsKey(path)) {
+        exchange.sendResponseHeaders(409, -1);
+        return;
+      }
+      uploadedBytes.addAndGet(body.length);
+      if (uploadsRetained) {
+        store(path, body);
+      }
+      storeMetadata(exchange, path);
+      exchange.sendResponseHeaders(201, -1);
+    }
+  }
+
+  private void commitBlockList(HttpExchange exchange, String path, String blockList)
+      throws IOException {
+    Map<String, byte[]> staged = stagedBlocks.getOrDefault(path, Map.of());
+    ByteArrayOutputStream content = new ByteArrayOutputStream();
+    Matcher matcher = BLOCK_LIST_ENTRY.matcher(blockList);
+    while (matcher.find()) {
+      byte[] block = staged.get(matcher.group(1));
+      if (block == null) {
+        exchange.sendResponseHeaders(400, -1);
+        return;
+      }
+      content.write(block);
+    }
+    uploadedBytes.addAndGet(content.size());
+    if (uploadsRetained) {
+      store(path, content.toByteArray());
+    }
+    stagedBlocks.remove(path);
+    storeMetadata(exchange, path);
+    exchange.sendResponseHeaders(201, -1);
+  }
+
+  // Every version of a blob gets a new entity tag. The tag is replaced first: a reader getting
+  // the new content, then the tag, never pairs it with the old tag
+  private void store(String path, byte[] content) {
+    etags.put(path, "\"0x" + Long.toHexString(etagVersion.incrementAndGet()) + "\"");
+    blobs.put(path, content);
+  }
+
+  private void storeMetadata(HttpExchange exchange, String path) {
+    Map<String, String> blobMetadata = new HashMap<>();
+    exchange.getRequestHeaders().forEach((name, values) -> {
+      if (name.toLowerCase().startsWith("x-ms-meta-")) {
+        blobMetadata.put(name.toLowerCase().substring("x-ms-meta-".length()), values.get(0));
+      }
+    });
+    if (!blobMetadata.isEmpty()) {
+      metadata.merge(path, blobMetadata, (existing, added) -> {
+        Map<String, String> merged = new HashMap<>(existing);
+        merged.putAll(added);
+        return merged;
+      });
+    }
+  }
+
+  private static Map<String, String> parseQuery(String rawQuery) {
+    Map<String, String> query = new HashMap<>();
+    if (rawQuery == null) {
+      return query;
+    }
+    for (String parameter : rawQuery.split("&")) {
+      int separator = parameter.indexOf('=');
+      if (separator < 0) {
+        query.put(parameter, "");
+      } else {
+        query.put(parameter.substring(0, separator),
+            URLDecoder.decode(parameter.substring(separator + 1), StandardCharsets.UTF_8));
+      }
+    }
+    return query;
+  }
+
+  private static byte[] readBody(InputStream body) throws IOException {
+    try (body) {
+      return body.readAllBytes();
+    }
+  }
+}
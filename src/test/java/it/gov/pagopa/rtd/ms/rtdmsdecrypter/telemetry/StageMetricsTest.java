@@ -0,0 +1,135 @@
+package it.gov.pagopa.rtd.ms.rtdmsdecrypter.telemetry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.prometheusmetrics.PrometheusConfig;
+import io.micrometer.prometheusmetrics.PrometheusMeterRegistry;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.BlobApplicationAware;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.BlobApplicationAware.Status;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+class StageMetricsTest {
+
+  @TempDir
+  Path tmp;
+
+  MeterRegistry meterRegistry;
+
+  StageMetrics stageMetrics;
+
+  BlobApplicationAware blob;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    meterRegistry = new SimpleMeterRegistry();
+    StaticListableBeanFactory beanFactory = new StaticListableBeanFactory();
+    beanFactory.addBean("meterRegistry", meterRegistry);
+    stageMetrics = new StageMetrics(beanFactory.getBeanProvider(MeterRegistry.class));
+
+    blob = new BlobApplicationAware(
+        "/blobServices/default/containers/rtd-transactions-32489876908u74bh781e2db57k098c5ad00000000000/blobs/CSTAR.99999.TRNLOG.20220419.121045.001.csv.pgp");
+    blob.setTargetDir(tmp.toString());
+    Files.write(tmp.resolve(blob.getBlob()), new byte[1000]);
+  }
+
+  @Test
+  void shouldRecordSuccessfulStage() {
+    blob.setStatus(Status.DOWNLOADED);
+
+    BlobApplicationAware downloaded = stageMetrics.record(StageMetrics.DOWNLOAD, blob, () -> blob,
+        b -> Status.DOWNLOADED.equals(b.getStatus()), StageMetrics::fileSize);
+
+    assertSame(blob, downloaded);
+    assertEquals(1, timer(StageMetrics.SUCCESS).count());
+    assertEquals(1000, meterRegistry.get("decrypter.stage.bytes")
+        .tags("stage", "download", "application", "RTD", "outcome", "success").counter().count());
+    assertEquals(1, meterRegistry.get("decrypter.stage.throughput")
+        .tags("stage", "download", "application", "RTD", "outcome", "success").summary().count());
+  }
+
+  @Test
+  void shouldRecordFailedStage() {
+    stageMetrics.record(StageMetrics.DOWNLOAD, blob, () -> blob,
+        b -> Status.DOWNLOADED.equals(b.getStatus()), StageMetrics::fileSize);
+
+    assertEquals(1, timer(StageMetrics.FAILURE).count());
+  }
+
+  @Test
+  void shouldRecordStageThrowingAndRethrow() {
+    assertThrows(IllegalStateException.class,
+        () -> stageMetrics.record(StageMetrics.DOWNLOAD, blob, () -> {
+          throw new IllegalStateException("Unexpected failure");
+        }, b -> true, b -> 0));
+
+    assertEquals(1, timer(StageMetrics.ERROR).count());
+    assertNull(meterRegistry.find("decrypter.stage.bytes").counter());
+  }
+
+  @Test
+  void shouldRunStageWithoutRegistry() {
+    StageMetrics withoutRegistry = new StageMetrics(
+        new StaticListableBeanFactory().getBeanProvider(MeterRegistry.class));
+
+    assertSame(blob, withoutRegistry.record(StageMetrics.DOWNLOAD, blob, () -> blob, b -> true,
+        StageMetrics::fileSize));
+  }
+
+  @Test
+  void shouldSumFileSizes() {
+    BlobApplicationAware missing = new BlobApplicationAware(blob.getBlobUri() + ".missing");
+    missing.setTargetDir(tmp.toString());
+
+    assertEquals(1000, StageMetrics.fileSize(List.of(blob, missing)));
+  }
+
+  @Test
+  void shouldScrapeOneFamilyPerMeterName() {
+    PrometheusMeterRegistry prometheusRegistry = new PrometheusMeterRegistry(
+        PrometheusConfig.DEFAULT);
+    StaticListableBeanFactory beanFactory = new StaticListableBeanFactory();
+    beanFactory.addBean("meterRegistry", prometheusRegistry);
+    StageMetrics prometheusStageMetrics = new StageMetrics(
+        beanFactory.getBeanProvider(MeterRegistry.class));
+
+    // Two tag sets of the same meters
+    prometheusStageMetrics.record(StageMetrics.DOWNLOAD, blob, () -> blob, b -> true,
+        StageMetrics::fileSize);
+    prometheusStageMetrics.record(StageMetrics.UPLOAD, blob, () -> blob, b -> false,
+        StageMetrics::fileSize);
+
+    String scrape = prometheusRegistry.scrape();
+    assertEquals(1, count(scrape, "# TYPE decrypter_stage_duration_seconds "));
+    assertEquals(1, count(scrape, "# TYPE decrypter_stage_bytes_total "));
+    assertEquals(2, count(scrape, "decrypter_stage_duration_seconds_count\\{"));
+  }
+
+  private Timer timer(String outcome) {
+    return meterRegistry.get("decrypter.stage.duration")
+        .tags("stage", "download", "application", "RTD", "outcome", outcome).timer();
+  }
+
+  private static int count(String text, String regex) {
+    Matcher matcher = Pattern.compile(regex).matcher(text);
+    int count = 0;
+    while (matcher.find()) {
+      count++;
+    }
+    return count;
+  }
+}
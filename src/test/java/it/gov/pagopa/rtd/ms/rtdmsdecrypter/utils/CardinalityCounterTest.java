@@ -0,0 +1,128 @@
+package it.gov.pagopa.rtd.ms.rtdmsdecrypter.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.utils.CardinalityCounter.Mode;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * Counts of the exact and estimating counters are compared with the ones of a set of the values.
+ */
+class CardinalityCounterTest {
+
+  @ParameterizedTest
+  @ValueSource(ints = {0, 1, 12, 13, 1000, 100_000})
+  void shouldCountExactly(int distinct) {
+    Random random = new Random(distinct);
+    FingerprintSet counter = new FingerprintSet();
+    Set<String> expected = new HashSet<>();
+    for (int i = 0; i < 3 * distinct; i++) {
+      String merchant = merchantId(random.nextInt(distinct));
+      counter.add(merchant);
+      expected.add(merchant);
+    }
+
+    assertEquals(expected.size(), counter.cardinality());
+    assertTrue(counter.capacity() < 4L * Math.max(expected.size(), 16));
+  }
+
+  @Test
+  void shouldCountZeroFingerprintOnce() {
+    FingerprintSet counter = new FingerprintSet();
+    counter.addFingerprint(0);
+    counter.addFingerprint(0);
+    counter.addFingerprint(16);
+
+    assertEquals(2, counter.cardinality());
+    Set<Long> fingerprints = new HashSet<>();
+    counter.forEach(fingerprints::add);
+    assertEquals(Set.of(0L, 16L), fingerprints);
+  }
+
+  @ParameterizedTest
+  @ValueSource(ints = {1, 4, 100, 10_000, 100_000, 1_000_000})
+  void shouldEstimateWithinError(int distinct) {
+    HyperLogLog counter = new HyperLogLog();
+    for (int i = 0; i < distinct; i++) {
+      counter.add(merchantId(i));
+      counter.add(merchantId(i));
+    }
+
+    // Four standard errors of the default precision
+    assertEquals(distinct, counter.cardinality(), Math.max(0.5, distinct * 0.0325));
+  }
+
+  @Test
+  void shouldMergeExactCounters() {
+    CardinalityCounter counter = count(Mode.EXACT, 0, 1000);
+
+    assertSame(counter, counter.merge(count(Mode.EXACT, 500, 1500)));
+    assertEquals(1500, counter.cardinality());
+  }
+
+  @Test
+  void shouldMergeEstimatingCounters() {
+    CardinalityCounter counter = count(Mode.HYPERLOGLOG, 0, 10_000);
+
+    assertSame(counter, counter.merge(count(Mode.HYPERLOGLOG, 5000, 15_000)));
+    assertEquals(15_000, counter.cardinality(), 15_000 * 0.0325);
+  }
+
+  @Test
+  void shouldEstimateMergingExactAndEstimatingCounters() {
+    CardinalityCounter exact = count(Mode.EXACT, 0, 10_000);
+    CardinalityCounter estimating = count(Mode.HYPERLOGLOG, 5000, 15_000);
+    long estimated = estimating.cardinality();
+
+    CardinalityCounter merged = exact.merge(estimating);
+
+    assertInstanceOf(HyperLogLog.class, merged);
+    assertEquals(15_000, merged.cardinality(), 15_000 * 0.0325);
+    // The merged counters are left as they were
+    assertEquals(10_000, exact.cardinality());
+    assertEquals(estimated, estimating.cardinality());
+    assertSame(estimating, estimating.merge(count(Mode.EXACT, 0, 10_000)));
+    assertEquals(merged.cardinality(), estimating.cardinality());
+  }
+
+  @Test
+  void shouldNotMergeDifferentPrecisions() {
+    HyperLogLog counter = new HyperLogLog(10);
+
+    assertThrows(IllegalArgumentException.class, () -> counter.merge(new HyperLogLog(12)));
+    assertThrows(IllegalArgumentException.class, () -> new HyperLogLog(3));
+    assertThrows(IllegalArgumentException.class, () -> new HyperLogLog(19));
+  }
+
+  @Test
+  void shouldFingerprintEveryChar() {
+    assertEquals(CardinalityCounter.fingerprint("12345"),
+        CardinalityCounter.fingerprint(new StringBuilder("12345")));
+    assertNotEquals(CardinalityCounter.fingerprint("12345"),
+        CardinalityCounter.fingerprint("12354"));
+    assertNotEquals(CardinalityCounter.fingerprint(""), CardinalityCounter.fingerprint("\0"));
+  }
+
+  private static CardinalityCounter count(Mode mode, int from, int to) {
+    CardinalityCounter counter = mode.newCounter();
+    for (int i = from; i < to; i++) {
+      counter.add(merchantId(i));
+    }
+    return counter;
+  }
+
+  // Merchant ids as they appear in the ADE files, differing by their last digits
+  private static String merchantId(int i) {
+    return String.format("%015d", 400_000_000_000L + i);
+  }
+}
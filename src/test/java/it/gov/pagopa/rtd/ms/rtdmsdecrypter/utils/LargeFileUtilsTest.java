@@ -0,0 +1,157 @@
+package it.gov.pagopa.rtd.ms.rtdmsdecrypter.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.utils.LargeFileUtils.Transfer;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * Copies of every kind of ends are compared with their source, on buffers smaller and larger than
+ * the content.
+ */
+class LargeFileUtilsTest {
+
+  @TempDir
+  Path tmp;
+
+  @ParameterizedTest
+  @ValueSource(ints = {0, 1, 7, 4096, 1 << 20})
+  void shouldCopyStreams(int bufferSize) throws IOException {
+    byte[] content = content(300_001);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    Transfer transfer = LargeFileUtils.copy(new ByteArrayInputStream(content), out, bufferSize);
+
+    assertArrayEquals(content, out.toByteArray());
+    assertEquals(content.length, transfer.bytes());
+  }
+
+  @Test
+  void shouldCopyFilesChannelToChannel() throws IOException {
+    byte[] content = content(300_001);
+    Path source = Files.write(tmp.resolve("source"), content);
+
+    try (FileInputStream in = new FileInputStream(source.toFile());
+        FileOutputStream out = new FileOutputStream(tmp.resolve("target").toFile())) {
+      assertEquals(5, in.skip(5));
+      assertEquals(content.length - 5, LargeFileUtils.copy(in, out));
+      assertEquals(-1, in.read());
+    }
+
+    assertArrayEquals(Arrays.copyOfRange(content, 5, content.length),
+        Files.readAllBytes(tmp.resolve("target")));
+  }
+
+  @ParameterizedTest
+  @ValueSource(ints = {0, 1, 4096})
+  void shouldCopyChannels(int bufferSize) throws IOException {
+    byte[] content = content(300_001);
+    Path source = Files.write(tmp.resolve("source"), content);
+
+    // Into a file
+    try (FileChannel out = FileChannel.open(tmp.resolve("file"), StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE)) {
+      assertEquals(content.length, LargeFileUtils.copy(
+          Channels.newChannel(new ByteArrayInputStream(content)), out, bufferSize).bytes());
+    }
+    assertArrayEquals(content, Files.readAllBytes(tmp.resolve("file")));
+
+    // From a file
+    ByteArrayOutputStream fromFile = new ByteArrayOutputStream();
+    try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ)) {
+      assertEquals(content.length, LargeFileUtils.copy(in, Channels.newChannel(fromFile),
+          bufferSize).bytes());
+      assertEquals(content.length, in.position());
+    }
+    assertArrayEquals(content, fromFile.toByteArray());
+
+    // Neither end a file
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    assertEquals(content.length, LargeFileUtils.copy(
+        Channels.newChannel(new ByteArrayInputStream(content)), Channels.newChannel(out),
+        bufferSize).bytes());
+    assertArrayEquals(content, out.toByteArray());
+  }
+
+  @ParameterizedTest
+  @ValueSource(ints = {0, 1, 4096})
+  void shouldCopyRegionsOfFiles(int bufferSize) throws IOException {
+    byte[] content = content(300_001);
+    Path source = Files.write(tmp.resolve("source"), content);
+
+    try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ)) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      assertEquals(100_000,
+          LargeFileUtils.copy(in, 123, 100_000, out, bufferSize).bytes());
+      assertArrayEquals(Arrays.copyOfRange(content, 123, 100_123), out.toByteArray());
+
+      try (FileOutputStream file = new FileOutputStream(tmp.resolve("region").toFile())) {
+        assertEquals(100_000,
+            LargeFileUtils.copy(in, 123, 100_000, file, bufferSize).bytes());
+      }
+      assertArrayEquals(Arrays.copyOfRange(content, 123, 100_123),
+          Files.readAllBytes(tmp.resolve("region")));
+    }
+  }
+
+  @Test
+  void shouldFailCopyingRegionsBeyondEndOfFile() throws IOException {
+    Path source = Files.write(tmp.resolve("source"), content(10));
+
+    try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+        FileOutputStream file = new FileOutputStream(tmp.resolve("region").toFile())) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      assertThrows(IOException.class, () -> LargeFileUtils.copy(in, 5, 10, out, 0));
+      assertThrows(IOException.class, () -> LargeFileUtils.copy(in, 5, 10, file, 0));
+    }
+  }
+
+  @ParameterizedTest
+  @ValueSource(ints = {0, 1, 4096})
+  void shouldCopyStreamsAtPositionOfFiles(int bufferSize) throws IOException {
+    byte[] content = content(300_001);
+    AtomicLong position = new AtomicLong(1000);
+
+    try (FileChannel out = FileChannel.open(tmp.resolve("target"), StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE)) {
+      assertEquals(content.length, LargeFileUtils.copy(new ByteArrayInputStream(content), out,
+          position, bufferSize).bytes());
+    }
+
+    assertEquals(1000 + content.length, position.get());
+    byte[] written = Files.readAllBytes(tmp.resolve("target"));
+    assertArrayEquals(content, Arrays.copyOfRange(written, 1000, written.length));
+  }
+
+  @Test
+  void shouldMeasureThroughput() {
+    assertEquals(2_000_000, new Transfer(1_000_000, 500_000_000).bytesPerSecond());
+    assertEquals(0, new Transfer(1_000_000, 0).bytesPerSecond());
+    assertTrue(new Transfer(1_048_576, 1_000_000_000).toString().endsWith("(1.0 MB/s)"));
+  }
+
+  private static byte[] content(int length) {
+    byte[] content = new byte[length];
+    new Random(length).nextBytes(content);
+    return content;
+  }
+}
@@ -0,0 +1,214 @@
+package it.gov.pagopa.rtd.ms.rtdmsdecrypter.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * Chunk boundaries found on the mapped bytes are compared with the ones of the lines, on windows
+ * small enough to split lines and UTF-8 sequences.
+ */
+class MappedLineScannerTest {
+
+  private static final String[] TOKENS = {"a", "bc", "12;34;", "\n", "\n", "è", "€", "😀",
+      "a very long field of the record;", ""};
+
+  @TempDir
+  Path tmp;
+
+  @ParameterizedTest
+  @ValueSource(ints = {13, 64, 1024})
+  void shouldFindBoundariesOfLines(int windowSize) throws IOException {
+    Random random = new Random(windowSize);
+    for (int run = 0; run < 100; run++) {
+      StringBuilder content = new StringBuilder();
+      int tokens = random.nextInt(200);
+      for (int i = 0; i < tokens; i++) {
+        content.append(TOKENS[random.nextInt(TOKENS.length)]);
+      }
+      byte[] bytes = content.toString().getBytes(StandardCharsets.UTF_8);
+      int linesPerChunk = 1 + random.nextInt(5);
+      long start = bytes.length == 0 ? 0 : random.nextInt(Math.min(bytes.length, 8));
+      start = lineStart(bytes, start);
+
+      ChunkLimits limits = new ChunkLimits(linesPerChunk,
+          random.nextBoolean() ? 1 + random.nextInt(64) : 0);
+
+      assertArrayEquals(expectedBoundaries(bytes, start, limits),
+          scan(bytes, start, limits, windowSize), content.toString());
+    }
+  }
+
+  @ParameterizedTest
+  @ValueSource(ints = {1, 2, 3, 7, 64})
+  void shouldFindBoundariesOfRegionsAsSequentially(int regions) throws IOException {
+    Random random = new Random(regions);
+    try (ExecutorService executor = Executors.newFixedThreadPool(4)) {
+      for (int run = 0; run < 100; run++) {
+        StringBuilder content = new StringBuilder();
+        int tokens = random.nextInt(200);
+        for (int i = 0; i < tokens; i++) {
+          content.append(TOKENS[random.nextInt(TOKENS.length)]);
+        }
+        if (random.nextInt(10) == 0) {
+          content.insert(random.nextInt(content.length() + 1), '\r');
+        }
+        byte[] bytes = content.toString().getBytes(StandardCharsets.UTF_8);
+        int linesPerChunk = 1 + random.nextInt(5);
+        long start = lineStart(bytes, bytes.length == 0 ? 0 : random.nextInt(bytes.length));
+
+        try (FileChannel channel = FileChannel.open(write(bytes), StandardOpenOption.READ)) {
+          ChunkLimits limits = new ChunkLimits(linesPerChunk,
+              random.nextInt(4) == 0 ? random.nextInt(64) : 0);
+          assertArrayEquals(MappedLineScanner.chunkBoundaries(channel, start, limits),
+              MappedLineScanner.chunkBoundaries(channel, start, limits, executor, regions, 13),
+              content.toString());
+        }
+      }
+    }
+  }
+
+  @Test
+  void shouldSplitEveryNthLine() throws IOException {
+    byte[] bytes = "h\n1\n2\n3\n4\n5".getBytes(StandardCharsets.UTF_8);
+
+    assertArrayEquals(new long[]{2, 6, 10, 11}, scan(bytes, 2, 2, 64));
+    assertArrayEquals(new long[]{0, 8, 11}, scan(bytes, 0, 4, 64));
+    assertArrayEquals(new long[]{0, 11}, scan(bytes, 0, 1000, 64));
+    try (ExecutorService executor = Executors.newFixedThreadPool(2);
+        FileChannel channel = FileChannel.open(write(bytes), StandardOpenOption.READ)) {
+      assertArrayEquals(new long[]{2, 6, 10, 11},
+          MappedLineScanner.chunkBoundaries(channel, 2, new ChunkLimits(2, 0), executor, 3));
+    }
+  }
+
+  @Test
+  void shouldCloseChunksReachingEitherLimit() throws IOException {
+    byte[] bytes = "h\n1\n22\n333\n4444\n5\n6\n".getBytes(StandardCharsets.UTF_8);
+
+    assertArrayEquals(new long[]{2, 7, 11, 16, 20},
+        scan(bytes, 2, new ChunkLimits(2, 4), 64));
+    assertArrayEquals(new long[]{2, 4, 7, 11, 16, 18, 20},
+        scan(bytes, 2, new ChunkLimits(1000, 1), 64));
+    assertArrayEquals(new long[]{0, 4, 11, 18, 20},
+        scan(bytes, 0, new ChunkLimits(2, 1000), 64));
+  }
+
+  @Test
+  void shouldFindNoChunksOfEmptyContent() throws IOException {
+    assertArrayEquals(new long[]{0}, scan(new byte[0], 0, 2, 64));
+    assertArrayEquals(new long[]{2}, scan("h\n".getBytes(StandardCharsets.UTF_8), 2, 2, 64));
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"a\r\nb\n", "a\rb", "a\n\r", "\u0000\r"})
+  void shouldGiveUpOnCarriageReturns(String content) throws IOException {
+    assertNull(scan(content.getBytes(StandardCharsets.UTF_8), 0, 1, 64));
+  }
+
+  @Test
+  void shouldGiveUpOnCarriageReturnsOfAnyRegion() throws IOException {
+    byte[] bytes = "1\n2\n3\n4\r\n5\n6\n".getBytes(StandardCharsets.UTF_8);
+
+    try (ExecutorService executor = Executors.newFixedThreadPool(2);
+        FileChannel channel = FileChannel.open(write(bytes), StandardOpenOption.READ)) {
+      assertNull(MappedLineScanner.chunkBoundaries(channel, 0, new ChunkLimits(2, 0), executor,
+          4));
+    }
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"80", "BF", "C0AF", "C1BF", "C3", "C328", "E0809F", "E0A0", "EDA080",
+      "F08F8080", "F4908080", "F5808080", "FF", "E282AC80"})
+  void shouldGiveUpOnMalformedUtf8(String hex) throws IOException {
+    byte[] sequence = HexFormat.of().parseHex(hex);
+    byte[] bytes = new byte[sequence.length + 4];
+    System.arraycopy("ab\n".getBytes(StandardCharsets.UTF_8), 0, bytes, 0, 3);
+    System.arraycopy(sequence, 0, bytes, 3, sequence.length);
+    bytes[bytes.length - 1] = '\n';
+
+    assertNull(scan(bytes, 0, 1, 64));
+    assertNull(scan(bytes, 0, 1, 4));
+  }
+
+  @Test
+  void shouldAcceptSequencesOfEveryLength() throws IOException {
+    byte[] bytes = "ß€😀\nèé\n".getBytes(StandardCharsets.UTF_8);
+
+    for (int windowSize = 1; windowSize < bytes.length + 2; windowSize++) {
+      assertArrayEquals(new long[]{0, 10, bytes.length}, scan(bytes, 0, 1, windowSize));
+    }
+  }
+
+  @Test
+  void shouldFindEndOfLine() throws IOException {
+    Path file = write("#sha256sum:abc\nrecord\n".getBytes(StandardCharsets.UTF_8));
+
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      assertEquals(15, MappedLineScanner.lineEnd(channel, 0));
+      assertEquals(22, MappedLineScanner.lineEnd(channel, 15));
+      assertEquals(22, MappedLineScanner.lineEnd(channel, 22));
+    }
+    Path unterminated = write("#sha256sum:abc".getBytes(StandardCharsets.UTF_8));
+    try (FileChannel channel = FileChannel.open(unterminated, StandardOpenOption.READ)) {
+      assertEquals(14, MappedLineScanner.lineEnd(channel, 0));
+    }
+  }
+
+  private long[] scan(byte[] bytes, long start, int linesPerChunk, int windowSize)
+      throws IOException {
+    return scan(bytes, start, new ChunkLimits(linesPerChunk, 0), windowSize);
+  }
+
+  private long[] scan(byte[] bytes, long start, ChunkLimits limits, int windowSize)
+      throws IOException {
+    try (FileChannel channel = FileChannel.open(write(bytes), StandardOpenOption.READ)) {
+      return MappedLineScanner.chunkBoundaries(channel, start, limits, windowSize);
+    }
+  }
+
+  private Path write(byte[] bytes) throws IOException {
+    return Files.write(Files.createTempFile(tmp, "scan", ".decrypted"), bytes);
+  }
+
+  // The start of the line holding the offset, so that the scan starts at a line boundary
+  private static long lineStart(byte[] bytes, long offset) {
+    while (offset > 0 && bytes[(int) offset - 1] != '\n') {
+      offset--;
+    }
+    return offset;
+  }
+
+  private static long[] expectedBoundaries(byte[] bytes, long start, ChunkLimits limits) {
+    long[] boundaries = new long[bytes.length + 2];
+    int chunks = 0;
+    boundaries[0] = start;
+    int lines = 0;
+    for (int i = (int) start; i < bytes.length; i++) {
+      if (bytes[i] == '\n' && limits.isReached(++lines, i + 1 - boundaries[chunks])) {
+        lines = 0;
+        boundaries[++chunks] = i + 1;
+      }
+    }
+    if (boundaries[chunks] < bytes.length) {
+      boundaries[++chunks] = bytes.length;
+    }
+    return Arrays.copyOf(boundaries, chunks + 1);
+  }
+}
@@ -0,0 +1,106 @@
+package it.gov.pagopa.rtd.ms.rtdmsdecrypter.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * Digests computed on the stream, whatever the size of its reads, are compared with the ones of
+ * the payload following the header.
+ */
+class PayloadDigestInputStreamTest {
+
+  @ParameterizedTest
+  @ValueSource(strings = {"#sha256sum:abc\nline1\nline2\n", "#sha256sum:abc\n", "\nline",
+      "#sha256sum:abc\r\nlinè\n\n", "no header", ""})
+  void shouldDigestPayload(String content) throws IOException, NoSuchAlgorithmException {
+    byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+    String expected = sha256(payload(bytes));
+
+    for (int readSize = 1; readSize <= bytes.length + 1; readSize++) {
+      List<String> digests = new ArrayList<>();
+      try (PayloadDigestInputStream in = new PayloadDigestInputStream(
+          new ByteArrayInputStream(bytes), digests::add)) {
+        assertArrayEquals(bytes, readAll(in, readSize));
+        assertEquals(expected, in.getHexDigest());
+      }
+      assertEquals(List.of(expected), digests);
+    }
+  }
+
+  @Test
+  void shouldDigestSingleBytesReads() throws IOException, NoSuchAlgorithmException {
+    byte[] bytes = "#sha256sum:abc\nline1\n".getBytes(StandardCharsets.UTF_8);
+
+    try (PayloadDigestInputStream in = new PayloadDigestInputStream(
+        new ByteArrayInputStream(bytes), digest -> { })) {
+      int b;
+      do {
+        b = in.read();
+      } while (b >= 0);
+      assertEquals(sha256("line1\n".getBytes(StandardCharsets.UTF_8)), in.getHexDigest());
+    }
+  }
+
+  @Test
+  void shouldDigestSkippedBytes() throws IOException, NoSuchAlgorithmException {
+    byte[] bytes = "#sha256sum:abc\nline1\nline2\n".getBytes(StandardCharsets.UTF_8);
+
+    try (PayloadDigestInputStream in = new PayloadDigestInputStream(
+        new ByteArrayInputStream(bytes), digest -> { })) {
+      assertEquals(17, in.skip(17));
+      in.readAllBytes();
+      assertEquals(sha256("line1\nline2\n".getBytes(StandardCharsets.UTF_8)),
+          in.getHexDigest());
+    }
+  }
+
+  @Test
+  void shouldNotDigestBeforeEnd() throws IOException {
+    byte[] bytes = "#sha256sum:abc\nline1\n".getBytes(StandardCharsets.UTF_8);
+
+    try (PayloadDigestInputStream in = new PayloadDigestInputStream(
+        new ByteArrayInputStream(bytes), digest -> { })) {
+      assertEquals(bytes.length, in.read(new byte[bytes.length]));
+      assertNull(in.getHexDigest());
+    }
+  }
+
+  private static byte[] readAll(InputStream in, int readSize) throws IOException {
+    byte[] buffer = new byte[readSize];
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    int count;
+    while ((count = in.read(buffer, 0, readSize)) >= 0) {
+      out.write(buffer, 0, count);
+    }
+    return out.toByteArray();
+  }
+
+  private static byte[] payload(byte[] bytes) {
+    for (int i = 0; i < bytes.length; i++) {
+      if (bytes[i] == '\n') {
+        return Arrays.copyOfRange(bytes, i + 1, bytes.length);
+      }
+    }
+    return new byte[0];
+  }
+
+  private static String sha256(byte[] bytes) throws NoSuchAlgorithmException {
+    return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+  }
+}
@@ -0,0 +1,164 @@
+package it.gov.pagopa.rtd.ms.rtdmsdecrypter.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.AdeTransactionsAggregate;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.model.RtdTransaction;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.service.AdeTransactionsAggregateDecoder;
+import it.gov.pagopa.rtd.ms.rtdmsdecrypter.service.RtdTransactionDecoder;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * Violations of the {@link RecordValidator} are compared with the ones of Hibernate Validator, on
+ * records with every field in turn replaced by edge values.
+ */
+class RecordValidatorTest {
+
+  private static final Validator hibernate = Validation.buildDefaultValidatorFactory()
+      .getValidator();
+
+  private static final String RTD_RECORD =
+      "36081;00;10;5c6bda1b1f5f6238dcba70f9f4b5a77671eb2b1563b0ca6d15d14c649a9b7ce0;"
+          + "2020-08-06T12:19:16.000+00:00;80205005000037219007587693;657098;;12;978;09509;"
+          + "400000080205;80205005;40236010;4900;fc123456789;12345678901;00;";
+
+  private static final String ADE_RECORD =
+      "99999;00;2022-07-21;2022-07-20;77;0;978;99999;8894738909374375872;4759769053262163701;"
+          + "00000000003;00000000003;00";
+
+  private static final List<Object> EDGE_VALUES = List.of("", " ", "\t\n", " 00", "00 ", "0",
+      "00", "01", "99", "978", "97a", "12345", "1234", "123456", "12345678", "1234567",
+      "ABCDEFGHIJKLMNOPQRSTUVWXYZ012", "abcdefghijklmnopqrstuvwxyz012", "fc123456789",
+      "fc1234567890abcd", "è1234", "1234١", "a".repeat(20), "a".repeat(21), "a".repeat(50),
+      "a".repeat(51), "a".repeat(64), "b".repeat(255), "b".repeat(256), "-1", "12;34");
+
+  private static final RecordValidator<RtdTransaction> rtdValidator = RecordValidator.compile(
+      RtdTransaction.class);
+
+  private static final RecordValidator<AdeTransactionsAggregate> adeValidator =
+      RecordValidator.compile(AdeTransactionsAggregate.class);
+
+  @Test
+  void shouldAcceptValidRecords() {
+    assertTrue(rtdValidator.isValid(rtdRecord()));
+    assertTrue(rtdValidator.validate(rtdRecord()).isEmpty());
+    assertTrue(adeValidator.isValid(adeRecord()));
+    assertTrue(adeValidator.validate(adeRecord()).isEmpty());
+  }
+
+  @ParameterizedTest
+  @MethodSource("rtdRecords")
+  void shouldReportRtdViolationsAsHibernate(RtdTransaction transaction) {
+    assertSameAsHibernate(rtdValidator, transaction);
+  }
+
+  @ParameterizedTest
+  @MethodSource("adeRecords")
+  void shouldReportAdeViolationsAsHibernate(AdeTransactionsAggregate aggregate) {
+    assertSameAsHibernate(adeValidator, aggregate);
+  }
+
+  static Stream<RtdTransaction> rtdRecords() throws IllegalAccessException {
+    List<RtdTransaction> transactions = mutations(RecordValidatorTest::rtdRecord);
+    RtdTransaction transaction = rtdRecord();
+    transaction.setTrxDate(null);
+    transaction.setAmount(null);
+    transactions.add(transaction);
+    return transactions.stream();
+  }
+
+  static Stream<AdeTransactionsAggregate> adeRecords() throws IllegalAccessException {
+    List<AdeTransactionsAggregate> aggregates = mutations(RecordValidatorTest::adeRecord);
+    for (int numTrx : new int[]{Integer.MIN_VALUE, -1, 0, 1}) {
+      for (Long totalAmount : new Long[]{null, Long.MIN_VALUE, -1L, 0L, 1L}) {
+        AdeTransactionsAggregate aggregate = adeRecord();
+        aggregate.setNumTrx(numTrx);
+        aggregate.setTotalAmount(totalAmount);
+        aggregates.add(aggregate);
+      }
+    }
+    return aggregates.stream();
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"[a-zA-Z\\d]{5}", "\\d{2}", "[a-zA-Z0-9]{1,255}", "978",
+      "\\d{6}|\\d{8}", "[a-zA-Z0-9]{11}|[a-zA-Z0-9]{16}", "[a-zA-Z0-9]{0,50}",
+      "|[A-Z0-9]{29}", "00|01|99", "a*b+c?", "[a-c]{2,}", "[\\-x]\\.\\d"})
+  void shouldMatchAsRegex(String regex) {
+    CharClassPattern pattern = CharClassPattern.compile(regex).orElseThrow();
+    Pattern expected = Pattern.compile(regex);
+    Random random = new Random(regex.hashCode());
+    String alphabet = "0123456789abcAZ-.x9è ١";
+
+    for (int i = 0; i < 20_000; i++) {
+      StringBuilder value = new StringBuilder();
+      int length = random.nextInt(i % 10 == 0 ? 300 : 20);
+      for (int j = 0; j < length; j++) {
+        value.append(alphabet.charAt(random.nextInt(alphabet.length())));
+      }
+      assertEquals(expected.matcher(value).matches(), pattern.matches(value), value::toString);
+    }
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {".*", "[^a]", "(ab){2}", "a{2}?", "\\w", "[a-z&&[b]]", "^a$",
+      "[z-a]", "[a-]", "[a", "a{2", "\\p{L}"})
+  void shouldNotCompileUnsupportedRegex(String regex) {
+    assertEquals(Optional.empty(), CharClassPattern.compile(regex));
+  }
+
+  private static <T> void assertSameAsHibernate(RecordValidator<T> validator, T bean) {
+    List<String> expected = hibernate.validate(bean).stream()
+        .map(v -> v.getPropertyPath() + ": " + v.getMessage())
+        .sorted()
+        .toList();
+    List<String> violations = validator.validate(bean).stream()
+        .map(v -> v.propertyPath() + ": " + v.message())
+        .sorted()
+        .toList();
+
+    assertEquals(expected, violations);
+    assertEquals(expected.isEmpty(), validator.isValid(bean));
+  }
+
+  // Every String field of a valid record in turn set to null and to each edge value
+  private static <T> List<T> mutations(Supplier<T> valid) throws IllegalAccessException {
+    List<T> records = new ArrayList<>();
+    for (Field field : valid.get().getClass().getDeclaredFields()) {
+      if (field.getType() != String.class) {
+        continue;
+      }
+      field.setAccessible(true);
+      List<Object> values = new ArrayList<>(EDGE_VALUES);
+      values.add(null);
+      for (Object value : values) {
+        T mutated = valid.get();
+        field.set(mutated, value);
+        records.add(mutated);
+      }
+    }
+    return records;
+  }
+
+  private static RtdTransaction rtdRecord() {
+    return new RtdTransactionDecoder().decode(RTD_RECORD, new ArrayList<>());
+  }
+
+  private static AdeTransactionsAggregate adeRecord() {
+    return new AdeTransactionsAggregateDecoder().decode(ADE_RECORD, new ArrayList<>());
+  }
+}